@@ -0,0 +1,64 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotAvailabilityIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AvailabilityIndexBenchmark {
+
+    @Param({"100", "10000"})
+    public int spots;
+
+    private ParkingSpotAvailabilityIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new ParkingSpotAvailabilityIndex();
+        for (int i = 1; i <= spots; i++) {
+            //every other spot taken so the lowest free one is not always in the first word
+            index.setAvailable(ParkingType.CAR, i, i > spots / 2 || i % 2 == 0);
+        }
+        index.markLoaded();
+    }
+
+    @Benchmark
+    public int nextAvailableSlot() {
+        return index.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    public int claimAndRelease() {
+        int parkingNumber = index.claimNextAvailableSlot(ParkingType.CAR);
+        index.setAvailable(ParkingType.CAR, parkingNumber, true);
+        return parkingNumber;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int claimAndReleaseContended() {
+        int parkingNumber = index.claimNextAvailableSlot(ParkingType.CAR);
+        if (parkingNumber > 0) {
+            index.setAvailable(ParkingType.CAR, parkingNumber, true);
+        }
+        return parkingNumber;
+    }
+}
@@ -0,0 +1,72 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.FareEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FareCalculatorBenchmark {
+
+    private FareCalculatorService fareCalculatorService;
+    private Ticket carTicket;
+    private Ticket bikeTicket;
+    private FareEngine fareEngine;
+    private long inTime;
+    private long outTime;
+
+    @Setup
+    public void setUp() {
+        fareCalculatorService = new FareCalculatorService();
+        long now = System.currentTimeMillis();
+        carTicket = newTicket(ParkingType.CAR, now - (3 * 60 * 60 * 1000), now);
+        bikeTicket = newTicket(ParkingType.BIKE, now - (45 * 60 * 1000), now);
+        fareEngine = new FareEngine();
+        inTime = now - (3 * 60 * 60 * 1000);
+        outTime = now;
+    }
+
+    private static Ticket newTicket(ParkingType parkingType, long inTime, long outTime) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(new Date(outTime));
+        return ticket;
+    }
+
+    @Benchmark
+    public double calculateCarFare() {
+        fareCalculatorService.calculateFare(carTicket);
+        return carTicket.getPrice();
+    }
+
+    @Benchmark
+    public double calculateBikeFare() {
+        fareCalculatorService.calculateFare(bikeTicket);
+        return bikeTicket.getPrice();
+    }
+
+    @Benchmark
+    public long calculateCarFareCents() {
+        return fareEngine.calculateFareCents(inTime, outTime, ParkingType.CAR.ordinal());
+    }
+}
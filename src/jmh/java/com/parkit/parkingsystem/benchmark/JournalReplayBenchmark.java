@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.JournalParkingSpotStore;
+import com.parkit.parkingsystem.dao.JournalTicketStore;
+import com.parkit.parkingsystem.dao.ParkingJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup of the journal backend after a day of traffic, 4 events per stay (spot claimed, entry, exit,
+ * spot freed): from the events alone (tail) or from the snapshot of a clean shutdown (snapshot). The events
+ * per second of the tail replay are the events divided by the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class JournalReplayBenchmark {
+
+    private static final int SPOTS = 500;
+
+    @Param({"1000000"})
+    public int events;
+
+    @Param({"tail", "snapshot"})
+    public String startup;
+
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-replay");
+        Storage storage = Storage.journal(directory, "CAR:" + SPOTS, false);
+        ParkingSpotStore parkingSpotStore = storage.getParkingSpotStore();
+        TicketStore ticketStore = storage.getTicketStore();
+        long now = System.currentTimeMillis();
+        for (int stay = 0; stay < events / 4; stay++) {
+            ParkingSpot parkingSpot = parkingSpotStore.reserveParkingSpot(ParkingType.CAR);
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setVehicleRegNumber("AB-" + (stay % 20000));
+            ticket.setInTime(new Date(now + stay * 1000L));
+            ticketStore.saveTicket(ticket);
+            ticket.setOutTime(new Date(now + stay * 1000L + 3_600_000L));
+            ticket.setPrice(1.5);
+            ticketStore.updateTicket(ticket);
+            parkingSpot.setAvailable(true);
+            parkingSpotStore.updateParking(parkingSpot);
+        }
+        if ("snapshot".equals(startup)) {
+            storage.close();
+        } else {
+            storage.getJournal().close();
+        }
+    }
+
+    @Benchmark
+    public long recover() throws IOException {
+        ParkingJournal journal = new ParkingJournal(directory, false);
+        JournalParkingSpotStore parkingSpotStore = new JournalParkingSpotStore(journal);
+        JournalTicketStore ticketStore = new JournalTicketStore(journal);
+        long applied = journal.recover();
+        journal.close();
+        return applied + parkingSpotStore.getParkingNumbers().size() + ticketStore.getTicketCount();
+    }
+}
@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a simulated DAO call that logs the connection and statement lifecycle as DataBaseConfig
+ * used to (four INFO lines per call), with synchronous loggers and with async loggers, against the same
+ * call with the lifecycle demoted to a disabled debug channel. Every variant writes to a file appender.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+    private static final String SYNC = "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.selector.ClassLoaderContextSelector";
+    private static final String ASYNC = "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.async.AsyncLoggerContextSelector";
+    private static final int CALL_WORK = 2000;
+
+    private Path logDir;
+    private Logger lifecycleLogger;
+
+    @Setup
+    public void setUp() throws Exception {
+        logDir = Files.createTempDirectory("logging-benchmark");
+        Path config = logDir.resolve("log4j2.xml");
+        Files.write(config, ("<Configuration status=\"warn\"><Appenders>"
+                + "<RandomAccessFile name=\"file\" fileName=\"" + logDir.resolve("benchmark.log") + "\">"
+                + "<PatternLayout pattern=\"%d{DEFAULT} %-5p %c{1} - %m%n\"/></RandomAccessFile>"
+                + "</Appenders><Loggers>"
+                + "<Logger name=\"DataBaseConfig.disabled\" level=\"info\"/>"
+                + "<Root level=\"info\"><AppenderRef ref=\"file\"/></Root>"
+                + "</Loggers></Configuration>").getBytes(StandardCharsets.UTF_8));
+        System.setProperty("log4j.configurationFile", config.toString());
+        lifecycleLogger = LogManager.getLogger("DataBaseConfig");
+    }
+
+    @TearDown
+    public void tearDown() {
+        LogManager.shutdown();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = SYNC)
+    public void callWithoutLogging() {
+        Blackhole.consumeCPU(CALL_WORK);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = SYNC)
+    public void callWithSyncInfoLogging() {
+        logLifecycle(lifecycleLogger);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = ASYNC)
+    public void callWithAsyncInfoLogging() {
+        logLifecycle(lifecycleLogger);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = ASYNC)
+    public void callWithDemotedDebugLogging(DisabledChannel channel) {
+        Logger logger = channel.logger;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Create DB connection");
+        }
+        Blackhole.consumeCPU(CALL_WORK);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Closing Result Set");
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Closing Prepared Statement");
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Closing DB connection");
+        }
+    }
+
+    private static void logLifecycle(Logger logger) {
+        logger.info("Create DB connection");
+        Blackhole.consumeCPU(CALL_WORK);
+        logger.info("Closing Result Set");
+        logger.info("Closing Prepared Statement");
+        logger.info("Closing DB connection");
+    }
+
+    @State(Scope.Benchmark)
+    public static class DisabledChannel {
+        private Logger logger;
+
+        @Setup
+        public void setUp(LoggingBenchmark benchmark) {
+            logger = LogManager.getLogger("DataBaseConfig.disabled");
+        }
+    }
+}
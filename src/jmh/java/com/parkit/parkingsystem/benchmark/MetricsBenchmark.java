@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.util.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of timing a call with Metrics.Timer, to compare with the bare nanoTime reads it is built on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private final Metrics.Timer timer = Metrics.timer("benchmark.timer");
+
+    @Benchmark
+    public long nanoTimeBaseline() {
+        long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+    @Benchmark
+    public void timer() {
+        timer.stop(timer.start());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void timerContended() {
+        timer.stop(timer.start());
+    }
+}
@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.dao.RecurringUserIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Visit count lookups at exit, for known vehicles (hash map under the read lock) and unknown ones
+ * (answered by the Bloom filter).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecurringUserIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int vehicles;
+
+    private RecurringUserIndex index;
+    private String[] known;
+    private String[] unknown;
+
+    @Setup
+    public void setUp() {
+        index = new RecurringUserIndex();
+        known = new String[vehicles];
+        unknown = new String[vehicles];
+        for (int i = 0; i < vehicles; i++) {
+            known[i] = "AB-" + i;
+            unknown[i] = "ZZ-" + i;
+            index.addVisit(known[i]);
+        }
+    }
+
+    @Benchmark
+    public int knownVehicle() {
+        return index.getVisitCount(known[ThreadLocalRandom.current().nextInt(vehicles)]);
+    }
+
+    @Benchmark
+    public int unknownVehicle() {
+        return index.getVisitCount(unknown[ThreadLocalRandom.current().nextInt(vehicles)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int knownVehicleContended() {
+        return index.getVisitCount(known[ThreadLocalRandom.current().nextInt(vehicles)]);
+    }
+}
@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.NaiveTariff;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareEngine;
+import com.parkit.parkingsystem.service.RatePlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prices stays of the given length under a plan with weekend and evening windows, a grace period, per
+ * minute billing and a daily cap, with the compiled FareEngine and with a walk over the minutes of the stay.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TariffBenchmark {
+
+    private static final int STAYS = 1024;
+
+    @Param({"2", "30", "240"})
+    public int stayHours;
+
+    private FareEngine fareEngine;
+    private NaiveTariff naiveTariff;
+    private final long[] inTimes = new long[STAYS];
+    private final long[] outTimes = new long[STAYS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        RatePlan plan = new RatePlan()
+                .setZone(ZoneId.of("Europe/Paris"))
+                .setGracePeriodMinutes(30)
+                .setBillingUnitMinutes(1)
+                .setDailyCap(ParkingType.CAR, 12)
+                .addWindow(ParkingType.CAR, EnumSet.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY),
+                        LocalTime.MIDNIGHT, LocalTime.MIDNIGHT, 1.0)
+                .addWindow(ParkingType.CAR, EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+                        LocalTime.of(19, 0), LocalTime.of(7, 30), 0.5);
+        fareEngine = new FareEngine(plan);
+        naiveTariff = new NaiveTariff(plan);
+        Random random = new Random(42);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < STAYS; i++) {
+            inTimes[i] = start + (long) (random.nextDouble() * 365 * 24 * 60 * 60 * 1000L);
+            outTimes[i] = inTimes[i] + (long) ((0.5 + random.nextDouble()) * stayHours * 60 * 60 * 1000L);
+        }
+    }
+
+    @Benchmark
+    public long compiled() {
+        int i = next++ & (STAYS - 1);
+        return fareEngine.calculateFareMillicents(inTimes[i], outTimes[i], ParkingType.CAR.ordinal());
+    }
+
+    @Benchmark
+    public long minuteByMinute() {
+        int i = next++ & (STAYS - 1);
+        return naiveTariff.calculateFareMillicents(inTimes[i], outTimes[i], ParkingType.CAR, false);
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO round trips against an in-process H2 database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TicketDAOBenchmark {
+
+    private TicketDAO ticketDAO;
+    private ParkingSpotDAO parkingSpotDAO;
+    private Ticket ticket;
+    private ParkingSpot parkingSpot;
+
+    @Setup
+    public void setUp() throws Exception {
+        EmbeddedDataBaseTestConfig dataBaseConfig = new EmbeddedDataBaseTestConfig("ticketDAOBenchmark");
+        dataBaseConfig.createDataBase(3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+
+        parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        ticketDAO.saveTicket(ticket);
+    }
+
+    @Benchmark
+    public Ticket getTicketFromDataBase() {
+        ticketDAO.getOpenTicketCache().clear();
+        return ticketDAO.getTicket("ABCDEF");
+    }
+
+    @Benchmark
+    public Ticket getTicketFromCache() {
+        return ticketDAO.getTicket("ABCDEF");
+    }
+
+    @Benchmark
+    public boolean saveTicket() {
+        return ticketDAO.saveTicket(ticket);
+    }
+
+    @Benchmark
+    public boolean updateParking() {
+        parkingSpot.setAvailable(!parkingSpot.isAvailable());
+        return parkingSpotDAO.updateParking(parkingSpot);
+    }
+}
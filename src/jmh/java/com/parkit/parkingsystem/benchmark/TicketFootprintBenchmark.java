@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.CompactTicketTable;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by a ticket history held as Ticket objects (with the HashMap by registration number the
+ * old in-memory store used) and as a CompactTicketTable, and the time to scan it for the closed tickets'
+ * revenue. The retained bytes per ticket are measured once per fork after full GCs and printed with the
+ * setup; the scan time is the benchmark score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class TicketFootprintBenchmark {
+
+    private static final int SPOTS = 500;
+    private static final int VISITS_PER_PLATE = 10;
+
+    @Param({"100000", "10000000"})
+    public int tickets;
+
+    @Param({"objects", "compact"})
+    public String layout;
+
+    private List<Ticket> ticketList;
+    private Map<String, Ticket> lastTickets;
+    private CompactTicketTable table;
+
+    @Setup
+    public void setUp() {
+        long before = usedHeap();
+        if ("compact".equals(layout)) {
+            table = new CompactTicketTable();
+            for (int id = 1; id <= tickets; id++) {
+                table.put(ticket(id));
+            }
+        } else {
+            ticketList = new ArrayList<>(tickets);
+            lastTickets = new HashMap<>();
+            for (int id = 1; id <= tickets; id++) {
+                Ticket ticket = ticket(id);
+                ticketList.add(ticket);
+                lastTickets.put(ticket.getVehicleRegNumber(), ticket);
+            }
+        }
+        long retained = usedHeap() - before;
+        System.out.printf("%n%s layout: %d bytes retained, %.1f bytes per ticket%n",
+                layout, retained, retained / (double) tickets);
+    }
+
+    private Ticket ticket(int id) {
+        long inTime = 1_600_000_000_000L + id * 60_000L;
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(id % SPOTS + 1, id % 5 == 0 ? ParkingType.BIKE : ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(String.format("AB-%03d-%02d", (id / VISITS_PER_PLATE) % 1000, (id / VISITS_PER_PLATE) / 1000 % 100));
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(id % 50 == 0 ? null : new Date(inTime + 90 * 60_000L));
+        ticket.setPrice(id % 50 == 0 ? 0 : 2.25);
+        return ticket;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public double closedRevenue() {
+        if (table != null) {
+            double[] revenue = {0};
+            table.forEach(row -> {
+                if (row.isClosed()) {
+                    revenue[0] += row.getPrice();
+                }
+            });
+            return revenue[0];
+        }
+        double revenue = 0;
+        for (Ticket ticket : ticketList) {
+            if (ticket.getOutTime() != null) {
+                revenue += ticket.getPrice();
+            }
+        }
+        return revenue;
+    }
+}
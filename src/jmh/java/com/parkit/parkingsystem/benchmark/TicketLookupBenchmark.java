@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the GET_TICKET and GET_NEXT_PARKING_SPOT queries over a generated ticket history, with and
+ * without the indexes of schema version 2. The database is a file-backed H2 so the 10M ticket case does
+ * not have to fit in the heap; generating it takes a few minutes. Every plate has about ten past visits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TicketLookupBenchmark {
+
+    private static final int CAR_SPOTS = 500;
+    private static final int BIKE_SPOTS = 100;
+    private static final int VISITS_PER_PLATE = 10;
+
+    @Param({"100000", "10000000"})
+    public int tickets;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Path dataBaseDir;
+    private EmbeddedDataBaseTestConfig dataBaseConfig;
+    private Connection con;
+    private PreparedStatement getTicket;
+    private PreparedStatement getNextParkingSpot;
+    private int plates;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataBaseDir = Files.createTempDirectory("ticket-lookup");
+        String url = "jdbc:h2:" + dataBaseDir.resolve("parkit") + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("ticketLookup") {
+            @Override
+            protected String getUrl() {
+                return url;
+            }
+        };
+        dataBaseConfig.createDataBase(CAR_SPOTS, BIKE_SPOTS);
+        plates = Math.max(1, tickets / VISITS_PER_PLATE);
+        con = dataBaseConfig.getConnection();
+        try (Statement st = con.createStatement()) {
+            if (!indexed) {
+                st.execute("drop index IDX_TICKET_VEHICLE");
+                st.execute("drop index IDX_PARKING_AVAILABILITY");
+            }
+            //one visit a minute going back in time, every spot taken but the last bike ones
+            st.execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+                    + " select mod(r.\"X\", " + (CAR_SPOTS + BIKE_SPOTS) + ") + 1, concat('P', mod(r.\"X\", " + plates + ")), 1.5,"
+                    + " dateadd(MINUTE, -r.\"X\" - 90, current_timestamp), dateadd(MINUTE, -r.\"X\", current_timestamp)"
+                    + " from system_range(1, " + tickets + ") r");
+            st.execute("update parking set AVAILABLE = false where PARKING_NUMBER <= " + (CAR_SPOTS + BIKE_SPOTS - 10));
+            st.execute("analyze");
+        }
+        getTicket = con.prepareStatement(DBConstants.GET_TICKET);
+        getNextParkingSpot = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        dataBaseConfig.closeConnection(con);
+        dataBaseConfig.getConnectionPool().close();
+    }
+
+    @Benchmark
+    public int getTicket() throws Exception {
+        getTicket.setString(1, "P" + ThreadLocalRandom.current().nextInt(plates));
+        try (ResultSet rs = getTicket.executeQuery()) {
+            return rs.next() ? rs.getInt(2) : 0;
+        }
+    }
+
+    @Benchmark
+    public int getNextParkingSpot() throws Exception {
+        getNextParkingSpot.setString(1, "BIKE");
+        try (ResultSet rs = getNextParkingSpot.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -1,13 +1,82 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.service.BatchBillingService;
+import com.parkit.parkingsystem.service.GateServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.TicketArchivalService;
+import com.parkit.parkingsystem.service.TicketExportService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        String command = args.length > 0 ? args[0] : "shell";
+        switch(command){
+            case "reprice": {
+                Storage storage = openStorage();
+                if(storage != null){
+                    System.out.println(new BatchBillingService(storage.getTicketStore()).repriceClosedTickets());
+                    storage.close();
+                }
+                break;
+            }
+            case "export": {
+                if(args.length < 2){
+                    System.out.println("Usage: export <file>");
+                    break;
+                }
+                Storage storage = openStorage();
+                if(storage == null){
+                    break;
+                }
+                try {
+                    long exported = new TicketExportService(storage.getTicketStore()).exportClosedTickets(Paths.get(args[1]));
+                    System.out.println(exported < 0 ? "Export failed" : "Exported " + exported + " tickets to " + args[1]);
+                } catch (IOException e) {
+                    logger.error("Unable to export tickets", e);
+                }
+                storage.close();
+                break;
+            }
+            case "archive": {
+                int days = args.length > 1 ? Integer.parseInt(args[1])
+                        : Integer.getInteger(TicketArchivalService.ARCHIVE_AFTER_DAYS_PROPERTY, 365);
+                Storage storage = openStorage();
+                if(storage != null){
+                    long archived = new TicketArchivalService(storage.getTicketStore(), TimeUnit.DAYS.toMillis(days),
+                            TicketArchivalService.DEFAULT_CHUNK_SIZE).archiveClosedTickets();
+                    System.out.println(archived < 0 ? "Archival failed" : "Archived " + archived + " tickets");
+                    storage.close();
+                }
+                break;
+            }
+            case "server": {
+                int port = args.length > 1 ? Integer.parseInt(args[1])
+                        : Integer.getInteger(GateServer.PORT_PROPERTY, GateServer.DEFAULT_PORT);
+                try {
+                    GateServer.startServer(port);
+                } catch (IOException e) {
+                    logger.error("Unable to start gate server on port " + port, e);
+                }
+                break;
+            }
+            default: InteractiveShell.loadInterface();
+        }
+    }
+
+    private static Storage openStorage(){
+        try {
+            return Storage.open();
+        } catch (IOException e) {
+            logger.error("Unable to open the parking storage", e);
+            return null;
+        }
     }
 }
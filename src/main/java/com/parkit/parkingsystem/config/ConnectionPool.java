@@ -0,0 +1,549 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections. Borrowed connections are proxies: calling close() hands the
+ * physical connection back to the pool instead of closing it.
+ *
+ * Each physical connection also keeps the statements prepared on it. Preparing the same SQL again on a later
+ * borrow returns the statement prepared the first time, and closing it only resets it for the next use,
+ * so the database parses each query once per connection instead of once per call.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+    public static final int DEFAULT_MIN_IDLE = 2;
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+    public static final long DEFAULT_LEAK_DETECTION_MILLIS = 60 * 1000;
+    public static final long DEFAULT_HOUSEKEEPING_PERIOD_MILLIS = 30 * 1000;
+
+    public static final int STATEMENT_CACHE_SIZE = 32;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionMillis;
+
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireWaitNanos = new LongAdder();
+    private final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private final LongAdder leaksDetected = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(String url, String user, String password) {
+        this(url, user, password, DEFAULT_MIN_IDLE, DEFAULT_MAX_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS,
+                DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_LEAK_DETECTION_MILLIS, DEFAULT_HOUSEKEEPING_PERIOD_MILLIS);
+    }
+
+    public ConnectionPool(String url, String user, String password, int minIdle, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, long leakDetectionMillis,
+                          long housekeepingPeriodMillis) {
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minIdle + " max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.execute(this::fillToMinIdle);
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, housekeepingPeriodMillis, housekeepingPeriodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.increment();
+                throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection ("
+                        + getActiveConnections() + " active, max " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection pooled = takeValidIdleConnection();
+            if (pooled == null) {
+                pooled = new PooledConnection(openPhysicalConnection());
+            }
+            recordWait(System.nanoTime() - start);
+            return pooled.borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdleConnection() {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (pooled.isValid()) {
+                return pooled;
+            }
+            logger.warn("Discarding invalid pooled connection");
+            pooled.closePhysical();
+        }
+        return null;
+    }
+
+    private Connection openPhysicalConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        totalConnections.incrementAndGet();
+        logger.debug("Opened DB connection ({} total)", totalConnections.get());
+        return physical;
+    }
+
+    private void recordWait(long waitNanos) {
+        acquireCount.increment();
+        acquireWaitNanos.add(waitNanos);
+        long max;
+        while (waitNanos > (max = maxAcquireWaitNanos.get()) && !maxAcquireWaitNanos.compareAndSet(max, waitNanos)) {
+            // retry until the max is updated or exceeded by another thread
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowedConnections.remove(pooled);
+        try {
+            if (closed || pooled.broken || !pooled.resetState()) {
+                pooled.closePhysical();
+            } else {
+                pooled.lastReturned = System.currentTimeMillis();
+                idleConnections.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void fillToMinIdle() {
+        while (!closed && totalConnections.get() < minIdle) {
+            try {
+                idleConnections.offerLast(new PooledConnection(openPhysicalConnection()));
+            } catch (SQLException e) {
+                logger.warn("Unable to open connection to warm the pool", e);
+                return;
+            }
+        }
+    }
+
+    private void houseKeep() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> it = idleConnections.descendingIterator();
+            while (it.hasNext() && totalConnections.get() > minIdle) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastReturned > idleTimeoutMillis && idleConnections.remove(pooled)) {
+                    pooled.closePhysical();
+                }
+            }
+            if (leakDetectionMillis > 0) {
+                for (PooledConnection pooled : borrowedConnections) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionMillis) {
+                        pooled.leakReported = true;
+                        leaksDetected.increment();
+                        Exception borrowTrace = pooled.borrowTrace;
+                        logger.warn("Connection leak detected: borrowed " + (now - pooled.borrowedAt)
+                                + "ms ago and not returned" + (borrowTrace == null
+                                ? " (debug logging of ConnectionPool shows where it was borrowed)" : ""), borrowTrace);
+                    }
+                }
+            }
+            fillToMinIdle();
+        } catch (RuntimeException e) {
+            logger.error("Error during connection pool housekeeping", e);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            pooled.closePhysical();
+        }
+    }
+
+    public int getActiveConnections() {
+        return borrowedConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = acquireCount.sum();
+        return count == 0 ? 0 : acquireWaitNanos.sum() / (count * 1_000_000.0);
+    }
+
+    public double getMaxWaitMillis() {
+        return maxAcquireWaitNanos.get() / 1_000_000.0;
+    }
+
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.sum();
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected.sum();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[" + url + " active=" + getActiveConnections() + " idle=" + getIdleConnections()
+                + " total=" + getTotalConnections() + " max=" + maxSize
+                + String.format(" avgWait=%.3fms maxWait=%.3fms", getAverageWaitMillis(), getMaxWaitMillis())
+                + " timeouts=" + getAcquireTimeouts() + " leaks=" + getLeaksDetected()
+                + " statementHits=" + getStatementCacheHits() + " statementMisses=" + getStatementCacheMisses() + "]";
+    }
+
+    private class PooledConnection implements InvocationHandler {
+        private final Connection physical;
+        private volatile Connection proxy;
+        private volatile boolean broken;
+        private volatile long borrowedAt;
+        private volatile long lastReturned = System.currentTimeMillis();
+        private volatile Exception borrowTrace;
+        private volatile boolean leakReported;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > STATEMENT_CACHE_SIZE) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection borrow() {
+            borrowedAt = System.currentTimeMillis();
+            leakReported = false;
+            //filling in a stack trace on every checkout is costly: only done when debugging a leak
+            borrowTrace = leakDetectionMillis > 0 && logger.isDebugEnabled() ? new Exception("Connection borrowed here") : null;
+            proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+            borrowedConnections.add(this);
+            return proxy;
+        }
+
+        boolean isValid() {
+            try {
+                return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        boolean resetState() {
+            try {
+                synchronized (statements) {
+                    //statements the caller forgot to close are made reusable again
+                    for (CachedStatement statement : new ArrayList<>(statements.values())) {
+                        if (statement.inUse) {
+                            statement.release();
+                        }
+                    }
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                physical.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                logger.warn("Unable to reset pooled connection state", e);
+                return false;
+            }
+        }
+
+        void closePhysical() {
+            synchronized (statements) {
+                statements.clear();
+            }
+            try {
+                physical.close();
+                logger.debug("Closed DB connection");
+            } catch (SQLException e) {
+                logger.error("Error while closing connection", e);
+            } finally {
+                totalConnections.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            boolean returned = target != proxy;
+            switch (name) {
+                case "close":
+                    if (!returned) {
+                        proxy = null;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return target == args[0];
+                case "hashCode":
+                    return System.identityHashCode(target);
+                case "toString":
+                    return "Pooled" + physical;
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (name.equals("prepareStatement")) {
+                PreparedStatement cached = prepareCached(args);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+                        broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+
+        /**
+         * Handles prepareStatement(sql), prepareStatement(sql, autoGeneratedKeys) and
+         * prepareStatement(sql, resultSetType, resultSetConcurrency).
+         * @return the cached statement, or null to prepare an uncached one
+         */
+        private PreparedStatement prepareCached(Object[] args) throws SQLException {
+            String key;
+            if (args.length == 1) {
+                key = (String) args[0];
+            } else if (args.length == 2 && args[1] instanceof Integer) {
+                key = "k" + args[1] + ":" + args[0];
+            } else if (args.length == 3) {
+                key = "t" + args[1] + "," + args[2] + ":" + args[0];
+            } else {
+                return null;
+            }
+            synchronized (statements) {
+                CachedStatement statement = statements.get(key);
+                if (statement != null) {
+                    if (statement.inUse) {
+                        //prepared twice in the same borrow, the second one is not cached
+                        return null;
+                    }
+                    statementCacheHits.increment();
+                    statement.inUse = true;
+                    return statement.proxy;
+                }
+                statementCacheMisses.increment();
+                PreparedStatement physicalStatement;
+                if (args.length == 1) {
+                    physicalStatement = physical.prepareStatement((String) args[0]);
+                } else if (args.length == 2) {
+                    physicalStatement = physical.prepareStatement((String) args[0], (Integer) args[1]);
+                } else {
+                    physicalStatement = physical.prepareStatement((String) args[0], (Integer) args[1], (Integer) args[2]);
+                }
+                statement = new CachedStatement(key, physicalStatement);
+                statements.put(key, statement);
+                return statement.proxy;
+            }
+        }
+
+        private class CachedStatement implements InvocationHandler {
+            private final String key;
+            private final PreparedStatement physicalStatement;
+            private final PreparedStatement proxy;
+            private final int defaultFetchSize;
+            private boolean inUse = true;
+            private boolean evicted;
+            private boolean fetchSizeChanged;
+
+            CachedStatement(String key, PreparedStatement physicalStatement) throws SQLException {
+                this.key = key;
+                this.physicalStatement = physicalStatement;
+                this.defaultFetchSize = physicalStatement.getFetchSize();
+                this.proxy = (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class}, this);
+            }
+
+            /**
+             * Makes the statement reusable, or closes it if it was evicted or is no longer usable.
+             */
+            void release() {
+                inUse = false;
+                try {
+                    if (evicted || physicalStatement.isClosed()) {
+                        statements.remove(key, this);
+                        closeStatement();
+                        return;
+                    }
+                    ResultSet resultSet = physicalStatement.getResultSet();
+                    if (resultSet != null) {
+                        resultSet.close();
+                    }
+                    physicalStatement.clearParameters();
+                    physicalStatement.clearBatch();
+                    physicalStatement.clearWarnings();
+                    if (fetchSizeChanged) {
+                        physicalStatement.setFetchSize(defaultFetchSize);
+                        fetchSizeChanged = false;
+                    }
+                } catch (SQLException e) {
+                    logger.warn("Unable to reset cached statement, closing it", e);
+                    statements.remove(key, this);
+                    closeStatement();
+                }
+            }
+
+            void evict() {
+                evicted = true;
+                if (!inUse) {
+                    closeStatement();
+                }
+            }
+
+            private void closeStatement() {
+                try {
+                    physicalStatement.close();
+                } catch (SQLException e) {
+                    logger.debug("Error while closing cached statement", e);
+                }
+            }
+
+            @Override
+            public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        synchronized (statements) {
+                            if (inUse) {
+                                release();
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return !inUse || physicalStatement.isClosed();
+                    case "getConnection":
+                        return PooledConnection.this.proxy;
+                    case "equals":
+                        return target == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(target);
+                    case "toString":
+                        return "Cached" + physicalStatement;
+                    case "setFetchSize":
+                        fetchSizeChanged = true;
+                        break;
+                    default:
+                        break;
+                }
+                if (!inUse) {
+                    throw new SQLException("Statement has already been closed");
+                }
+                try {
+                    return method.invoke(physicalStatement, args);
+                } catch (InvocationTargetException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SQLException) {
+                        String state = ((SQLException) cause).getSQLState();
+                        if (state != null && state.startsWith("08")) {
+                            broken = true;
+                        }
+                    }
+                    throw cause;
+                }
+            }
+        }
+    }
+}
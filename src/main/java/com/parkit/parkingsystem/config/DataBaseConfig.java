@@ -1,26 +1,140 @@
 package com.parkit.parkingsystem.config;
 
+import com.parkit.parkingsystem.util.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
+    //per connection/statement messages, several per DAO call: debug only, rate limited in log4j2.xml
+    private static final Logger lifecycleLogger = LogManager.getLogger("DataBaseConfig.lifecycle");
+
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    private static final Metrics.Timer getConnectionTimer = Metrics.timer("db.getConnection");
+
+    public static final String DEFAULT_URL = "jdbc:mysql://localhost:3306/prod?rewriteBatchedStatements=true&useCursorFetch=true&useServerPrepStmts=true";
+    public static final String DEFAULT_USER = "root";
+    public static final String DEFAULT_PASSWORD = "rootroot";
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    public DataBaseConfig() {
+        this(DEFAULT_URL, DEFAULT_USER, DEFAULT_PASSWORD);
+    }
+
+    /**
+     * A database other than prod, such as the one of a parking lot; every URL gets its own connection pool.
+     */
+    public DataBaseConfig(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
 
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod","root","rootroot");
+        if (lifecycleLogger.isDebugEnabled()) {
+            lifecycleLogger.debug("Create DB connection");
+        }
+        long start = getConnectionTimer.start();
+        try {
+            return getConnectionPool().getConnection();
+        } finally {
+            getConnectionTimer.stop(start);
+        }
+    }
+
+    public ConnectionPool getConnectionPool() throws ClassNotFoundException, SQLException {
+        ConnectionPool pool = pools.get(getUrl());
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(getUrl());
+                if (pool == null) {
+                    Class.forName(getDriverClassName());
+                    pool = createConnectionPool();
+                    if (isSchemaMigrationEnabled()) {
+                        migrateSchema(pool);
+                    }
+                    //published only once the schema is up to date
+                    pools.put(getUrl(), pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    protected boolean isSchemaMigrationEnabled() {
+        return true;
+    }
+
+    /**
+     * Fails when the schema can't be brought up to date: the pool is closed and never published, so no DAO
+     * runs against a schema it doesn't know.
+     */
+    private void migrateSchema(ConnectionPool pool) throws SQLException {
+        try (Connection con = pool.getConnection()) {
+            new SchemaMigrator().migrate(con);
+        } catch (Exception e) {
+            logger.error("Unable to migrate the schema of " + getUrl(), e);
+            pool.close();
+            throw new SQLException("Unable to migrate the schema of " + getUrl(), e);
+        }
+    }
+
+    protected ConnectionPool createConnectionPool() {
+        logger.info("Create DB connection pool for " + getUrl());
+        return new ConnectionPool(getUrl(), getUser(), getPassword());
+    }
+
+    protected String getDriverClassName() {
+        return "com.mysql.cj.jdbc.Driver";
+    }
+
+    protected String getUrl() {
+        return url;
+    }
+
+    protected String getUser() {
+        return user;
+    }
+
+    protected String getPassword() {
+        return password;
+    }
+
+    public static void closeConnectionPools() {
+        for (ConnectionPool pool : pools.values()) {
+            logger.info("Closing " + pool);
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    /**
+     * Closes the connection pool of this database only, leaving those of the other databases open.
+     */
+    public void closeConnectionPool() {
+        ConnectionPool pool = pools.remove(getUrl());
+        if (pool != null) {
+            logger.info("Closing " + pool);
+            pool.close();
+        }
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                if (lifecycleLogger.isDebugEnabled()) {
+                    lifecycleLogger.debug("Closing DB connection");
+                }
             } catch (SQLException e) {
                 logger.error("Error while closing connection",e);
             }
@@ -31,7 +145,9 @@ public class DataBaseConfig {
         if(ps!=null){
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                if (lifecycleLogger.isDebugEnabled()) {
+                    lifecycleLogger.debug("Closing Prepared Statement");
+                }
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement",e);
             }
@@ -42,7 +158,9 @@ public class DataBaseConfig {
         if(rs!=null){
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                if (lifecycleLogger.isDebugEnabled()) {
+                    lifecycleLogger.debug("Closing Result Set");
+                }
             } catch (SQLException e) {
                 logger.error("Error while closing result set",e);
             }
@@ -0,0 +1,156 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the schema up to date with the versioned scripts db/migration/V1.sql, V2.sql, ... on the classpath.
+ * The versions already applied are recorded in the schema_version table; each pending script runs in its
+ * own transaction, in order, and the first line comment of a script is recorded as its description.
+ * Scripts are never edited once released: a schema change is a new script with the next version.
+ * MySQL commits each DDL statement implicitly, so a script that fails half way leaves its first statements
+ * applied and is run again from the start by the next migration: scripts create tables with 'if not exists'
+ * and a 'create index' whose index already exists is skipped.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+    public static final String MIGRATION_PATH = "db/migration/";
+
+    private static final String CREATE_VERSION_TABLE = "create table if not exists schema_version("
+            + "VERSION int PRIMARY KEY, DESCRIPTION varchar(200) NOT NULL, APPLIED_AT DATETIME NOT NULL)";
+    private static final String GET_VERSION = "select max(VERSION) from schema_version";
+    private static final String SAVE_VERSION = "insert into schema_version(VERSION, DESCRIPTION, APPLIED_AT) values(?,?,?)";
+    private static final Pattern CREATE_INDEX = Pattern.compile("create\\s+(?:unique\\s+)?index\\s+(\\w+)\\s+on\\s+(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * @return the number of scripts applied
+     */
+    public int migrate(Connection con) throws SQLException, IOException {
+        try (Statement st = con.createStatement()) {
+            st.execute(CREATE_VERSION_TABLE);
+        }
+        int version = getCurrentVersion(con);
+        int applied = 0;
+        String script;
+        while ((script = readScript(version + 1)) != null) {
+            version++;
+            apply(con, version, script);
+            applied++;
+        }
+        if (applied > 0) {
+            logger.info("Schema migrated to version " + version + " (" + applied + " scripts applied)");
+        }
+        return applied;
+    }
+
+    public int getCurrentVersion(Connection con) throws SQLException {
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(GET_VERSION)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void apply(Connection con, int version, String script) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement st = con.createStatement(); PreparedStatement ps = con.prepareStatement(SAVE_VERSION)) {
+            for (String sql : splitStatements(script)) {
+                if (isAlreadyApplied(con, sql)) {
+                    logger.info("Skipping statement of schema version " + version + " already applied: " + sql);
+                    continue;
+                }
+                st.execute(sql);
+            }
+            ps.setInt(1, version);
+            ps.setString(2, getDescription(script));
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.execute();
+            con.commit();
+            logger.info("Applied schema version " + version + ": " + getDescription(script));
+        } catch (SQLException e) {
+            con.rollback();
+            throw new SQLException("Schema migration to version " + version + " failed", e);
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @return true for a 'create index' statement whose index is already there, left by a partly applied script
+     */
+    private static boolean isAlreadyApplied(Connection con, String sql) throws SQLException {
+        Matcher createIndex = CREATE_INDEX.matcher(sql);
+        if (!createIndex.lookingAt()) {
+            return false;
+        }
+        DatabaseMetaData metaData = con.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(con.getCatalog(), null, createIndex.group(2), false, false)) {
+            while (rs.next()) {
+                if (createIndex.group(1).equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String readScript(int version) throws IOException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + "V" + version + ".sql");
+        if (in == null) {
+            return null;
+        }
+        StringBuilder script = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append('\n');
+            }
+        }
+        return script.toString();
+    }
+
+    private static String getDescription(String script) {
+        String firstLine = script.trim().split("\n", 2)[0];
+        return firstLine.startsWith("--") ? firstLine.substring(2).trim() : "";
+    }
+
+    private static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String sql = current.toString().trim();
+                statements.add(sql.substring(0, sql.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+}
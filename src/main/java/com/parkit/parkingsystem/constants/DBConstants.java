@@ -3,9 +3,27 @@ package com.parkit.parkingsystem.constants;
 public class DBConstants {
 
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
+    public static final String COUNT_PARKING_SPOTS = "select TYPE, count(*), sum(case when AVAILABLE then 1 else 0 end) from parking group by TYPE";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String CLAIM_PARKING_SPOT = "update parking set available = false where PARKING_NUMBER = ? and AVAILABLE = true";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
     public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME  limit 1";
+    public static final String CLOSE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+    public static final String GET_CLOSED_TICKETS = "select t.ID, t.VEHICLE_REG_NUMBER, "
+            + "(select count(*) from ticket v where v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and v.IN_TIME <= t.IN_TIME) "
+            + "+ (select count(*) from ticket_archive a where a.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER and a.IN_TIME <= t.IN_TIME), "
+            + "t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is not null order by t.ID";
+    public static final String GET_CLOSED_TICKETS_AFTER = "select t.ID, t.PARKING_NUMBER, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.OUT_TIME is not null and (t.OUT_TIME > ? or (t.OUT_TIME = ? and t.ID > ?)) and t.OUT_TIME < ? order by t.OUT_TIME, t.ID";
+    public static final String UPDATE_TICKET_PRICE = "update ticket set PRICE=? where ID=?";
+    //closed tickets before a cutoff, after an (OUT_TIME, ID) keyset position and up to a chunk end position
+    public static final String GET_ARCHIVE_CHUNK = "select OUT_TIME, ID from ticket where OUT_TIME < ? and (OUT_TIME > ? or (OUT_TIME = ? and ID > ?)) order by OUT_TIME, ID limit ?";
+    private static final String ARCHIVE_RANGE = "OUT_TIME < ? and (OUT_TIME > ? or (OUT_TIME = ? and ID > ?)) and (OUT_TIME < ? or (OUT_TIME = ? and ID <= ?))";
+    public static final String ARCHIVE_TICKETS = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where " + ARCHIVE_RANGE;
+    public static final String DELETE_ARCHIVED_TICKETS = "delete from ticket where " + ARCHIVE_RANGE;
+    //visits per vehicle, read from the vehicle indexes
+    public static final String COUNT_VISITS = "select VEHICLE_REG_NUMBER, count(*) from ticket group by VEHICLE_REG_NUMBER";
+    public static final String COUNT_ARCHIVED_VISITS = "select VEHICLE_REG_NUMBER, count(*) from ticket_archive group by VEHICLE_REG_NUMBER";
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc limit 1";
 }
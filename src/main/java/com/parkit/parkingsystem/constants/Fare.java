@@ -3,4 +3,7 @@ package com.parkit.parkingsystem.constants;
 public class Fare {
     public static final double BIKE_RATE_PER_HOUR = 1.0;
     public static final double CAR_RATE_PER_HOUR = 1.5;
+    //for vehicles with at least RECURRING_USER_MIN_VISITS tickets, the current one included
+    public static final double RECURRING_USER_DISCOUNT = 0.05;
+    public static final int RECURRING_USER_MIN_VISITS = 2;
 }
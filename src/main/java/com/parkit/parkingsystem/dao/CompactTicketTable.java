@@ -0,0 +1,345 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Tickets stored column by column in primitive arrays: 35 bytes per ticket, where a Ticket with its two
+ * Dates, its String and its ParkingSpot takes well over 150. Rows are addressed by ticket id, in chunks of
+ * 1024 consecutive ids; a chunk is dropped as soon as its last ticket is removed, so archiving old tickets
+ * gives the memory back.
+ *
+ * Registration numbers of up to 12 characters among 0-9, A-Z and '-' are encoded in a long; any other is
+ * interned once and referred to by a negative code. Prices are held as a whole number of millicents, the
+ * unit of the fare engine. Not thread-safe.
+ */
+public class CompactTicketTable {
+
+    public static final int CHUNK_BITS = 10;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    public static final int MAX_PARKING_NUMBER = 0xffff;
+    public static final long NO_PLATE = Long.MIN_VALUE;
+
+    private static final long MILLICENTS_PER_UNIT = 100_000;
+    private static final long OPEN = Long.MIN_VALUE;
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private static final String PLATE_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-";
+    private static final int PLATE_BASE = PLATE_ALPHABET.length() + 1;
+    private static final int MAX_ENCODED_PLATE_LENGTH = 12;
+
+    private Chunk[] chunks = new Chunk[16];
+    private int size;
+    private int lastId;
+    private final Map<String, Integer> internedPlateIndexes = new HashMap<>();
+    private final List<String> internedPlates = new ArrayList<>();
+
+    private static final class Chunk {
+        final long[] inTimes = new long[CHUNK_SIZE];
+        final long[] outTimes = new long[CHUNK_SIZE];
+        final long[] plates = new long[CHUNK_SIZE];
+        final long[] prices = new long[CHUNK_SIZE];
+        final short[] parkingNumbers = new short[CHUNK_SIZE];
+        //parking type ordinal + 1, 0 for no ticket
+        final byte[] types = new byte[CHUNK_SIZE];
+        int live;
+    }
+
+    /**
+     * Adds the ticket, or replaces the ticket with the same id.
+     */
+    public void put(Ticket ticket) {
+        int id = ticket.getId();
+        int parkingNumber = ticket.getParkingSpot().getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException("Ticket id must be positive: " + id);
+        }
+        if (parkingNumber < 0 || parkingNumber > MAX_PARKING_NUMBER) {
+            throw new IllegalArgumentException("Parking number out of range: " + parkingNumber);
+        }
+        Chunk chunk = chunk(id, true);
+        int i = offset(id);
+        if (chunk.types[i] == 0) {
+            chunk.live++;
+            size++;
+        }
+        chunk.types[i] = (byte) (ticket.getParkingSpot().getParkingType().ordinal() + 1);
+        chunk.parkingNumbers[i] = (short) parkingNumber;
+        chunk.plates[i] = encodePlate(ticket.getVehicleRegNumber(), true);
+        chunk.prices[i] = toMillicents(ticket.getPrice());
+        chunk.inTimes[i] = ticket.getInTime().getTime();
+        chunk.outTimes[i] = ticket.getOutTime() == null ? OPEN : ticket.getOutTime().getTime();
+        lastId = Math.max(lastId, id);
+    }
+
+    public boolean contains(int id) {
+        Chunk chunk = chunk(id, false);
+        return chunk != null && chunk.types[offset(id)] != 0;
+    }
+
+    public boolean remove(int id) {
+        Chunk chunk = chunk(id, false);
+        int i = offset(id);
+        if (chunk == null || chunk.types[i] == 0) {
+            return false;
+        }
+        chunk.types[i] = 0;
+        size--;
+        if (--chunk.live == 0) {
+            chunks[(id - 1) >>> CHUNK_BITS] = null;
+        }
+        return true;
+    }
+
+    public boolean setPrice(int id, double price) {
+        Chunk chunk = chunk(id, false);
+        if (chunk == null || chunk.types[offset(id)] == 0) {
+            return false;
+        }
+        chunk.prices[offset(id)] = toMillicents(price);
+        return true;
+    }
+
+    public boolean setOutTime(int id, Date outTime) {
+        Chunk chunk = chunk(id, false);
+        if (chunk == null || chunk.types[offset(id)] == 0) {
+            return false;
+        }
+        chunk.outTimes[offset(id)] = outTime == null ? OPEN : outTime.getTime();
+        return true;
+    }
+
+    /**
+     * @return a new Ticket with the values of the row, or null if there is no ticket with that id
+     */
+    public Ticket get(int id) {
+        Row row = new Row();
+        return row.moveTo(id) ? row.toTicket() : null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the highest id ever put, even if that ticket was removed since
+     */
+    public int getLastId() {
+        return lastId;
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * Passes every ticket of the chunk to the action in id order, through a single Row that moves from
+     * ticket to ticket and must not be kept.
+     */
+    public void forEachInChunk(int chunkIndex, Consumer<Row> action) {
+        Chunk chunk = chunkIndex < chunks.length ? chunks[chunkIndex] : null;
+        if (chunk == null) {
+            return;
+        }
+        Row row = new Row();
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            if (chunk.types[i] != 0) {
+                row.set(chunk, i, (chunkIndex << CHUNK_BITS) + i + 1);
+                action.accept(row);
+            }
+        }
+    }
+
+    public void forEach(Consumer<Row> action) {
+        for (int c = 0; c < chunks.length; c++) {
+            forEachInChunk(c, action);
+        }
+    }
+
+    public Row row() {
+        return new Row();
+    }
+
+    /**
+     * @return the code of the registration number, or NO_PLATE if it would have to be interned and intern is false
+     */
+    public long encodePlate(String vehicleRegNumber, boolean intern) {
+        long code = encode(vehicleRegNumber);
+        if (code >= 0) {
+            return code;
+        }
+        Integer index = internedPlateIndexes.get(vehicleRegNumber);
+        if (index == null) {
+            if (!intern) {
+                return NO_PLATE;
+            }
+            index = internedPlates.size();
+            internedPlates.add(vehicleRegNumber);
+            internedPlateIndexes.put(vehicleRegNumber, index);
+        }
+        return -1L - index;
+    }
+
+    public String decodePlate(long code) {
+        if (code < 0) {
+            return internedPlates.get((int) (-1L - code));
+        }
+        char[] chars = new char[MAX_ENCODED_PLATE_LENGTH];
+        int start = chars.length;
+        while (code != 0) {
+            chars[--start] = PLATE_ALPHABET.charAt((int) (code % PLATE_BASE) - 1);
+            code /= PLATE_BASE;
+        }
+        return new String(chars, start, chars.length - start);
+    }
+
+    /**
+     * @return the registration number as base 38 digits, 0 standing for no character, or -1 if it cannot be encoded
+     */
+    private static long encode(String vehicleRegNumber) {
+        if (vehicleRegNumber.length() > MAX_ENCODED_PLATE_LENGTH) {
+            return -1;
+        }
+        long code = 0;
+        for (int i = 0; i < vehicleRegNumber.length(); i++) {
+            int digit = PLATE_ALPHABET.indexOf(vehicleRegNumber.charAt(i)) + 1;
+            if (digit == 0) {
+                return -1;
+            }
+            code = code * PLATE_BASE + digit;
+        }
+        return code;
+    }
+
+    private static long toMillicents(double price) {
+        return Math.round(price * MILLICENTS_PER_UNIT);
+    }
+
+    private Chunk chunk(int id, boolean create) {
+        if (id <= 0) {
+            return null;
+        }
+        int index = (id - 1) >>> CHUNK_BITS;
+        if (index >= chunks.length) {
+            if (!create) {
+                return null;
+            }
+            chunks = Arrays.copyOf(chunks, Math.max(2 * chunks.length, index + 1));
+        }
+        if (chunks[index] == null && create) {
+            chunks[index] = new Chunk();
+        }
+        return chunks[index];
+    }
+
+    private static int offset(int id) {
+        return (id - 1) & (CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Flyweight view of one ticket of the table, with the getters of Ticket plus allocation-free
+     * primitive ones. It reads the table directly, so it sees later changes to that ticket.
+     */
+    public final class Row {
+        private Chunk chunk;
+        private int i;
+        private int id;
+
+        private void set(Chunk chunk, int i, int id) {
+            this.chunk = chunk;
+            this.i = i;
+            this.id = id;
+        }
+
+        /**
+         * @return false, and the row is left where it was, if there is no ticket with that id
+         */
+        public boolean moveTo(int id) {
+            Chunk target = chunk(id, false);
+            if (target == null || target.types[offset(id)] == 0) {
+                return false;
+            }
+            set(target, offset(id), id);
+            return true;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getParkingNumber() {
+            return chunk.parkingNumbers[i] & 0xffff;
+        }
+
+        public ParkingType getParkingType() {
+            return PARKING_TYPES[chunk.types[i] - 1];
+        }
+
+        public int getParkingTypeOrdinal() {
+            return chunk.types[i] - 1;
+        }
+
+        public ParkingSpot getParkingSpot() {
+            return new ParkingSpot(getParkingNumber(), getParkingType(), false);
+        }
+
+        public long getPlateCode() {
+            return chunk.plates[i];
+        }
+
+        public String getVehicleRegNumber() {
+            return decodePlate(chunk.plates[i]);
+        }
+
+        public long getPriceMillicents() {
+            return chunk.prices[i];
+        }
+
+        public double getPrice() {
+            return chunk.prices[i] / (double) MILLICENTS_PER_UNIT;
+        }
+
+        public long getInTimeMillis() {
+            return chunk.inTimes[i];
+        }
+
+        public Date getInTime() {
+            return new Date(chunk.inTimes[i]);
+        }
+
+        public boolean isClosed() {
+            return chunk.outTimes[i] != OPEN;
+        }
+
+        /**
+         * Only meaningful when isClosed.
+         */
+        public long getOutTimeMillis() {
+            return chunk.outTimes[i];
+        }
+
+        public Date getOutTime() {
+            return isClosed() ? new Date(chunk.outTimes[i]) : null;
+        }
+
+        public Ticket toTicket() {
+            Ticket ticket = new Ticket();
+            ticket.setId(id);
+            ticket.setParkingSpot(getParkingSpot());
+            ticket.setVehicleRegNumber(getVehicleRegNumber());
+            ticket.setPrice(getPrice());
+            ticket.setInTime(getInTime());
+            ticket.setOutTime(getOutTime());
+            return ticket;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Parking spots kept in memory and made durable in a MappedLog. Every change appends the current state of
+ * the spot (number, type ordinal, available) under the log lock, so the last record of a spot always matches
+ * memory even when changes race. Opening the store replays the log; compaction keeps one record per spot.
+ */
+public class FileParkingSpotStore extends InMemoryParkingSpotStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("FileParkingSpotStore");
+
+    private static final int RECORD_SIZE = 4 + 1 + 1;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+    private final MappedLog log;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    public FileParkingSpotStore(Path file) throws IOException {
+        log = new MappedLog(file);
+        log.replay(payload -> restore(payload.getInt(), ParkingType.values()[payload.get()], payload.get() != 0));
+        reconcileOccupancy();
+    }
+
+    @Override
+    protected boolean persist(int parkingNumber) {
+        synchronized (log) {
+            try {
+                log.append(encode(parkingNumber));
+                return true;
+            } catch (IOException e) {
+                logger.error("Unable to write parking spot " + parkingNumber, e);
+                return false;
+            }
+        }
+    }
+
+    private ByteBuffer encode(int parkingNumber) {
+        record.clear();
+        record.putInt(parkingNumber)
+                .put((byte) getParkingType(parkingNumber).ordinal())
+                .put((byte) (isAvailable(parkingNumber) ? 1 : 0));
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Compacts the log once it holds more than twice as many records as there are spots.
+     * @return true if the log was compacted
+     */
+    public boolean compactIfNeeded() {
+        int records = log.getRecordCount();
+        if (records <= Math.max(MIN_RECORDS_BEFORE_COMPACTION, 2 * getParkingNumbers().size())) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    public void compact() {
+        synchronized (log) {
+            try {
+                log.compact(target -> {
+                    for (int parkingNumber : getParkingNumbers()) {
+                        target.append(encode(parkingNumber));
+                    }
+                });
+            } catch (IOException e) {
+                logger.error("Unable to compact the parking spot log", e);
+            }
+        }
+    }
+
+    public void force() {
+        log.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+}
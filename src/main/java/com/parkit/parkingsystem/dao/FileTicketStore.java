@@ -0,0 +1,180 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * Tickets kept in memory and made durable in MappedLogs. tickets.log holds the current state of every
+ * ticket, appended on every change under the log lock, and an archived marker for every ticket moved out.
+ * The archived tickets themselves go to tickets-archive.log, which is never compacted. A ticket is written
+ * to tickets-archive.log before its marker, so a crash in between leaves it held and archived again later.
+ * Opening the store replays tickets.log, then counts the visits of the tickets held and, once per id, of
+ * those in tickets-archive.log no longer held; compaction keeps one record per ticket still held.
+ *
+ * Ticket record: byte kind, int id, int parking number, byte parking type ordinal, double price,
+ * long in time millis, long out time millis (-1 while open), short length and UTF-8 registration number.
+ */
+public class FileTicketStore extends InMemoryTicketStore {
+
+    private static final Logger logger = LogManager.getLogger("FileTicketStore");
+
+    public static final String LOG_FILE = "tickets.log";
+    public static final String ARCHIVE_FILE = "tickets-archive.log";
+
+    private static final byte TICKET = 1;
+    private static final byte ARCHIVED = 2;
+    private static final byte LAST_ID = 3;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+    private final MappedLog log;
+    private final MappedLog archiveLog;
+
+    public FileTicketStore(Path directory) throws IOException {
+        log = new MappedLog(directory.resolve(LOG_FILE));
+        archiveLog = new MappedLog(directory.resolve(ARCHIVE_FILE));
+        log.replay(payload -> {
+            switch (payload.get()) {
+                case TICKET: restore(decode(payload)); break;
+                case ARCHIVED: restoreArchived(payload.getInt()); break;
+                case LAST_ID: restoreLastId(payload.getInt()); break;
+                default: throw new IllegalStateException("Unknown record in " + LOG_FILE);
+            }
+        });
+        //every ticket is either held or in the archive log, whatever was compacted
+        forEachStoredTicket(ticket -> restoreVisit(ticket.getVehicleRegNumber()));
+        BitSet archivedIds = new BitSet();
+        archiveLog.replay(payload -> {
+            if (payload.get() == TICKET) {
+                Ticket ticket = decode(payload);
+                //a ticket still held, or archived again, had its archived marker lost in a crash
+                if (!archivedIds.get(ticket.getId()) && !isStored(ticket.getId())) {
+                    archivedIds.set(ticket.getId());
+                    restoreVisit(ticket.getVehicleRegNumber());
+                }
+            }
+        });
+    }
+
+    @Override
+    protected boolean persist(int id) {
+        synchronized (log) {
+            Ticket ticket = getStoredTicket(id);
+            if (ticket == null) {
+                return true;
+            }
+            try {
+                log.append(encode(TICKET, ticket));
+                return true;
+            } catch (IOException e) {
+                logger.error("Unable to write ticket " + id, e);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    protected boolean archive(Ticket ticket) {
+        synchronized (log) {
+            try {
+                archiveLog.append(encode(TICKET, ticket));
+                log.append(idRecord(ARCHIVED, ticket.getId()));
+                return true;
+            } catch (IOException e) {
+                logger.error("Unable to archive ticket " + ticket.getId(), e);
+                return false;
+            }
+        }
+    }
+
+    private static ByteBuffer encode(byte kind, Ticket ticket) {
+        byte[] vehicleRegNumber = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + 4 + 1 + 8 + 8 + 8 + 2 + vehicleRegNumber.length);
+        record.put(kind)
+                .putInt(ticket.getId())
+                .putInt(ticket.getParkingSpot().getId())
+                .put((byte) ticket.getParkingSpot().getParkingType().ordinal())
+                .putDouble(ticket.getPrice())
+                .putLong(ticket.getInTime().getTime())
+                .putLong(ticket.getOutTime() == null ? -1 : ticket.getOutTime().getTime())
+                .putShort((short) vehicleRegNumber.length)
+                .put(vehicleRegNumber);
+        record.flip();
+        return record;
+    }
+
+    private static Ticket decode(ByteBuffer payload) {
+        Ticket ticket = new Ticket();
+        ticket.setId(payload.getInt());
+        int parkingNumber = payload.getInt();
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.values()[payload.get()], false));
+        ticket.setPrice(payload.getDouble());
+        ticket.setInTime(new Date(payload.getLong()));
+        long outTime = payload.getLong();
+        ticket.setOutTime(outTime < 0 ? null : new Date(outTime));
+        byte[] vehicleRegNumber = new byte[payload.getShort()];
+        payload.get(vehicleRegNumber);
+        ticket.setVehicleRegNumber(new String(vehicleRegNumber, StandardCharsets.UTF_8));
+        return ticket;
+    }
+
+    private static ByteBuffer idRecord(byte kind, int id) {
+        ByteBuffer record = ByteBuffer.allocate(1 + 4);
+        record.put(kind).putInt(id);
+        record.flip();
+        return record;
+    }
+
+    /**
+     * Compacts the log once it holds more than twice as many records as there are tickets.
+     * @return true if the log was compacted
+     */
+    public boolean compactIfNeeded() {
+        int records = log.getRecordCount();
+        if (records <= Math.max(MIN_RECORDS_BEFORE_COMPACTION, 2 * getTicketCount())) {
+            return false;
+        }
+        compact();
+        return true;
+    }
+
+    /**
+     * Rewrites the log with the last ticket id, so ids are never reused, and one record per ticket held.
+     */
+    public void compact() {
+        synchronized (log) {
+            try {
+                log.compact(target -> {
+                    target.append(idRecord(LAST_ID, getLastId()));
+                    forEachStoredTicket(ticket -> target.append(encode(TICKET, ticket)));
+                });
+            } catch (IOException e) {
+                logger.error("Unable to compact the ticket log", e);
+            }
+        }
+    }
+
+    public void force() {
+        log.force();
+        archiveLog.force();
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            log.close();
+            archiveLog.close();
+        } catch (IOException e) {
+            logger.error("Unable to close the ticket logs", e);
+        }
+    }
+}
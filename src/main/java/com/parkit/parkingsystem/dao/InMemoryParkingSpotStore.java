@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parking spots held only in memory: the type of every spot, the free-spot bitmap of
+ * ParkingSpotAvailabilityIndex and the occupancy counters. Spots are added at startup with addParkingSpot.
+ * Subclasses make the spots durable by overriding persist, which is called after every change.
+ */
+public class InMemoryParkingSpotStore implements ParkingSpotStore {
+
+    private final Map<Integer, ParkingType> parkingTypes = new ConcurrentHashMap<>();
+    private final ParkingSpotAvailabilityIndex availabilityIndex = new ParkingSpotAvailabilityIndex();
+    private final ParkingOccupancy occupancy = new ParkingOccupancy();
+
+    public InMemoryParkingSpotStore() {
+        availabilityIndex.markLoaded();
+    }
+
+    /**
+     * @return false if a spot with that number already exists or could not be stored
+     */
+    public boolean addParkingSpot(int parkingNumber, ParkingType parkingType, boolean available) {
+        if (parkingTypes.putIfAbsent(parkingNumber, parkingType) != null) {
+            return false;
+        }
+        availabilityIndex.setAvailable(parkingType, parkingNumber, available);
+        boolean persisted = persist(parkingNumber);
+        if (!persisted) {
+            availabilityIndex.setAvailable(parkingType, parkingNumber, false);
+            parkingTypes.remove(parkingNumber);
+        }
+        reconcileOccupancy();
+        return persisted;
+    }
+
+    /**
+     * Sets a spot as read back from storage, without persisting it again.
+     */
+    void restore(int parkingNumber, ParkingType parkingType, boolean available) {
+        parkingTypes.put(parkingNumber, parkingType);
+        availabilityIndex.setAvailable(parkingType, parkingNumber, available);
+    }
+
+    /**
+     * Stores the current state of the spot.
+     * @return false if it could not be stored, in which case the change is undone
+     */
+    protected boolean persist(int parkingNumber) {
+        return true;
+    }
+
+    public Set<Integer> getParkingNumbers() {
+        return parkingTypes.keySet();
+    }
+
+    public ParkingType getParkingType(int parkingNumber) {
+        return parkingTypes.get(parkingNumber);
+    }
+
+    public boolean isAvailable(int parkingNumber) {
+        ParkingType parkingType = parkingTypes.get(parkingNumber);
+        return parkingType != null && availabilityIndex.isAvailable(parkingType, parkingNumber);
+    }
+
+    public ParkingSpotAvailabilityIndex getAvailabilityIndex() {
+        return availabilityIndex;
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        return availabilityIndex.getNextAvailableSlot(parkingType);
+    }
+
+    @Override
+    public ParkingSpot reserveParkingSpot(ParkingType parkingType) {
+        int parkingNumber = availabilityIndex.claimNextAvailableSlot(parkingType);
+        if (parkingNumber <= 0) {
+            return null;
+        }
+        occupancy.spotTaken(parkingType);
+        if (!persist(parkingNumber)) {
+            if (availabilityIndex.setAvailable(parkingType, parkingNumber, true)) {
+                occupancy.spotReleased(parkingType);
+            }
+            return null;
+        }
+        return new ParkingSpot(parkingNumber, parkingType, false);
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        ParkingType parkingType = parkingTypes.get(parkingSpot.getId());
+        if (parkingType == null) {
+            return false;
+        }
+        if (!setAvailable(parkingType, parkingSpot.getId(), parkingSpot.isAvailable())) {
+            return true;
+        }
+        if (!persist(parkingSpot.getId())) {
+            setAvailable(parkingType, parkingSpot.getId(), !parkingSpot.isAvailable());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean setAvailable(ParkingType parkingType, int parkingNumber, boolean available) {
+        if (!availabilityIndex.setAvailable(parkingType, parkingNumber, available)) {
+            return false;
+        }
+        if (available) {
+            occupancy.spotReleased(parkingType);
+        } else {
+            occupancy.spotTaken(parkingType);
+        }
+        return true;
+    }
+
+    @Override
+    public ParkingOccupancy getOccupancy() {
+        if (!occupancy.isLoaded()) {
+            reconcileOccupancy();
+        }
+        return occupancy;
+    }
+
+    @Override
+    public synchronized int reconcileOccupancy() {
+        int[] total = new int[ParkingType.values().length];
+        int[] free = new int[total.length];
+        for (Map.Entry<Integer, ParkingType> spot : parkingTypes.entrySet()) {
+            ParkingType parkingType = spot.getValue();
+            total[parkingType.ordinal()]++;
+            free[parkingType.ordinal()] += availabilityIndex.isAvailable(parkingType, spot.getKey()) ? 1 : 0;
+        }
+        int drift = 0;
+        if (occupancy.isLoaded()) {
+            for (ParkingType parkingType : ParkingType.values()) {
+                drift += Math.abs(occupancy.getFree(parkingType) - free[parkingType.ordinal()])
+                        + Math.abs(occupancy.getTotal(parkingType) - total[parkingType.ordinal()]);
+            }
+        }
+        occupancy.reset(total, free);
+        return drift;
+    }
+}
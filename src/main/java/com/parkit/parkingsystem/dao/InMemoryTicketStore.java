@@ -0,0 +1,395 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tickets held only in memory, in a CompactTicketTable, with the id of the latest ticket of each vehicle
+ * in a LongIntHashMap keyed by encoded registration number. Both are guarded by a read-write lock; scans
+ * take it one chunk of the table at a time so gates are never held up for long. Readers always get new
+ * Ticket objects. Subclasses make the tickets durable by overriding persist and archive, which are called
+ * outside the lock.
+ */
+public class InMemoryTicketStore implements TicketStore {
+
+    private static final Logger logger = LogManager.getLogger("InMemoryTicketStore");
+
+    private final CompactTicketTable tickets = new CompactTicketTable();
+    private final LongIntHashMap lastTicketIds = new LongIntHashMap();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CompactTicketTable archivedTickets = new CompactTicketTable();
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final RecurringUserIndex recurringUsers = new RecurringUserIndex();
+
+    interface TicketVisitor {
+        void visit(Ticket ticket) throws IOException;
+    }
+
+    /**
+     * Sets a ticket as read back from storage, without persisting it again.
+     */
+    void restore(Ticket ticket) {
+        lock.writeLock().lock();
+        try {
+            tickets.put(ticket);
+            lastTicketIds.putIfGreater(tickets.encodePlate(ticket.getVehicleRegNumber(), true), ticket.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        restoreLastId(ticket.getId());
+    }
+
+    /**
+     * Drops a ticket read back from storage as archived.
+     */
+    void restoreArchived(int id) {
+        remove(id);
+        restoreLastId(id);
+    }
+
+    /**
+     * Counts a ticket read back from storage as a visit of its vehicle.
+     */
+    void restoreVisit(String vehicleRegNumber) {
+        recurringUsers.addVisit(vehicleRegNumber);
+    }
+
+    RecurringUserIndex getRecurringUsers() {
+        return recurringUsers;
+    }
+
+    void restoreLastId(int id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    int getLastId() {
+        return lastId.get();
+    }
+
+    Ticket getStoredTicket(int id) {
+        lock.readLock().lock();
+        try {
+            return tickets.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean isStored(int id) {
+        lock.readLock().lock();
+        try {
+            return tickets.contains(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void forEachStoredTicket(TicketVisitor visitor) throws IOException {
+        List<Ticket> batch = new ArrayList<>(CompactTicketTable.CHUNK_SIZE);
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            batch.clear();
+            lock.readLock().lock();
+            try {
+                tickets.forEachInChunk(chunk, row -> batch.add(row.toTicket()));
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (Ticket ticket : batch) {
+                visitor.visit(ticket);
+            }
+        }
+    }
+
+    /**
+     * Stores the current state of the ticket, or nothing if it is no longer held.
+     * @return false if it could not be stored, in which case the change is undone
+     */
+    protected boolean persist(int id) {
+        return true;
+    }
+
+    /**
+     * Keeps a ticket that was taken out of the store.
+     * @return false if it could not be kept, in which case it is put back
+     */
+    protected boolean archive(Ticket ticket) {
+        synchronized (archivedTickets) {
+            archivedTickets.put(ticket);
+        }
+        return true;
+    }
+
+    public int getTicketCount() {
+        lock.readLock().lock();
+        try {
+            return tickets.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getArchivedTicketCount() {
+        synchronized (archivedTickets) {
+            return archivedTickets.size();
+        }
+    }
+
+    private int getChunkCount() {
+        lock.readLock().lock();
+        try {
+            return tickets.getChunkCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        int id = lastId.incrementAndGet();
+        ticket.setId(id);
+        lock.writeLock().lock();
+        try {
+            tickets.put(ticket);
+        } catch (IllegalArgumentException e) {
+            logger.error("Unable to save ticket", e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        boolean persisted = persist(id);
+        lock.writeLock().lock();
+        try {
+            if (persisted) {
+                lastTicketIds.putIfGreater(tickets.encodePlate(ticket.getVehicleRegNumber(), true), id);
+            } else {
+                tickets.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (persisted) {
+            recurringUsers.addVisit(ticket.getVehicleRegNumber());
+        }
+        return persisted;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        lock.readLock().lock();
+        try {
+            long plate = tickets.encodePlate(vehicleRegNumber, false);
+            int id = plate == CompactTicketTable.NO_PLATE ? 0 : lastTicketIds.get(plate);
+            return id == 0 ? null : tickets.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the ticket, checking it is still open under the same lock: of two gates closing the same
+     * ticket, only the first one succeeds.
+     * @return false if the ticket is unknown or already closed
+     */
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        return update(ticket.getId(), ticket.getPrice(), true, ticket.getOutTime());
+    }
+
+    @Override
+    public boolean updateTicketPrices(int[] ids, double[] prices, int count) {
+        boolean updated = true;
+        for (int i = 0; i < count; i++) {
+            updated &= update(ids[i], prices[i], false, null);
+        }
+        return updated;
+    }
+
+    @Override
+    public int getVisitCount(String vehicleRegNumber) {
+        return recurringUsers.getVisitCount(vehicleRegNumber);
+    }
+
+    private boolean update(int id, double price, boolean setOutTime, Date outTime) {
+        double previousPrice;
+        Date previousOutTime;
+        lock.writeLock().lock();
+        try {
+            CompactTicketTable.Row row = tickets.row();
+            if (!row.moveTo(id) || (setOutTime && row.isClosed())) {
+                return false;
+            }
+            previousPrice = row.getPrice();
+            previousOutTime = row.getOutTime();
+            tickets.setPrice(id, price);
+            if (setOutTime) {
+                tickets.setOutTime(id, outTime);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (persist(id)) {
+            return true;
+        }
+        lock.writeLock().lock();
+        try {
+            tickets.setPrice(id, previousPrice);
+            tickets.setOutTime(id, previousOutTime);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return false;
+    }
+
+    private Ticket remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Ticket ticket = tickets.get(id);
+            if (ticket != null) {
+                tickets.remove(id);
+                lastTicketIds.remove(tickets.encodePlate(ticket.getVehicleRegNumber(), true), id);
+            }
+            return ticket;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A vehicle's tickets are issued in entry order and archived oldest first, so the visit number of a
+     * ticket is its vehicle's archived visits plus its rank among the vehicle's tickets still held. A first
+     * pass counts the tickets held per vehicle, the second keeps a running count per vehicle.
+     */
+    @Override
+    public long forEachClosedTicket(int fetchSize, ClosedTicketHandler handler) {
+        LongIntHashMap heldTickets = new LongIntHashMap();
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            lock.readLock().lock();
+            try {
+                tickets.forEachInChunk(chunk, row ->
+                        heldTickets.put(row.getPlateCode(), heldTickets.get(row.getPlateCode()) + 1));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        LongIntHashMap seenTickets = new LongIntHashMap(heldTickets.size());
+        long[] count = {0};
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            lock.readLock().lock();
+            try {
+                tickets.forEachInChunk(chunk, row -> {
+                    long plate = row.getPlateCode();
+                    int seen = seenTickets.get(plate) + 1;
+                    seenTickets.put(plate, seen);
+                    if (row.isClosed()) {
+                        String vehicleRegNumber = row.getVehicleRegNumber();
+                        int archived = Math.max(0, recurringUsers.getVisitCount(vehicleRegNumber) - heldTickets.get(plate));
+                        handler.accept(row.getId(), vehicleRegNumber, archived + seen, row.getInTimeMillis(),
+                                row.getOutTimeMillis(), row.getParkingTypeOrdinal(), row.getPrice());
+                        count[0]++;
+                    }
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return count[0];
+    }
+
+    @Override
+    public long forEachClosedTicketAfter(long outTimeMillis, int id, long closedBeforeMillis, int fetchSize,
+                                         TicketRowHandler handler) {
+        long count = 0;
+        try {
+            for (int ticketId : closedTicketsAfter(closedBeforeMillis, outTimeMillis, id, Integer.MAX_VALUE)) {
+                Ticket ticket = getStoredTicket(ticketId);
+                if (ticket == null || ticket.getOutTime() == null) {
+                    continue;
+                }
+                handler.accept(ticket.getId(), ticket.getParkingSpot().getId(), ticket.getVehicleRegNumber(),
+                        ticket.getPrice(), ticket.getInTime().getTime(), ticket.getOutTime().getTime(),
+                        ticket.getParkingSpot().getParkingType().ordinal());
+                count++;
+            }
+            return count;
+        } catch (Exception ex) {
+            logger.error("Error reading closed tickets", ex);
+            return -1;
+        }
+    }
+
+    @Override
+    public int archiveClosedTickets(long cutoffMillis, long[] position, int chunkSize) {
+        int count = 0;
+        for (int id : closedTicketsAfter(cutoffMillis, position[0], (int) position[1], chunkSize)) {
+            Ticket ticket = remove(id);
+            if (ticket == null) {
+                continue;
+            }
+            if (!archive(ticket)) {
+                restore(ticket);
+                return -1;
+            }
+            position[0] = ticket.getOutTime().getTime();
+            position[1] = id;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the ids of up to limit tickets closed before the cutoff and after the (out time, id) position,
+     * in that order
+     */
+    private int[] closedTicketsAfter(long cutoffMillis, long outTimeMillis, int id, int limit) {
+        long[][] outTimes = {new long[64]};
+        int[][] ids = {new int[64]};
+        int[] size = {0};
+        for (int chunk = 0; chunk < getChunkCount(); chunk++) {
+            lock.readLock().lock();
+            try {
+                tickets.forEachInChunk(chunk, row -> {
+                    long outTime = row.getOutTimeMillis();
+                    if (row.isClosed() && outTime < cutoffMillis
+                            && (outTime > outTimeMillis || (outTime == outTimeMillis && row.getId() > id))) {
+                        if (size[0] == ids[0].length) {
+                            outTimes[0] = Arrays.copyOf(outTimes[0], 2 * size[0]);
+                            ids[0] = Arrays.copyOf(ids[0], 2 * size[0]);
+                        }
+                        outTimes[0][size[0]] = outTime;
+                        ids[0][size[0]++] = row.getId();
+                    }
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        long[] keys = outTimes[0];
+        int[] values = ids[0];
+        //ids are visited in increasing order, so a stable sort on the out time gives (out time, id) order
+        Integer[] order = new Integer[size[0]];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> keys[i]));
+        int[] sorted = new int[Math.min(limit, order.length)];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = values[order[i]];
+        }
+        return sorted;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Parking spots kept in memory and recorded as SPOT_CLAIMED and SPOT_FREED events of a ParkingJournal.
+ * The event is appended under the journal lock with the state of the spot read there, so the last event of a
+ * spot always matches memory even when changes race. A new spot is recorded as freed, or claimed if it is
+ * added unavailable.
+ *
+ * Snapshot: int spot count, then per spot int parking number, byte parking type ordinal and byte available.
+ */
+public class JournalParkingSpotStore extends InMemoryParkingSpotStore implements ParkingJournal.Participant {
+
+    private static final Logger logger = LogManager.getLogger("JournalParkingSpotStore");
+
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private final ParkingJournal journal;
+
+    public JournalParkingSpotStore(ParkingJournal journal) {
+        this.journal = journal;
+        journal.register(this);
+    }
+
+    @Override
+    public boolean addParkingSpot(int parkingNumber, ParkingType parkingType, boolean available) {
+        return journal.change(() -> super.addParkingSpot(parkingNumber, parkingType, available));
+    }
+
+    @Override
+    public ParkingSpot reserveParkingSpot(ParkingType parkingType) {
+        return journal.change(() -> super.reserveParkingSpot(parkingType));
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        return journal.change(() -> super.updateParking(parkingSpot));
+    }
+
+    @Override
+    protected boolean persist(int parkingNumber) {
+        synchronized (journal) {
+            try {
+                journal.appendSpot(isAvailable(parkingNumber) ? ParkingJournal.Kind.SPOT_FREED : ParkingJournal.Kind.SPOT_CLAIMED,
+                        parkingNumber, getParkingType(parkingNumber));
+                return true;
+            } catch (IOException e) {
+                logger.error("Unable to journal parking spot " + parkingNumber, e);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(getParkingNumbers().size());
+        for (int parkingNumber : getParkingNumbers()) {
+            out.writeInt(parkingNumber);
+            out.writeByte(getParkingType(parkingNumber).ordinal());
+            out.writeByte(isAvailable(parkingNumber) ? 1 : 0);
+        }
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        for (int count = in.getInt(); count > 0; count--) {
+            restore(in.getInt(), PARKING_TYPES[in.get()], in.get() != 0);
+        }
+    }
+
+    @Override
+    public void apply(ParkingJournal.Event event) {
+        switch (event.getKind()) {
+            case SPOT_CLAIMED:
+                restore(event.getParkingNumber(), event.getParkingType(), false);
+                break;
+            case SPOT_FREED:
+                restore(event.getParkingNumber(), event.getParkingType(), true);
+                break;
+            default:
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Tickets kept in memory and recorded as ENTRY, EXIT and ARCHIVED events of a ParkingJournal. Archived
+ * tickets are dropped from memory; their events stay in the journal segments.
+ *
+ * Snapshot: int last ticket id, int ticket count, then per ticket int id, int parking number, byte parking
+ * type ordinal, double price, long in time millis, long out time millis (-1 while open), short length and
+ * UTF-8 registration number, then the visits of RecurringUserIndex.
+ */
+public class JournalTicketStore extends InMemoryTicketStore implements ParkingJournal.Participant {
+
+    private static final Logger logger = LogManager.getLogger("JournalTicketStore");
+
+    private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+    private final ParkingJournal journal;
+
+    public JournalTicketStore(ParkingJournal journal) {
+        this.journal = journal;
+        journal.register(this);
+    }
+
+    @Override
+    public boolean saveTicket(Ticket ticket) {
+        return journal.change(() -> super.saveTicket(ticket));
+    }
+
+    @Override
+    public boolean updateTicket(Ticket ticket) {
+        return journal.change(() -> super.updateTicket(ticket));
+    }
+
+    @Override
+    public boolean updateTicketPrices(int[] ids, double[] prices, int count) {
+        return journal.change(() -> super.updateTicketPrices(ids, prices, count));
+    }
+
+    @Override
+    public int archiveClosedTickets(long cutoffMillis, long[] position, int chunkSize) {
+        return journal.change(() -> super.archiveClosedTickets(cutoffMillis, position, chunkSize));
+    }
+
+    @Override
+    protected boolean persist(int id) {
+        synchronized (journal) {
+            Ticket ticket = getStoredTicket(id);
+            if (ticket == null) {
+                return true;
+            }
+            try {
+                if (ticket.getOutTime() == null) {
+                    journal.appendEntry(ticket);
+                } else {
+                    journal.appendExit(ticket);
+                }
+                return true;
+            } catch (IOException e) {
+                logger.error("Unable to journal ticket " + id, e);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    protected boolean archive(Ticket ticket) {
+        try {
+            journal.appendArchived(ticket.getId());
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to journal archived ticket " + ticket.getId(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(getLastId());
+        out.writeInt(getTicketCount());
+        forEachStoredTicket(ticket -> {
+            out.writeInt(ticket.getId());
+            out.writeInt(ticket.getParkingSpot().getId());
+            out.writeByte(ticket.getParkingSpot().getParkingType().ordinal());
+            out.writeDouble(ticket.getPrice());
+            out.writeLong(ticket.getInTime().getTime());
+            out.writeLong(ticket.getOutTime() == null ? -1 : ticket.getOutTime().getTime());
+            ParkingJournal.writeString(out, ticket.getVehicleRegNumber());
+        });
+        getRecurringUsers().writeTo(out);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        restoreLastId(in.getInt());
+        for (int count = in.getInt(); count > 0; count--) {
+            Ticket ticket = new Ticket();
+            ticket.setId(in.getInt());
+            int parkingNumber = in.getInt();
+            ticket.setParkingSpot(new ParkingSpot(parkingNumber, PARKING_TYPES[in.get()], false));
+            ticket.setPrice(in.getDouble());
+            ticket.setInTime(new Date(in.getLong()));
+            long outTime = in.getLong();
+            ticket.setOutTime(outTime < 0 ? null : new Date(outTime));
+            ticket.setVehicleRegNumber(ParkingJournal.readString(in));
+            restore(ticket);
+        }
+        getRecurringUsers().readFrom(in);
+    }
+
+    @Override
+    public void apply(ParkingJournal.Event event) {
+        switch (event.getKind()) {
+            case ENTRY: {
+                Ticket ticket = new Ticket();
+                ticket.setId(event.getTicketId());
+                ticket.setParkingSpot(new ParkingSpot(event.getParkingNumber(), event.getParkingType(), false));
+                ticket.setVehicleRegNumber(event.getVehicleRegNumber());
+                ticket.setInTime(new Date(event.getInTimeMillis()));
+                restore(ticket);
+                restoreVisit(event.getVehicleRegNumber());
+                break;
+            }
+            case EXIT: {
+                Ticket ticket = getStoredTicket(event.getTicketId());
+                if (ticket != null) {
+                    ticket.setOutTime(new Date(event.getOutTimeMillis()));
+                    ticket.setPrice(event.getPrice());
+                    restore(ticket);
+                }
+                break;
+            }
+            case ARCHIVED:
+                restoreArchived(event.getTicketId());
+                break;
+            default:
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.IOException;
+
+/**
+ * Open-addressing hash map from long keys to positive int values, with linear probing and no boxing:
+ * 16 bytes a slot where a HashMap entry with its boxed key and value takes over 60. 0 stands for no value.
+ * Not thread-safe, but get reads the table through a single reference, so under an optimistic lock a get
+ * racing with a writer can only return a wrong value, to be discarded, and never fails.
+ */
+class LongIntHashMap {
+
+    //key and value of each slot side by side, in the same cache line
+    private long[] table;
+    private int size;
+
+    LongIntHashMap() {
+        this(16);
+    }
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 4 / 3) - 1) << 1;
+        table = new long[2 * capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value of the key, or 0 if it has none
+     */
+    int get(long key) {
+        long[] table = this.table;
+        int mask = (table.length >>> 1) - 1;
+        for (int slot = slot(key, mask); table[2 * slot + 1] != 0; slot = (slot + 1) & mask) {
+            if (table[2 * slot] == key) {
+                return (int) table[2 * slot + 1];
+            }
+        }
+        return 0;
+    }
+
+    void put(long key, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Values must be positive: " + value);
+        }
+        int mask = mask();
+        int slot = slot(key, mask);
+        for (; table[2 * slot + 1] != 0; slot = (slot + 1) & mask) {
+            if (table[2 * slot] == key) {
+                table[2 * slot + 1] = value;
+                return;
+            }
+        }
+        table[2 * slot] = key;
+        table[2 * slot + 1] = value;
+        if (++size > (mask + 1) * 3 / 4) {
+            resize();
+        }
+    }
+
+    /**
+     * Sets the value of the key to the given value if it has no value or a lower one.
+     */
+    void putIfGreater(long key, int value) {
+        if (get(key) < value) {
+            put(key, value);
+        }
+    }
+
+    /**
+     * Removes the key only if it has the given value.
+     * @return true if it was removed
+     */
+    boolean remove(long key, int value) {
+        int mask = mask();
+        for (int slot = slot(key, mask); table[2 * slot + 1] != 0; slot = (slot + 1) & mask) {
+            if (table[2 * slot] == key) {
+                if (table[2 * slot + 1] != value) {
+                    return false;
+                }
+                removeAt(slot, mask);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fills the hole left at the slot by moving back the following entries that may be moved there, so
+     * lookups never stop early at the hole.
+     */
+    private void removeAt(int hole, int mask) {
+        for (int next = (hole + 1) & mask; table[2 * next + 1] != 0; next = (next + 1) & mask) {
+            int home = slot(table[2 * next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[2 * hole] = table[2 * next];
+                table[2 * hole + 1] = table[2 * next + 1];
+                hole = next;
+            }
+        }
+        table[2 * hole + 1] = 0;
+        size--;
+    }
+
+    interface EntryVisitor {
+        void visit(long key, int value) throws IOException;
+    }
+
+    void forEach(EntryVisitor visitor) throws IOException {
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i + 1] != 0) {
+                visitor.visit(table[i], (int) table[i + 1]);
+            }
+        }
+    }
+
+    private void resize() {
+        long[] oldTable = table;
+        long[] newTable = new long[oldTable.length * 2];
+        int mask = (newTable.length >>> 1) - 1;
+        for (int i = 0; i < oldTable.length; i += 2) {
+            if (oldTable[i + 1] != 0) {
+                int slot = slot(oldTable[i], mask);
+                while (newTable[2 * slot + 1] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable[2 * slot] = oldTable[i];
+                newTable[2 * slot + 1] = oldTable[i + 1];
+            }
+        }
+        //published once filled
+        table = newTable;
+    }
+
+    private int mask() {
+        return (table.length >>> 1) - 1;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
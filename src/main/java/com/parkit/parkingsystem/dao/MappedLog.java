@@ -0,0 +1,185 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.util.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of small binary records in a memory-mapped file, the storage of the file backend.
+ * Each record is its payload length, the CRC32 of its payload and the payload. Replay stops at the first
+ * record that is not complete and intact, which is where a write torn by a crash ends. The mapping doubles
+ * when it is full. compact rewrites the records still needed into a side file that then atomically replaces
+ * the log.
+ */
+class MappedLog implements Closeable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    private static final Metrics.Timer appendTimer = Metrics.timer("storage.log.append");
+    private static final Metrics.Timer compactTimer = Metrics.timer("storage.log.compact");
+
+    interface RecordReader {
+        void read(ByteBuffer payload);
+    }
+
+    interface RecordWriter {
+        void writeTo(MappedLog log) throws IOException;
+    }
+
+    private final Path file;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    private int recordCount;
+
+    MappedLog(Path file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map((int) Math.min(Integer.MAX_VALUE, Math.max(channel.size(), INITIAL_CAPACITY)));
+        end = 0;
+        recordCount = 0;
+        int next;
+        while ((next = next(end)) > 0) {
+            end = next;
+            recordCount++;
+        }
+        terminate();
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * @return the position after the record at the given position, or -1 if there is no intact record there
+     */
+    private int next(int position) {
+        if (position + HEADER_SIZE > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.capacity() - position - HEADER_SIZE) {
+            return -1;
+        }
+        crc.reset();
+        crc.update(payload(position, length));
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? position + HEADER_SIZE + length : -1;
+    }
+
+    private ByteBuffer payload(int position, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+        return payload.slice();
+    }
+
+    /**
+     * Zeroes the length after the last record, so leftovers of a torn write are never read as a record.
+     */
+    private void terminate() {
+        if (end + 4 <= buffer.capacity()) {
+            buffer.putInt(end, 0);
+        }
+    }
+
+    synchronized void append(ByteBuffer payload) throws IOException {
+        long start = appendTimer.start();
+        int length = payload.remaining();
+        ensureCapacity(HEADER_SIZE + length + 4);
+        crc.reset();
+        crc.update(payload.duplicate());
+        buffer.putInt(end + 4, (int) crc.getValue());
+        ByteBuffer target = buffer.duplicate();
+        target.position(end + HEADER_SIZE);
+        target.put(payload);
+        buffer.putInt(end, length);
+        end += HEADER_SIZE + length;
+        recordCount++;
+        terminate();
+        appendTimer.stop(start);
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        if (needed > buffer.capacity() - end) {
+            long capacity = Math.max(2L * buffer.capacity(), (long) end + needed);
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("Log " + file + " is full");
+            }
+            map((int) capacity);
+        }
+    }
+
+    /**
+     * Passes the payload of every record, oldest first, to the reader.
+     * @return the number of records read
+     */
+    synchronized int replay(RecordReader reader) {
+        int position = 0;
+        int count = 0;
+        while (position < end) {
+            int length = buffer.getInt(position);
+            reader.read(payload(position, length));
+            position += HEADER_SIZE + length;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the log with the records appended by the writer, typically one per live entry.
+     */
+    synchronized void compact(RecordWriter writer) throws IOException {
+        long start = compactTimer.start();
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        try (MappedLog target = new MappedLog(compacted)) {
+            writer.writeTo(target);
+        }
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+        compactTimer.stop(start);
+    }
+
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    synchronized int getSize() {
+        return end;
+    }
+
+    /**
+     * Writes the mapped pages back to the file, which makes the records appended so far survive a power
+     * loss and not only a crash of the process. Appends are not held up while the pages are written.
+     */
+    void force() {
+        MappedByteBuffer current;
+        synchronized (this) {
+            current = buffer;
+        }
+        current.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            buffer.force();
+            channel.close();
+        }
+    }
+}
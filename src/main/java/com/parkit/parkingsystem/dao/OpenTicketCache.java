@@ -0,0 +1,158 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of open tickets (no out time yet) keyed by vehicle registration number.
+ * Entries also expire after a fixed time to live. Readers get a copy of the cached ticket, so a gate
+ * pricing a ticket never changes the one another gate reads; tickets are closed through close.
+ */
+public class OpenTicketCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final int maxSize;
+    private final long timeToLiveMillis;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public OpenTicketCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    public OpenTicketCache(int maxSize, long timeToLiveMillis) {
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > OpenTicketCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Ticket get(String vehicleRegNumber) {
+        Entry entry = entries.get(vehicleRegNumber);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.expiresAt) {
+            entries.remove(vehicleRegNumber);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(entry.ticket);
+    }
+
+    public synchronized void put(Ticket ticket) {
+        if (ticket.getOutTime() != null) {
+            return;
+        }
+        Entry entry = entries.get(ticket.getVehicleRegNumber());
+        if (entry != null && entry.closed && entry.ticket.getInTime().equals(ticket.getInTime())) {
+            //read back from a table the close has not reached yet
+            return;
+        }
+        entries.put(ticket.getVehicleRegNumber(), new Entry(ticket, false, System.currentTimeMillis() + timeToLiveMillis));
+    }
+
+    /**
+     * Marks the visit of the ticket closed, with its out time and price, unless another gate closed it
+     * first. Until the entry expires, get returns the closed ticket rather than reading the table, for
+     * writes that reach the table later.
+     * @return the ticket cached when the visit was opened, the ticket itself if it was not cached, or null
+     * if the visit is already closed
+     */
+    public synchronized Ticket close(Ticket ticket) {
+        Entry entry = entries.get(ticket.getVehicleRegNumber());
+        boolean sameVisit = entry != null && entry.ticket.getInTime().equals(ticket.getInTime());
+        if (sameVisit && entry.closed) {
+            return null;
+        }
+        Ticket opened = sameVisit ? entry.ticket : ticket;
+        entries.put(ticket.getVehicleRegNumber(), new Entry(copy(ticket), true, System.currentTimeMillis() + timeToLiveMillis));
+        return opened;
+    }
+
+    public synchronized void evict(String vehicleRegNumber) {
+        entries.remove(vehicleRegNumber);
+    }
+
+    public synchronized void evictExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now > it.next().expiresAt) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "OpenTicketCache[size=" + size() + " hits=" + getHits() + " misses=" + getMisses()
+                + " evictions=" + getEvictions() + "]";
+    }
+
+    private static Ticket copy(Ticket ticket) {
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setPrice(ticket.getPrice());
+        copy.setInTime(ticket.getInTime());
+        copy.setOutTime(ticket.getOutTime());
+        return copy;
+    }
+
+    private static class Entry {
+        private final Ticket ticket;
+        private final boolean closed;
+        private final long expiresAt;
+
+        Entry(Ticket ticket, boolean closed, long expiresAt) {
+            this.ticket = ticket;
+            this.closed = closed;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
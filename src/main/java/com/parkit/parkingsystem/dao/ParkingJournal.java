@@ -0,0 +1,477 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Append-only journal of what happens in the parking lot: spots claimed and freed, vehicles entering and
+ * leaving, tickets archived. Events are numbered from 1 and appended to the MappedLog of the current
+ * segment, events-[first number].log. With sync on, a change returns once its events are on disk; the
+ * first change to wait forces the segment for every event appended so far, so concurrent gates share one
+ * force (group commit).
+ *
+ * A snapshot, snapshot-[last number].bin, holds the state written by the participants (the stores) after
+ * a given event, and starts a new segment. Opening the journal reads the latest snapshot and replays the
+ * events after it. Older segments are kept, so the events of a past day can be replayed for a dispute.
+ * Changes run under the shared side of a lock that snapshots take exclusively, so a snapshot never holds a
+ * change half applied.
+ *
+ * Event record: byte kind, long time millis, then for spot events int parking number and byte parking type
+ * ordinal, for ENTRY int ticket id, int parking number, byte parking type ordinal, long in time millis,
+ * short length and UTF-8 registration number, for EXIT int ticket id, long out time millis and double
+ * price, and for ARCHIVED int ticket id. An EXIT of a ticket already closed is a new price.
+ */
+public class ParkingJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("ParkingJournal");
+
+    public static final int DEFAULT_SNAPSHOT_EVENTS = 10000;
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOT_MAGIC = 0x504a5331;
+
+    private static final Metrics.Timer commitTimer = Metrics.timer("storage.journal.commit");
+    private static final Metrics.Timer snapshotTimer = Metrics.timer("storage.journal.snapshot");
+
+    public enum Kind { SPOT_CLAIMED, SPOT_FREED, ENTRY, EXIT, ARCHIVED }
+
+    public interface EventReader {
+        void read(long number, Event event);
+    }
+
+    /**
+     * State kept in the snapshots and rebuilt from the events.
+     */
+    interface Participant {
+        void writeSnapshot(DataOutputStream out) throws IOException;
+
+        void readSnapshot(ByteBuffer in);
+
+        void apply(Event event);
+    }
+
+    private final Path directory;
+    private final boolean sync;
+    private final List<Participant> participants = new ArrayList<>();
+    private final ReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private final Lock commitLock = new ReentrantLock();
+    private final Condition committed = commitLock.newCondition();
+    private MappedLog segment;
+    private long segmentFirstNumber;
+    private volatile long lastNumber;
+    private long snapshotNumber;
+    //guarded by commitLock
+    private long durableNumber;
+    private boolean forcing;
+
+    /**
+     * @param sync true to have every change on disk before it returns, false to only survive a crash of the
+     * process
+     */
+    public ParkingJournal(Path directory, boolean sync) throws IOException {
+        this.directory = directory;
+        this.sync = sync;
+        Files.createDirectories(directory);
+    }
+
+    void register(Participant participant) {
+        participants.add(participant);
+    }
+
+    /**
+     * Loads the latest snapshot into the participants and applies the events after it.
+     * @return the number of events applied
+     */
+    public synchronized long recover() throws IOException {
+        TreeMap<Long, Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshots.isEmpty()) {
+            snapshotNumber = snapshots.lastKey();
+            try (FileChannel channel = FileChannel.open(snapshots.lastEntry().getValue(), StandardOpenOption.READ)) {
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (in.getInt() != SNAPSHOT_MAGIC || in.getLong() != snapshotNumber) {
+                    throw new IOException("Corrupt snapshot " + snapshots.lastEntry().getValue());
+                }
+                for (Participant participant : participants) {
+                    participant.readSnapshot(in);
+                }
+            }
+        }
+        lastNumber = snapshotNumber;
+        long[] applied = {0};
+        Event event = new Event();
+        for (Path file : list(SEGMENT_PREFIX, SEGMENT_SUFFIX).tailMap(first(snapshotNumber), true).values()) {
+            if (segment != null) {
+                segment.close();
+            }
+            segmentFirstNumber = number(file, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            segment = new MappedLog(file);
+            long[] number = {segmentFirstNumber - 1};
+            segment.replay(payload -> {
+                if (++number[0] > snapshotNumber) {
+                    event.decode(payload);
+                    for (Participant participant : participants) {
+                        participant.apply(event);
+                    }
+                    applied[0]++;
+                }
+            });
+            lastNumber = Math.max(lastNumber, number[0]);
+        }
+        if (segment == null) {
+            startSegment();
+        }
+        durableNumber = lastNumber;
+        return applied[0];
+    }
+
+    /**
+     * @return the first number of the segment holding the event after the given one
+     */
+    private long first(long number) throws IOException {
+        Long first = list(SEGMENT_PREFIX, SEGMENT_SUFFIX).floorKey(number + 1);
+        return first == null ? 0 : first;
+    }
+
+    private void startSegment() throws IOException {
+        segmentFirstNumber = lastNumber + 1;
+        segment = new MappedLog(directory.resolve(name(SEGMENT_PREFIX, segmentFirstNumber, SEGMENT_SUFFIX)));
+    }
+
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                files.put(number(file, prefix, suffix), file);
+            }
+        }
+        return files;
+    }
+
+    private static String name(String prefix, long number, String suffix) {
+        return String.format("%s%020d%s", prefix, number, suffix);
+    }
+
+    private static long number(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * Runs a change of the participants, then waits for its events to be on disk if sync is on.
+     */
+    <T> T change(Supplier<T> operation) {
+        T result;
+        changeLock.readLock().lock();
+        try {
+            result = operation.get();
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        awaitDurable(lastNumber);
+        return result;
+    }
+
+    private void awaitDurable(long number) {
+        if (!sync) {
+            return;
+        }
+        commitLock.lock();
+        try {
+            while (durableNumber < number) {
+                if (forcing) {
+                    committed.awaitUninterruptibly();
+                    continue;
+                }
+                forcing = true;
+                long target;
+                MappedLog log;
+                synchronized (this) {
+                    target = lastNumber;
+                    log = segment;
+                }
+                commitLock.unlock();
+                long start = commitTimer.start();
+                try {
+                    log.force();
+                } finally {
+                    commitTimer.stop(start);
+                    commitLock.lock();
+                    forcing = false;
+                    committed.signalAll();
+                }
+                durableNumber = Math.max(durableNumber, target);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    synchronized void appendSpot(Kind kind, int parkingNumber, ParkingType parkingType) throws IOException {
+        ByteBuffer record = header(kind, 4 + 1);
+        record.putInt(parkingNumber).put((byte) parkingType.ordinal());
+        append(record);
+    }
+
+    synchronized void appendEntry(Ticket ticket) throws IOException {
+        byte[] vehicleRegNumber = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = header(Kind.ENTRY, 4 + 4 + 1 + 8 + 2 + vehicleRegNumber.length);
+        record.putInt(ticket.getId())
+                .putInt(ticket.getParkingSpot().getId())
+                .put((byte) ticket.getParkingSpot().getParkingType().ordinal())
+                .putLong(ticket.getInTime().getTime())
+                .putShort((short) vehicleRegNumber.length)
+                .put(vehicleRegNumber);
+        append(record);
+    }
+
+    synchronized void appendExit(Ticket ticket) throws IOException {
+        ByteBuffer record = header(Kind.EXIT, 4 + 8 + 8);
+        record.putInt(ticket.getId()).putLong(ticket.getOutTime().getTime()).putDouble(ticket.getPrice());
+        append(record);
+    }
+
+    synchronized void appendArchived(int ticketId) throws IOException {
+        ByteBuffer record = header(Kind.ARCHIVED, 4);
+        record.putInt(ticketId);
+        append(record);
+    }
+
+    private static ByteBuffer header(Kind kind, int size) {
+        ByteBuffer record = ByteBuffer.allocate(1 + 8 + size);
+        record.put((byte) kind.ordinal()).putLong(System.currentTimeMillis());
+        return record;
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        record.flip();
+        segment.append(record);
+        lastNumber++;
+    }
+
+    public long getLastEventNumber() {
+        return lastNumber;
+    }
+
+    public synchronized long getSnapshotEventNumber() {
+        return snapshotNumber;
+    }
+
+    /**
+     * Takes a snapshot once at least the given number of events were appended since the last one.
+     * @return true if a snapshot was taken
+     */
+    public boolean snapshotIfNeeded(int events) {
+        synchronized (this) {
+            if (lastNumber - snapshotNumber < Math.max(1, events)) {
+                return false;
+            }
+        }
+        snapshot();
+        return true;
+    }
+
+    /**
+     * Writes the state of the participants after the last event, then starts a new segment. Changes wait
+     * meanwhile.
+     */
+    public void snapshot() {
+        long start = snapshotTimer.start();
+        changeLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                segment.force();
+                long number = lastNumber;
+                Path file = directory.resolve(name(SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+                Path partial = file.resolveSibling(file.getFileName() + ".partial");
+                try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                    out.writeInt(SNAPSHOT_MAGIC);
+                    out.writeLong(number);
+                    for (Participant participant : participants) {
+                        participant.writeSnapshot(out);
+                    }
+                    out.flush();
+                    channel.force(true);
+                }
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                for (Path previous : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(number).values()) {
+                    Files.delete(previous);
+                }
+                snapshotNumber = number;
+                if (lastNumber >= segmentFirstNumber) {
+                    segment.close();
+                    startSegment();
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to snapshot the parking journal", e);
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+        snapshotTimer.stop(start);
+    }
+
+    /**
+     * Passes every event kept, oldest first, recorded from fromMillis included to toMillis excluded, to the
+     * reader. Segments are read under the journal lock one after the other, so changes wait while the
+     * current one is read.
+     * @return the number of events read
+     */
+    public long replay(long fromMillis, long toMillis, EventReader reader) throws IOException {
+        long count = 0;
+        Event event = new Event();
+        TreeMap<Long, Path> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (long first : segments.keySet()) {
+            long[] number = {first - 1};
+            long[] read = {0};
+            MappedLog.RecordReader recordReader = payload -> {
+                number[0]++;
+                if (payload.getLong(1) >= fromMillis && payload.getLong(1) < toMillis) {
+                    event.decode(payload);
+                    reader.read(number[0], event);
+                    read[0]++;
+                }
+            };
+            synchronized (this) {
+                if (first == segmentFirstNumber) {
+                    segment.replay(recordReader);
+                }
+            }
+            if (first != segmentFirstNumber) {
+                try (MappedLog log = new MappedLog(segments.get(first))) {
+                    log.replay(recordReader);
+                }
+            }
+            count += read[0];
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segment.close();
+    }
+
+    /**
+     * An event read back, reused from one event to the next.
+     */
+    public static final class Event {
+
+        private Kind kind;
+        private long timeMillis;
+        private int ticketId;
+        private int parkingNumber;
+        private ParkingType parkingType;
+        private long inTimeMillis;
+        private long outTimeMillis;
+        private double price;
+        private String vehicleRegNumber;
+
+        private static final Kind[] KINDS = Kind.values();
+        private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+        void decode(ByteBuffer payload) {
+            kind = KINDS[payload.get()];
+            timeMillis = payload.getLong();
+            switch (kind) {
+                case SPOT_CLAIMED:
+                case SPOT_FREED:
+                    parkingNumber = payload.getInt();
+                    parkingType = PARKING_TYPES[payload.get()];
+                    break;
+                case ENTRY:
+                    ticketId = payload.getInt();
+                    parkingNumber = payload.getInt();
+                    parkingType = PARKING_TYPES[payload.get()];
+                    inTimeMillis = payload.getLong();
+                    vehicleRegNumber = readString(payload);
+                    break;
+                case EXIT:
+                    ticketId = payload.getInt();
+                    outTimeMillis = payload.getLong();
+                    price = payload.getDouble();
+                    break;
+                default:
+                    ticketId = payload.getInt();
+            }
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public int getTicketId() {
+            return ticketId;
+        }
+
+        public int getParkingNumber() {
+            return parkingNumber;
+        }
+
+        public ParkingType getParkingType() {
+            return parkingType;
+        }
+
+        public long getInTimeMillis() {
+            return inTimeMillis;
+        }
+
+        public long getOutTimeMillis() {
+            return outTimeMillis;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public String getVehicleRegNumber() {
+            return vehicleRegNumber;
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live free/total counts per parking type, kept up to date on every spot transition so that readers
+ * never have to count rows in the parking table. Each type is a single atomic word holding the total in
+ * its high half and the free count in its low half, so a read always sees a free count that belongs to
+ * the total next to it.
+ */
+public class ParkingOccupancy {
+
+    private static final long LOW_MASK = 0xffffffffL;
+
+    private final AtomicLong[] counts = new AtomicLong[ParkingType.values().length];
+    private volatile boolean loaded;
+
+    public ParkingOccupancy() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new AtomicLong();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void spotTaken(ParkingType parkingType) {
+        counts[parkingType.ordinal()].decrementAndGet();
+    }
+
+    public void spotReleased(ParkingType parkingType) {
+        counts[parkingType.ordinal()].incrementAndGet();
+    }
+
+    /**
+     * Replaces the counts of every type, e.g. with the figures read back from the database.
+     */
+    public synchronized void reset(int[] total, int[] free) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].set(pack(total[i], free[i]));
+        }
+        loaded = true;
+    }
+
+    public int getFree(ParkingType parkingType) {
+        return free(counts[parkingType.ordinal()].get());
+    }
+
+    public int getTotal(ParkingType parkingType) {
+        return total(counts[parkingType.ordinal()].get());
+    }
+
+    public int getOccupied(ParkingType parkingType) {
+        long count = counts[parkingType.ordinal()].get();
+        return total(count) - free(count);
+    }
+
+    public Snapshot snapshot() {
+        int[] total = new int[counts.length];
+        int[] free = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            long count = counts[i].get();
+            total[i] = total(count);
+            free[i] = free(count);
+        }
+        return new Snapshot(total, free, System.currentTimeMillis());
+    }
+
+    private static long pack(int total, int free) {
+        return ((long) total << 32) | (free & LOW_MASK);
+    }
+
+    private static int total(long count) {
+        return (int) (count >>> 32);
+    }
+
+    private static int free(long count) {
+        return (int) count;
+    }
+
+    public static class Snapshot {
+        private final int[] total;
+        private final int[] free;
+        private final long takenAtMillis;
+
+        Snapshot(int[] total, int[] free, long takenAtMillis) {
+            this.total = total;
+            this.free = free;
+            this.takenAtMillis = takenAtMillis;
+        }
+
+        public int getFree(ParkingType parkingType) {
+            return free[parkingType.ordinal()];
+        }
+
+        public int getTotal(ParkingType parkingType) {
+            return total[parkingType.ordinal()];
+        }
+
+        public int getOccupied(ParkingType parkingType) {
+            return total[parkingType.ordinal()] - free[parkingType.ordinal()];
+        }
+
+        public long getTakenAtMillis() {
+            return takenAtMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Occupancy[");
+            for (ParkingType parkingType : ParkingType.values()) {
+                if (parkingType.ordinal() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(parkingType).append(' ').append(getOccupied(parkingType)).append('/').append(getTotal(parkingType));
+            }
+            return sb.append(']').toString();
+        }
+    }
+}
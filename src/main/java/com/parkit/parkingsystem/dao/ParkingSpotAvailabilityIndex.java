@@ -0,0 +1,146 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory view of the free spots of each parking type, one bit per PARKING_NUMBER.
+ * Returns the lowest free number, like GET_NEXT_PARKING_SPOT, without a DB round trip.
+ * Spots are claimed with a compare-and-set on the word holding their bit, so concurrent
+ * gates sharing the index never get the same spot. Claims and updates hold the read lock of
+ * resizeLock and growing an array takes its write lock, so no update is lost in the copy.
+ */
+public class ParkingSpotAvailabilityIndex {
+
+    private static final AtomicLongArray EMPTY = new AtomicLongArray(0);
+
+    private final AtomicReferenceArray<AtomicLongArray> freeSpots = new AtomicReferenceArray<>(ParkingType.values().length);
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public ParkingSpotAvailabilityIndex() {
+        clear();
+    }
+
+    public void clear() {
+        resizeLock.writeLock().lock();
+        try {
+            for (int i = 0; i < freeSpots.length(); i++) {
+                freeSpots.set(i, EMPTY);
+            }
+            loaded = false;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    public synchronized void markLoaded() {
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        AtomicLongArray words = freeSpots.get(parkingType.ordinal());
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Atomically takes the lowest free spot of the given type out of the index.
+     * @return the claimed PARKING_NUMBER, or 0 if every spot of that type is taken
+     */
+    public int claimNextAvailableSlot(ParkingType parkingType) {
+        resizeLock.readLock().lock();
+        try {
+            AtomicLongArray words = freeSpots.get(parkingType.ordinal());
+            for (int i = 0; i < words.length(); i++) {
+                long word;
+                while ((word = words.get(i)) != 0) {
+                    long lowestBit = Long.lowestOneBit(word);
+                    if (words.compareAndSet(i, word, word & ~lowestBit)) {
+                        return (i << 6) + Long.numberOfTrailingZeros(lowestBit);
+                    }
+                }
+            }
+            return 0;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    public boolean isAvailable(ParkingType parkingType, int parkingNumber) {
+        AtomicLongArray words = freeSpots.get(parkingType.ordinal());
+        int i = parkingNumber >>> 6;
+        return i < words.length() && (words.get(i) & (1L << parkingNumber)) != 0;
+    }
+
+    /**
+     * @return true if the availability of the spot changed
+     */
+    public boolean setAvailable(ParkingType parkingType, int parkingNumber, boolean available) {
+        if (parkingType == null) {
+            //type unknown: the spot can only be taken in whichever set holds it
+            boolean changed = false;
+            if (!available) {
+                for (ParkingType type : ParkingType.values()) {
+                    changed |= setAvailable(type, parkingNumber, false);
+                }
+            }
+            return changed;
+        }
+        int i = parkingNumber >>> 6;
+        long bit = 1L << parkingNumber;
+        resizeLock.readLock().lock();
+        try {
+            AtomicLongArray words = freeSpots.get(parkingType.ordinal());
+            if (i < words.length()) {
+                long previous = available ? words.getAndUpdate(i, w -> w | bit) : words.getAndUpdate(i, w -> w & ~bit);
+                return ((previous & bit) != 0) != available;
+            }
+            if (!available) {
+                return false;
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+        //the read lock can't be upgraded: grow, then set the bit in the grown array
+        grow(parkingType, i + 1);
+        return setAvailable(parkingType, parkingNumber, true);
+    }
+
+    public int countAvailable(ParkingType parkingType) {
+        AtomicLongArray words = freeSpots.get(parkingType.ordinal());
+        int count = 0;
+        for (int i = 0; i < words.length(); i++) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count;
+    }
+
+    private void grow(ParkingType parkingType, int length) {
+        resizeLock.writeLock().lock();
+        try {
+            AtomicLongArray words = freeSpots.get(parkingType.ordinal());
+            if (words.length() < length) {
+                AtomicLongArray grown = new AtomicLongArray(length);
+                for (int i = 0; i < words.length(); i++) {
+                    grown.set(i, words.get(i));
+                }
+                freeSpots.set(parkingType.ordinal(), grown);
+            }
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+}
@@ -1,27 +1,126 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
-import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.util.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotStore {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    private static final int MAX_RESERVE_ATTEMPTS = 16;
+
+    private static final Metrics.Timer nextAvailableSlotTimer = Metrics.timer("dao.parkingSpot.nextAvailableSlot");
+    private static final Metrics.Timer reserveTimer = Metrics.timer("dao.parkingSpot.reserve");
+    private static final Metrics.Timer updateTimer = Metrics.timer("dao.parkingSpot.update");
+    private static final LongAdder reserveRetries = Metrics.counter("dao.parkingSpot.reserveRetries");
+    private static final LongAdder errors = Metrics.counter("dao.parkingSpot.errors");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    private final ParkingSpotAvailabilityIndex availabilityIndex = new ParkingSpotAvailabilityIndex();
+    private final ParkingOccupancy occupancy = new ParkingOccupancy();
+
+    public boolean loadAvailabilityIndex(){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = StatementRegistry.GET_PARKING_SPOTS.prepare(con);
+            ResultSet rs = ps.executeQuery();
+            int[] total = new int[ParkingType.values().length];
+            int[] free = new int[total.length];
+            synchronized (availabilityIndex) {
+                availabilityIndex.clear();
+                while(rs.next()){
+                    ParkingType parkingType = ParkingType.valueOf(rs.getString(3));
+                    boolean available = rs.getBoolean(2);
+                    availabilityIndex.setAvailable(parkingType, rs.getInt(1), available);
+                    total[parkingType.ordinal()]++;
+                    free[parkingType.ordinal()] += available ? 1 : 0;
+                }
+                availabilityIndex.markLoaded();
+                occupancy.reset(total, free);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return true;
+        }catch (Exception ex){
+            logger.error("Error loading parking availability",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public ParkingSpotAvailabilityIndex getAvailabilityIndex() {
+        return availabilityIndex;
+    }
+
+    public ParkingOccupancy getOccupancy() {
+        if(!occupancy.isLoaded() && !loadAvailabilityIndex()){
+            reconcileOccupancy();
+        }
+        return occupancy;
+    }
+
+    /**
+     * Corrects the occupancy counters with the counts of the parking table, which also sees the spots
+     * taken and released by other processes. A transition that races with the reset can leave the counters
+     * one spot off until the next reconciliation.
+     * @return the number of spots the counters were off by, or -1 if the table could not be read
+     */
+    public int reconcileOccupancy(){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = StatementRegistry.COUNT_PARKING_SPOTS.prepare(con);
+            ResultSet rs = ps.executeQuery();
+            int[] total = new int[ParkingType.values().length];
+            int[] free = new int[total.length];
+            while(rs.next()){
+                ParkingType parkingType = ParkingType.valueOf(rs.getString(1));
+                total[parkingType.ordinal()] = rs.getInt(2);
+                free[parkingType.ordinal()] = rs.getInt(3);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            int drift = 0;
+            if(occupancy.isLoaded()){
+                for(ParkingType parkingType : ParkingType.values()){
+                    drift += Math.abs(occupancy.getFree(parkingType) - free[parkingType.ordinal()])
+                            + Math.abs(occupancy.getTotal(parkingType) - total[parkingType.ordinal()]);
+                }
+            }
+            occupancy.reset(total, free);
+            return drift;
+        }catch (Exception ex){
+            logger.error("Error counting parking spots",ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
     public int getNextAvailableSlot(ParkingType parkingType){
+        long start = nextAvailableSlotTimer.start();
+        if(availabilityIndex.isLoaded() || loadAvailabilityIndex()){
+            int parkingNumber = availabilityIndex.getNextAvailableSlot(parkingType);
+            nextAvailableSlotTimer.stop(start);
+            return parkingNumber;
+        }
         Connection con = null;
         int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+            PreparedStatement ps = StatementRegistry.GET_NEXT_PARKING_SPOT.prepare(con);
             ps.setString(1, parkingType.toString());
             ResultSet rs = ps.executeQuery();
             if(rs.next()){
@@ -30,29 +129,152 @@ public class ParkingSpotDAO {
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
         }catch (Exception ex){
+            errors.increment();
             logger.error("Error fetching next available slot",ex);
         }finally {
             dataBaseConfig.closeConnection(con);
+            nextAvailableSlotTimer.stop(start);
         }
         return result;
     }
 
+    /**
+     * Claims the lowest free spot of the given type, first in the availability index and then in the
+     * parking table with a conditional update. When the table says the spot is already taken (another
+     * process got there first) the next free spot is tried.
+     * @return the reserved spot, already marked unavailable, or null if none could be reserved
+     */
+    public ParkingSpot reserveParkingSpot(ParkingType parkingType){
+        long start = reserveTimer.start();
+        try {
+            return reserve(parkingType, null);
+        } catch (SQLException ex) {
+            //only thrown on a connection of the caller
+            return null;
+        } finally {
+            reserveTimer.stop(start);
+        }
+    }
+
+    /**
+     * Reserves the spot on the connection of a unit of work, so the claim is committed or rolled back with
+     * it. On a rollback the spot must be given back to the index with updated.
+     * @return the reserved spot, or null if none is free
+     */
+    ParkingSpot reserveParkingSpot(Connection con, ParkingType parkingType) throws SQLException {
+        long start = reserveTimer.start();
+        try {
+            return reserve(parkingType, con);
+        } finally {
+            reserveTimer.stop(start);
+        }
+    }
+
+    private ParkingSpot reserve(ParkingType parkingType, Connection con) throws SQLException {
+        boolean useIndex = availabilityIndex.isLoaded() || loadAvailabilityIndex();
+        for(int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++){
+            int parkingNumber = useIndex ? availabilityIndex.claimNextAvailableSlot(parkingType) : getNextAvailableSlot(parkingType);
+            if(parkingNumber <= 0){
+                return null;
+            }
+            if(useIndex){
+                occupancy.spotTaken(parkingType);
+            }
+            int claimed;
+            try {
+                claimed = con == null ? claimParkingSpot(parkingNumber) : claimParkingSpot(con, parkingNumber);
+            } catch (SQLException ex) {
+                errors.increment();
+                if(useIndex){
+                    updated(new ParkingSpot(parkingNumber, parkingType, true));
+                }
+                throw ex;
+            }
+            if(claimed == 1){
+                return new ParkingSpot(parkingNumber, parkingType, false);
+            }
+            if(claimed < 0){
+                if(useIndex){
+                    updated(new ParkingSpot(parkingNumber, parkingType, true));
+                }
+                return null;
+            }
+            reserveRetries.increment();
+            logger.warn("Parking spot {} was taken concurrently, retrying", parkingNumber);
+        }
+        logger.error("Unable to reserve a " + parkingType + " spot after " + MAX_RESERVE_ATTEMPTS + " attempts");
+        return null;
+    }
+
+    private int claimParkingSpot(int parkingNumber){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            return claimParkingSpot(con, parkingNumber);
+        }catch (Exception ex){
+            errors.increment();
+            logger.error("Error claiming parking spot",ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private int claimParkingSpot(Connection con, int parkingNumber) throws SQLException {
+        PreparedStatement ps = StatementRegistry.CLAIM_PARKING_SPOT.prepare(con);
+        ps.setInt(1, parkingNumber);
+        int updateRowCount = ps.executeUpdate();
+        dataBaseConfig.closePreparedStatement(ps);
+        return updateRowCount;
+    }
+
     public boolean updateParking(ParkingSpot parkingSpot){
         //update the availability fo that parking slot
+        long start = updateTimer.start();
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
-            ps.setBoolean(1, parkingSpot.isAvailable());
-            ps.setInt(2, parkingSpot.getId());
-            int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
+            int updateRowCount = updateParking(con, parkingSpot);
+            if(updateRowCount == 1){
+                updated(parkingSpot);
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
+            errors.increment();
             logger.error("Error updating parking info",ex);
             return false;
         }finally {
             dataBaseConfig.closeConnection(con);
+            updateTimer.stop(start);
+        }
+    }
+
+    /**
+     * Updates the spot on the connection of a unit of work, without touching the index: updated is called
+     * once the change is committed.
+     * @return the number of rows updated
+     */
+    int updateParking(Connection con, ParkingSpot parkingSpot) throws SQLException {
+        PreparedStatement ps = StatementRegistry.UPDATE_PARKING_SPOT.prepare(con);
+        ps.setBoolean(1, parkingSpot.isAvailable());
+        ps.setInt(2, parkingSpot.getId());
+        int updateRowCount = ps.executeUpdate();
+        dataBaseConfig.closePreparedStatement(ps);
+        return updateRowCount;
+    }
+
+    /**
+     * Writes the availability of an updated spot through to the index and the counters, so they stay in
+     * step with the parking table.
+     */
+    void updated(ParkingSpot parkingSpot){
+        if(availabilityIndex.setAvailable(parkingSpot.getParkingType(), parkingSpot.getId(), parkingSpot.isAvailable())
+                && parkingSpot.getParkingType() != null){
+            if(parkingSpot.isAvailable()){
+                occupancy.spotReleased(parkingSpot.getParkingType());
+            }else{
+                occupancy.spotTaken(parkingSpot.getParkingType());
+            }
         }
     }
 
@@ -0,0 +1,32 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+/**
+ * Parking spots and their availability, whatever they are stored in: ParkingSpotDAO for MySQL,
+ * InMemoryParkingSpotStore and FileParkingSpotStore for sites without a database server.
+ * Implementations are shared by every gate and never reserve the same spot twice.
+ */
+public interface ParkingSpotStore {
+
+    /**
+     * @return the lowest free PARKING_NUMBER of that type, 0 if none is free, or -1 on error
+     */
+    int getNextAvailableSlot(ParkingType parkingType);
+
+    /**
+     * @return the lowest free spot of that type, already marked unavailable, or null if none could be reserved
+     */
+    ParkingSpot reserveParkingSpot(ParkingType parkingType);
+
+    boolean updateParking(ParkingSpot parkingSpot);
+
+    ParkingOccupancy getOccupancy();
+
+    /**
+     * Recounts the occupancy counters from the stored spots.
+     * @return the number of spots the counters were off by, or -1 on error
+     */
+    int reconcileOccupancy();
+}
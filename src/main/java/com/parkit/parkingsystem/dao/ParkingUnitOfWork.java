@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Entry and exit of a vehicle as a single transaction, for the stores where the spot and the ticket
+ * changes otherwise take a round trip and a commit each: ParkingUnitOfWorkDAO for MySQL.
+ */
+public interface ParkingUnitOfWork {
+
+    /**
+     * Reserves a spot of that type for the ticket, sets it on the ticket and saves the ticket.
+     * @return false if no spot is free, nothing is changed then
+     */
+    boolean enter(Ticket ticket, ParkingType parkingType) throws Exception;
+
+    interface Pricing {
+        void price(Ticket ticket);
+    }
+
+    /**
+     * Closes the open ticket of the vehicle at outTime, priced by pricing, and frees its spot.
+     * @return the closed ticket, or null if the vehicle has no open ticket
+     */
+    Ticket exit(String vehicleRegNumber, long outTimeMillis, Pricing pricing) throws Exception;
+}
@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs an entry, spot claim and ticket insert, or an exit, ticket update and spot release, on one pooled
+ * connection in one transaction. That is one connection checkout and one commit per vehicle instead of one
+ * per statement, and a crash can no longer leave a spot taken without its ticket or a closed ticket on a
+ * spot still taken. The ticket of an exit usually comes from the open ticket cache, and it is only closed
+ * if still open, so two gates cannot both close it.
+ * The availability index, open ticket cache and visit counts of the DAOs are updated once the transaction
+ * is committed.
+ */
+public class ParkingUnitOfWorkDAO implements ParkingUnitOfWork {
+
+    private static final Logger logger = LogManager.getLogger("ParkingUnitOfWorkDAO");
+
+    private static final Metrics.Timer enterTimer = Metrics.timer("dao.unitOfWork.enter");
+    private static final Metrics.Timer exitTimer = Metrics.timer("dao.unitOfWork.exit");
+    private static final LongAdder rollbacks = Metrics.counter("dao.unitOfWork.rollbacks");
+
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final TicketDAO ticketDAO;
+
+    public ParkingUnitOfWorkDAO(ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.ticketDAO = ticketDAO;
+    }
+
+    public boolean enter(Ticket ticket, ParkingType parkingType) throws Exception {
+        long start = enterTimer.start();
+        Connection con = null;
+        ParkingSpot parkingSpot = null;
+        boolean committed = false;
+        try {
+            con = begin();
+            parkingSpot = parkingSpotDAO.reserveParkingSpot(con, parkingType);
+            if(parkingSpot == null){
+                return false;
+            }
+            ticket.setParkingSpot(parkingSpot);
+            if(!ticketDAO.saveTicket(con, ticket)){
+                return false;
+            }
+            con.commit();
+            committed = true;
+            ticketDAO.saved(ticket);
+            return true;
+        } finally {
+            if(!committed){
+                rollback(con);
+                if(parkingSpot != null){
+                    //the claim in the index is undone with the one in the table
+                    parkingSpotDAO.updated(new ParkingSpot(parkingSpot.getId(), parkingType, true));
+                }
+            }
+            end(con);
+            enterTimer.stop(start);
+        }
+    }
+
+    public Ticket exit(String vehicleRegNumber, long outTimeMillis, Pricing pricing) throws Exception {
+        long start = exitTimer.start();
+        Connection con = null;
+        Ticket ticket = null;
+        boolean committed = false;
+        try {
+            con = begin();
+            ticket = ticketDAO.getTicket(con, vehicleRegNumber);
+            if(ticket == null || ticket.getOutTime() != null){
+                return null;
+            }
+            ticket.setOutTime(new Date(outTimeMillis));
+            pricing.price(ticket);
+            if(ticketDAO.closeTicket(con, ticket) != 1){
+                //closed by another gate since it was cached
+                return null;
+            }
+            ParkingSpot parkingSpot = ticket.getParkingSpot();
+            parkingSpot.setAvailable(true);
+            if(parkingSpotDAO.updateParking(con, parkingSpot) != 1){
+                throw new SQLException("Parking spot " + parkingSpot.getId() + " of ticket " + ticket.getId() + " not found");
+            }
+            con.commit();
+            committed = true;
+            parkingSpotDAO.updated(parkingSpot);
+            return ticket;
+        } finally {
+            if(!committed){
+                rollback(con);
+            }
+            if(ticket != null){
+                //a ticket left open is read again from the table, a closed one is no longer looked up
+                ticketDAO.getOpenTicketCache().evict(vehicleRegNumber);
+            }
+            end(con);
+            exitTimer.stop(start);
+        }
+    }
+
+    private Connection begin() throws ClassNotFoundException, SQLException {
+        DataBaseConfig dataBaseConfig = parkingSpotDAO.dataBaseConfig;
+        Connection con = dataBaseConfig.getConnection();
+        try {
+            con.setAutoCommit(false);
+            return con;
+        } catch (SQLException e) {
+            dataBaseConfig.closeConnection(con);
+            throw e;
+        }
+    }
+
+    private void rollback(Connection con) {
+        if(con == null){
+            return;
+        }
+        rollbacks.increment();
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            logger.error("Error rolling back", e);
+        }
+    }
+
+    private void end(Connection con) {
+        if(con == null){
+            return;
+        }
+        try {
+            con.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.error("Error restoring auto-commit", e);
+        }
+        parkingSpotDAO.dataBaseConfig.closeConnection(con);
+    }
+}
@@ -0,0 +1,157 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Number of visits, that is tickets, of every vehicle known to a ticket store, so recurring users are
+ * recognized at exit without a query. Registration numbers are held as 64-bit hashes: a blocked Bloom
+ * filter, with all the bits of a vehicle in one 512-bit block so a check costs one cache miss, answers for
+ * most unknown vehicles, and a LongIntHashMap holds the counts, read under an optimistic StampedLock so
+ * gates looking up at the same time do not contend.
+ * Two registration numbers with the same hash would share their count; with 64 bits that takes billions
+ * of vehicles to become likely.
+ */
+public class RecurringUserIndex {
+
+    public static final int DEFAULT_EXPECTED_VEHICLES = 1 << 20;
+
+    private static final int BITS_PER_VEHICLE = 10;
+    //optimal for 10 bits per vehicle, about 1% false positives at the expected number of vehicles
+    private static final int HASH_COUNT = 7;
+    private static final int WORDS_PER_BLOCK = 8;
+
+    private final AtomicLongArray bloom;
+    private final int blockMask;
+    private final LongIntHashMap visits;
+    private final StampedLock lock = new StampedLock();
+
+    public RecurringUserIndex() {
+        this(DEFAULT_EXPECTED_VEHICLES);
+    }
+
+    public RecurringUserIndex(int expectedVehicles) {
+        long blocks = Long.highestOneBit(Math.max(2L, (long) expectedVehicles * BITS_PER_VEHICLE / (64 * WORDS_PER_BLOCK)) - 1) << 1;
+        bloom = new AtomicLongArray((int) blocks * WORDS_PER_BLOCK);
+        blockMask = (int) blocks - 1;
+        visits = new LongIntHashMap(16);
+    }
+
+    public void addVisit(String vehicleRegNumber) {
+        addVisits(vehicleRegNumber, 1);
+    }
+
+    public void addVisits(String vehicleRegNumber, int count) {
+        addVisits(hash(vehicleRegNumber), count);
+    }
+
+    private void addVisits(long hash, int count) {
+        long stamp = lock.writeLock();
+        try {
+            visits.put(hash, visits.get(hash) + count);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        //set after the count, so a vehicle the filter lets through is always counted
+        int block = block(hash);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = bit(hash, i);
+            int word = block + (bit >>> 6);
+            long mask = 1L << bit;
+            long value;
+            while (((value = bloom.get(word)) & mask) == 0 && !bloom.compareAndSet(word, value, value | mask)) {
+                //retried until the bit is set by this thread or another one
+            }
+        }
+    }
+
+    /**
+     * @return the number of visits of the vehicle, the current one included, 0 for a vehicle never seen
+     */
+    public int getVisitCount(String vehicleRegNumber) {
+        long hash = hash(vehicleRegNumber);
+        int block = block(hash);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = bit(hash, i);
+            if ((bloom.get(block + (bit >>> 6)) & (1L << bit)) == 0) {
+                return 0;
+            }
+        }
+        long stamp = lock.tryOptimisticRead();
+        int visitCount = visits.get(hash);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                visitCount = visits.get(hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return visitCount;
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return visits.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes the number of vehicles, then the hash and visit count of each one.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            out.writeInt(visits.size());
+            visits.forEach((hash, count) -> {
+                out.writeLong(hash);
+                out.writeInt(count);
+            });
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds the visits written by writeTo.
+     */
+    void readFrom(ByteBuffer in) {
+        for (int count = in.getInt(); count > 0; count--) {
+            addVisits(in.getLong(), in.getInt());
+        }
+    }
+
+    private int block(long hash) {
+        return ((int) (hash >>> 32) & blockMask) * WORDS_PER_BLOCK;
+    }
+
+    /**
+     * @return the i-th bit of the block, by double hashing on the two 16-bit halves of the low hash bits
+     */
+    private static int bit(long hash, int i) {
+        return ((int) hash + i * (((int) hash >>> 16) | 1)) & (64 * WORDS_PER_BLOCK - 1);
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, with the MurmurHash3 finalizer to spread nearby registration
+     * numbers over the whole range.
+     */
+    static long hash(String vehicleRegNumber) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < vehicleRegNumber.length(); i++) {
+            hash ^= vehicleRegNumber.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.DBConstants;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The statements the DAOs run, each with the options it is prepared with. Preparing through the registry
+ * always asks the connection for exactly the same (sql, options) pair, which is what the connection pool
+ * caches per physical connection, so every query is parsed by the server once per connection.
+ */
+enum StatementRegistry {
+
+    GET_NEXT_PARKING_SPOT(DBConstants.GET_NEXT_PARKING_SPOT),
+    GET_PARKING_SPOTS(DBConstants.GET_PARKING_SPOTS),
+    COUNT_PARKING_SPOTS(DBConstants.COUNT_PARKING_SPOTS),
+    UPDATE_PARKING_SPOT(DBConstants.UPDATE_PARKING_SPOT),
+    CLAIM_PARKING_SPOT(DBConstants.CLAIM_PARKING_SPOT),
+    SAVE_TICKET(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS),
+    UPDATE_TICKET(DBConstants.UPDATE_TICKET),
+    CLOSE_TICKET(DBConstants.CLOSE_TICKET),
+    UPDATE_TICKET_PRICE(DBConstants.UPDATE_TICKET_PRICE),
+    GET_TICKET(DBConstants.GET_TICKET),
+    GET_CLOSED_TICKETS(DBConstants.GET_CLOSED_TICKETS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY),
+    GET_CLOSED_TICKETS_AFTER(DBConstants.GET_CLOSED_TICKETS_AFTER, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY),
+    GET_ARCHIVE_CHUNK(DBConstants.GET_ARCHIVE_CHUNK),
+    ARCHIVE_TICKETS(DBConstants.ARCHIVE_TICKETS),
+    DELETE_ARCHIVED_TICKETS(DBConstants.DELETE_ARCHIVED_TICKETS),
+    COUNT_VISITS(DBConstants.COUNT_VISITS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY),
+    COUNT_ARCHIVED_VISITS(DBConstants.COUNT_ARCHIVED_VISITS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+    private static final int NONE = -1;
+
+    private final String sql;
+    private final int autoGeneratedKeys;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+
+    StatementRegistry(String sql) {
+        this(sql, NONE, NONE, NONE);
+    }
+
+    StatementRegistry(String sql, int autoGeneratedKeys) {
+        this(sql, autoGeneratedKeys, NONE, NONE);
+    }
+
+    StatementRegistry(String sql, int resultSetType, int resultSetConcurrency) {
+        this(sql, NONE, resultSetType, resultSetConcurrency);
+    }
+
+    StatementRegistry(String sql, int autoGeneratedKeys, int resultSetType, int resultSetConcurrency) {
+        this.sql = sql;
+        this.autoGeneratedKeys = autoGeneratedKeys;
+        this.resultSetType = resultSetType;
+        this.resultSetConcurrency = resultSetConcurrency;
+    }
+
+    PreparedStatement prepare(Connection con) throws SQLException {
+        if (autoGeneratedKeys != NONE) {
+            return con.prepareStatement(sql, autoGeneratedKeys);
+        }
+        if (resultSetType != NONE) {
+            return con.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        }
+        return con.prepareStatement(sql);
+    }
+}
@@ -0,0 +1,288 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parking spot and ticket stores of the application, on the backend chosen with -Dparkit.storage:
+ * jdbc (MySQL, the default), memory (nothing survives a restart), file (memory-mapped logs in the
+ * -Dparkit.storage.dir directory, compacted every minute when needed) or journal (a ParkingJournal of events
+ * in that directory, snapshotted every minute when needed, on disk before each change returns unless
+ * -Dparkit.storage.sync=false). The backends without a database start with the spots of
+ * -Dparkit.storage.spots, numbered from 1 in the order given.
+ *
+ * Each parking lot has storage of its own, configured by the same properties with parkit.lot.[id] in place
+ * of parkit (parkit.lot.north.storage=file), falling back to the unprefixed ones. The exceptions are the
+ * database, given by parkit.lot.[id].db.url, .db.user and .db.password, the file directory,
+ * [parkit.storage.dir]/[id] by default, and the write-behind journal, only enabled by parkit.lot.[id].ticket.journal.
+ */
+public class Storage {
+
+    private static final Logger logger = LogManager.getLogger("Storage");
+
+    public static final String BACKEND_PROPERTY = "parkit.storage";
+    public static final String DIRECTORY_PROPERTY = "parkit.storage.dir";
+    public static final String SPOTS_PROPERTY = "parkit.storage.spots";
+    public static final String SYNC_PROPERTY = "parkit.storage.sync";
+    public static final String WRITE_BEHIND_JOURNAL_PROPERTY = "parkit.ticket.journal";
+    public static final String LOT_PROPERTY = "parkit.lot";
+    public static final String LOT_PROPERTY_PREFIX = "parkit.lot.";
+    public static final String DEFAULT_DIRECTORY = "data";
+    public static final String DEFAULT_SPOTS = "CAR:3,BIKE:2";
+    public static final String PARKING_FILE = "parking.log";
+
+    private static final long COMPACTION_PERIOD_MILLIS = 60 * 1000;
+    private static final int RECURRING_USERS_FETCH_SIZE = 1000;
+
+    public enum Backend { JDBC, MEMORY, FILE, JOURNAL }
+
+    private final Backend backend;
+    private final ParkingSpotStore parkingSpotStore;
+    private final TicketStore ticketStore;
+    private DataBaseConfig dataBaseConfig;
+    private ParkingUnitOfWork unitOfWork;
+    private ParkingJournal journal;
+    private ScheduledExecutorService compactor;
+
+    private Storage(Backend backend, ParkingSpotStore parkingSpotStore, TicketStore ticketStore) {
+        this.backend = backend;
+        this.parkingSpotStore = parkingSpotStore;
+        this.ticketStore = ticketStore;
+    }
+
+    /**
+     * Opens the storage of the lot given by -Dparkit.lot, or the single site storage if there is none.
+     */
+    public static Storage open() throws IOException {
+        return open(System.getProperty(LOT_PROPERTY));
+    }
+
+    /**
+     * @param lotId the parking lot, or null for the single site storage
+     */
+    public static Storage open(String lotId) throws IOException {
+        Backend backend = Backend.valueOf(lotProperty(lotId, BACKEND_PROPERTY, "jdbc").toUpperCase());
+        String spots = lotProperty(lotId, SPOTS_PROPERTY, DEFAULT_SPOTS);
+        Path directory = Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY));
+        switch (backend) {
+            case MEMORY: return memory(spots);
+            case FILE:
+            case JOURNAL: {
+                if (lotId != null) {
+                    directory = Paths.get(System.getProperty(lotPropertyName(lotId, DIRECTORY_PROPERTY),
+                            directory.resolve(lotId).toString()));
+                }
+                return backend == Backend.FILE ? file(directory, spots)
+                        : journal(directory, spots, Boolean.parseBoolean(lotProperty(lotId, SYNC_PROPERTY, "true")));
+            }
+            default: {
+                if (lotId == null) {
+                    return jdbc();
+                }
+                String url = System.getProperty(lotPropertyName(lotId, "parkit.db.url"));
+                if (url == null) {
+                    throw new IllegalArgumentException("No database for parking lot " + lotId);
+                }
+                DataBaseConfig dataBaseConfig = new DataBaseConfig(url,
+                        System.getProperty(lotPropertyName(lotId, "parkit.db.user"), DataBaseConfig.DEFAULT_USER),
+                        System.getProperty(lotPropertyName(lotId, "parkit.db.password"), DataBaseConfig.DEFAULT_PASSWORD));
+                //the journal holds ticket ids of one database, so there is no fallback to the single site one
+                return jdbc(dataBaseConfig, System.getProperty(lotPropertyName(lotId, WRITE_BEHIND_JOURNAL_PROPERTY)));
+            }
+        }
+    }
+
+    private static String lotPropertyName(String lotId, String name) {
+        return LOT_PROPERTY_PREFIX + lotId + name.substring(name.indexOf('.'));
+    }
+
+    private static String lotProperty(String lotId, String name, String defaultValue) {
+        String value = lotId == null ? null : System.getProperty(lotPropertyName(lotId, name));
+        return value != null ? value : System.getProperty(name, defaultValue);
+    }
+
+    public static Storage jdbc() {
+        return jdbc(new DataBaseConfig());
+    }
+
+    public static Storage jdbc(DataBaseConfig dataBaseConfig) {
+        return jdbc(dataBaseConfig, System.getProperty(WRITE_BEHIND_JOURNAL_PROPERTY));
+    }
+
+    /**
+     * @param journal the write-behind journal of the tickets, or null to write them synchronously, each entry
+     * and exit in one transaction
+     */
+    public static Storage jdbc(DataBaseConfig dataBaseConfig, String journal) {
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailabilityIndex();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.loadRecurringUsers(RECURRING_USERS_FETCH_SIZE);
+        Storage storage = new Storage(Backend.JDBC, parkingSpotDAO, ticketDAO);
+        if (journal != null) {
+            enableWriteBehind(ticketDAO, journal);
+        } else {
+            storage.unitOfWork = new ParkingUnitOfWorkDAO(parkingSpotDAO, ticketDAO);
+        }
+        storage.dataBaseConfig = dataBaseConfig;
+        return storage;
+    }
+
+    public static Storage memory(String spots) {
+        InMemoryParkingSpotStore parkingSpotStore = new InMemoryParkingSpotStore();
+        addParkingSpots(parkingSpotStore, spots);
+        return new Storage(Backend.MEMORY, parkingSpotStore, new InMemoryTicketStore());
+    }
+
+    /**
+     * Opens the logs of the directory, creating them with the given spots the first time.
+     */
+    public static Storage file(Path directory, String spots) throws IOException {
+        Files.createDirectories(directory);
+        FileParkingSpotStore parkingSpotStore = new FileParkingSpotStore(directory.resolve(PARKING_FILE));
+        if (parkingSpotStore.getParkingNumbers().isEmpty()) {
+            addParkingSpots(parkingSpotStore, spots);
+        }
+        Storage storage = new Storage(Backend.FILE, parkingSpotStore, new FileTicketStore(directory));
+        storage.startCompaction();
+        return storage;
+    }
+
+    /**
+     * Opens the journal of the directory, creating it with the given spots the first time.
+     * @param sync true to have every change on disk before it returns
+     */
+    public static Storage journal(Path directory, String spots, boolean sync) throws IOException {
+        ParkingJournal journal = new ParkingJournal(directory, sync);
+        JournalParkingSpotStore parkingSpotStore = new JournalParkingSpotStore(journal);
+        JournalTicketStore ticketStore = new JournalTicketStore(journal);
+        long start = System.currentTimeMillis();
+        long events = journal.recover();
+        parkingSpotStore.reconcileOccupancy();
+        logger.info("Parking journal " + directory + " recovered from snapshot " + journal.getSnapshotEventNumber()
+                + " and " + events + " events in " + (System.currentTimeMillis() - start) + " ms");
+        if (parkingSpotStore.getParkingNumbers().isEmpty()) {
+            addParkingSpots(parkingSpotStore, spots);
+        }
+        Storage storage = new Storage(Backend.JOURNAL, parkingSpotStore, ticketStore);
+        storage.journal = journal;
+        storage.startCompaction();
+        return storage;
+    }
+
+    private static void addParkingSpots(InMemoryParkingSpotStore parkingSpotStore, String spots) {
+        int parkingNumber = 0;
+        for (String spot : spots.split(",")) {
+            String[] typeAndCount = spot.split(":");
+            ParkingType parkingType = ParkingType.valueOf(typeAndCount[0].trim().toUpperCase());
+            int count = Integer.parseInt(typeAndCount[1].trim());
+            for (int i = 0; i < count; i++) {
+                parkingSpotStore.addParkingSpot(++parkingNumber, parkingType, true);
+            }
+        }
+    }
+
+    private static void enableWriteBehind(TicketDAO ticketDAO, String journal) {
+        try {
+            ticketDAO.enableWriteBehind(Paths.get(journal));
+            Runtime.getRuntime().addShutdownHook(new Thread(ticketDAO::shutdown, "ticket-write-behind-shutdown"));
+            logger.info("Ticket write-behind enabled, journal: " + journal);
+        } catch (IOException e) {
+            logger.error("Unable to enable ticket write-behind, tickets are written synchronously", e);
+        }
+    }
+
+    private synchronized void startCompaction() {
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "storage-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, COMPACTION_PERIOD_MILLIS, COMPACTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compacts the logs of the file backend that have grown past twice their live records, and snapshots
+     * the journal backend once enough events were appended.
+     */
+    public void compactIfNeeded() {
+        if (backend == Backend.FILE) {
+            ((FileParkingSpotStore) parkingSpotStore).compactIfNeeded();
+            ((FileTicketStore) ticketStore).compactIfNeeded();
+        } else if (backend == Backend.JOURNAL) {
+            journal.snapshotIfNeeded(ParkingJournal.DEFAULT_SNAPSHOT_EVENTS);
+        }
+    }
+
+    /**
+     * @return the journal of the journal backend, null for the others
+     */
+    public ParkingJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return the transactions over both stores of the jdbc backend without write-behind, null for the others
+     */
+    public ParkingUnitOfWork getUnitOfWork() {
+        return unitOfWork;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public ParkingSpotStore getParkingSpotStore() {
+        return parkingSpotStore;
+    }
+
+    public TicketStore getTicketStore() {
+        return ticketStore;
+    }
+
+    /**
+     * Flushes and releases the stores: pending ticket writes, files and connection pools.
+     */
+    public synchronized void close() {
+        if (compactor != null) {
+            //not interrupted: an interrupt would close the log channel in the middle of a compaction
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(COMPACTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compactor = null;
+        }
+        ticketStore.shutdown();
+        if (backend == Backend.FILE) {
+            try {
+                ((FileParkingSpotStore) parkingSpotStore).close();
+            } catch (IOException e) {
+                logger.error("Unable to close the parking spot log", e);
+            }
+        } else if (backend == Backend.JOURNAL) {
+            //the next start then reads the snapshot alone
+            journal.snapshotIfNeeded(1);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Unable to close the parking journal", e);
+            }
+        } else if (backend == Backend.JDBC) {
+            dataBaseConfig.closeConnectionPool();
+        }
+    }
+}
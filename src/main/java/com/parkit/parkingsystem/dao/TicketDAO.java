@@ -1,89 +1,421 @@
 package com.parkit.parkingsystem.dao;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
-import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.concurrent.atomic.LongAdder;
 
-public class TicketDAO {
+public class TicketDAO implements TicketStore {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+    private static final Metrics.Timer saveTimer = Metrics.timer("dao.ticket.save");
+    private static final Metrics.Timer getTimer = Metrics.timer("dao.ticket.get");
+    private static final Metrics.Timer updateTimer = Metrics.timer("dao.ticket.update");
+    private static final Metrics.Timer archiveTimer = Metrics.timer("dao.ticket.archive");
+    private static final LongAdder errors = Metrics.counter("dao.ticket.errors");
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
-    public boolean saveTicket(Ticket ticket){
+    private final OpenTicketCache openTicketCache = new OpenTicketCache();
+
+    private final RecurringUserIndex recurringUsers = new RecurringUserIndex();
+
+    private TicketWriteBehind writeBehind;
+
+    public OpenTicketCache getOpenTicketCache() {
+        return openTicketCache;
+    }
+
+    /**
+     * Counts the visits of every vehicle in the ticket and ticket_archive tables, streamed fetchSize
+     * vehicles at a time. Meant to run once at startup, before tickets are saved.
+     * @return the number of vehicles read, or -1 on error
+     */
+    public long loadRecurringUsers(int fetchSize){
         Connection con = null;
+        long count = 0;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
-            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-            //ps.setInt(1,ticket.getId());
-            ps.setInt(1,ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
-            ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
+            for (StatementRegistry statement : new StatementRegistry[] {StatementRegistry.COUNT_VISITS, StatementRegistry.COUNT_ARCHIVED_VISITS}) {
+                PreparedStatement ps = statement.prepare(con);
+                ps.setFetchSize(fetchSize);
+                ResultSet rs = ps.executeQuery();
+                while(rs.next()){
+                    recurringUsers.addVisits(rs.getString(1), rs.getInt(2));
+                    count++;
+                }
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            return count;
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            logger.error("Error loading recurring users",ex);
+            return -1;
         }finally {
             dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public int getVisitCount(String vehicleRegNumber) {
+        return recurringUsers.getVisitCount(vehicleRegNumber);
+    }
+
+    /**
+     * Switches saveTicket and updateTicket to write-behind: writes are journaled to the given file and
+     * flushed to the database in batches by a background thread.
+     */
+    public void enableWriteBehind(Path journalPath) throws IOException {
+        writeBehind = new TicketWriteBehind(dataBaseConfig, journalPath);
+    }
+
+    public TicketWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    public void shutdown() {
+        if(writeBehind != null){
+            writeBehind.shutdown();
+        }
+    }
+
+    public boolean saveTicket(Ticket ticket){
+        long start = saveTimer.start();
+        if(writeBehind != null){
+            openTicketCache.put(ticket);
+            recurringUsers.addVisit(ticket.getVehicleRegNumber());
+            writeBehind.save(ticket);
+            saveTimer.stop(start);
+            return true;
+        }
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            if(!saveTicket(con, ticket)){
+                return false;
+            }
+            saved(ticket);
+            return true;
+        }catch (Exception ex){
+            errors.increment();
+            logger.error("Error saving ticket",ex);
             return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            saveTimer.stop(start);
         }
     }
 
     public Ticket getTicket(String vehicleRegNumber) {
+        long start = getTimer.start();
+        Ticket ticket = openTicketCache.get(vehicleRegNumber);
+        if(ticket != null){
+            getTimer.stop(start);
+            return ticket;
+        }
         Connection con = null;
-        Ticket ticket = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
-            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-            ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
-            }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+            ticket = queryTicket(con, vehicleRegNumber);
         }catch (Exception ex){
+            errors.increment();
             logger.error("Error fetching next available slot",ex);
         }finally {
             dataBaseConfig.closeConnection(con);
+            getTimer.stop(start);
             return ticket;
         }
     }
 
+    /**
+     * Closes the ticket unless another gate closed it first. With write-behind the open ticket cache
+     * decides which gate closes it, before the write is queued; otherwise the update only matches an
+     * open row.
+     * @return false if the ticket was already closed or could not be written
+     */
     public boolean updateTicket(Ticket ticket) {
+        long start = updateTimer.start();
+        if(writeBehind != null){
+            Ticket savedTicket = openTicketCache.close(ticket);
+            if(savedTicket != null){
+                writeBehind.update(savedTicket, ticket);
+            }
+            updateTimer.stop(start);
+            return savedTicket != null;
+        }
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+            PreparedStatement ps = StatementRegistry.CLOSE_TICKET.prepare(con);
             ps.setDouble(1, ticket.getPrice());
             ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
             ps.setInt(3,ticket.getId());
-            ps.execute();
-            return true;
+            int updateRowCount = ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+            return updateRowCount == 1;
         }catch (Exception ex){
+            errors.increment();
             logger.error("Error saving ticket info",ex);
         }finally {
+            //closed or not, the ticket is read again from the table
+            openTicketCache.evict(ticket.getVehicleRegNumber());
             dataBaseConfig.closeConnection(con);
+            updateTimer.stop(start);
         }
         return false;
     }
+
+    /**
+     * Inserts the ticket on the connection of a unit of work and sets its id; saved is called once the
+     * insert is committed.
+     */
+    boolean saveTicket(Connection con, Ticket ticket) throws SQLException {
+        PreparedStatement ps = StatementRegistry.SAVE_TICKET.prepare(con);
+        //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+        //ps.setInt(1,ticket.getId());
+        ps.setInt(1,ticket.getParkingSpot().getId());
+        ps.setString(2, ticket.getVehicleRegNumber());
+        ps.setDouble(3, ticket.getPrice());
+        ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+        ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+        boolean result = ps.executeUpdate() == 1;
+        ResultSet keys = ps.getGeneratedKeys();
+        if(keys.next()){
+            ticket.setId(keys.getInt(1));
+        }
+        dataBaseConfig.closeResultSet(keys);
+        dataBaseConfig.closePreparedStatement(ps);
+        return result;
+    }
+
+    void saved(Ticket ticket) {
+        openTicketCache.put(ticket);
+        recurringUsers.addVisit(ticket.getVehicleRegNumber());
+    }
+
+    /**
+     * Looks up the ticket in the open ticket cache, then on the connection of a unit of work.
+     */
+    Ticket getTicket(Connection con, String vehicleRegNumber) throws SQLException {
+        long start = getTimer.start();
+        try {
+            Ticket ticket = openTicketCache.get(vehicleRegNumber);
+            return ticket != null ? ticket : queryTicket(con, vehicleRegNumber);
+        } finally {
+            getTimer.stop(start);
+        }
+    }
+
+    private Ticket queryTicket(Connection con, String vehicleRegNumber) throws SQLException {
+        Ticket ticket = null;
+        PreparedStatement ps = StatementRegistry.GET_TICKET.prepare(con);
+        //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+        ps.setString(1,vehicleRegNumber);
+        ResultSet rs = ps.executeQuery();
+        if(rs.next()){
+            ticket = new Ticket();
+            ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setId(rs.getInt(2));
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(rs.getDouble(3));
+            ticket.setInTime(rs.getTimestamp(4));
+            ticket.setOutTime(rs.getTimestamp(5));
+            openTicketCache.put(ticket);
+        }
+        dataBaseConfig.closeResultSet(rs);
+        dataBaseConfig.closePreparedStatement(ps);
+        return ticket;
+    }
+
+    /**
+     * Writes the price and out time of the ticket on the connection of a unit of work, unless the ticket
+     * is already closed.
+     * @return the number of rows updated, 0 for a closed ticket
+     */
+    int closeTicket(Connection con, Ticket ticket) throws SQLException {
+        long start = updateTimer.start();
+        try {
+            PreparedStatement ps = StatementRegistry.CLOSE_TICKET.prepare(con);
+            ps.setDouble(1, ticket.getPrice());
+            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+            ps.setInt(3,ticket.getId());
+            int updateRowCount = ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+            return updateRowCount;
+        } finally {
+            updateTimer.stop(start);
+        }
+    }
+
+    /**
+     * Streams every closed ticket through a forward-only cursor, fetchSize rows at a time, so the
+     * table is never loaded in memory. The visit number of each row is counted on the vehicle index.
+     * @return the number of tickets read, or -1 on error
+     */
+    public long forEachClosedTicket(int fetchSize, ClosedTicketHandler handler){
+        Connection con = null;
+        long count = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = StatementRegistry.GET_CLOSED_TICKETS.prepare(con);
+            ps.setFetchSize(fetchSize);
+            ResultSet rs = ps.executeQuery();
+            while(rs.next()){
+                handler.accept(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getTimestamp(4).getTime(),
+                        rs.getTimestamp(5).getTime(), ParkingType.valueOf(rs.getString(6)).ordinal(), rs.getDouble(7));
+                count++;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return count;
+        }catch (Exception ex){
+            logger.error("Error reading closed tickets",ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Streams the tickets closed after the (out time, id) watermark and before closedBeforeMillis, in
+     * that order, through a forward-only cursor.
+     * @return the number of tickets read, or -1 on error
+     */
+    public long forEachClosedTicketAfter(long outTimeMillis, int id, long closedBeforeMillis, int fetchSize,
+                                         TicketRowHandler handler){
+        Connection con = null;
+        long count = 0;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = StatementRegistry.GET_CLOSED_TICKETS_AFTER.prepare(con);
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, new Timestamp(outTimeMillis));
+            ps.setTimestamp(2, new Timestamp(outTimeMillis));
+            ps.setInt(3, id);
+            ps.setTimestamp(4, new Timestamp(closedBeforeMillis));
+            ResultSet rs = ps.executeQuery();
+            while(rs.next()){
+                handler.accept(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getDouble(4),
+                        rs.getTimestamp(5).getTime(), rs.getTimestamp(6).getTime(), ParkingType.valueOf(rs.getString(7)).ordinal());
+                count++;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return count;
+        }catch (Exception ex){
+            logger.error("Error reading closed tickets",ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public boolean updateTicketPrices(int[] ids, double[] prices, int count){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            PreparedStatement ps = StatementRegistry.UPDATE_TICKET_PRICE.prepare(con);
+            for(int i = 0; i < count; i++){
+                ps.setDouble(1, prices[i]);
+                ps.setInt(2, ids[i]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            con.commit();
+            dataBaseConfig.closePreparedStatement(ps);
+            return true;
+        }catch (Exception ex){
+            logger.error("Error updating ticket prices",ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * Moves the next chunk of tickets closed before the cutoff to ticket_archive: up to chunkSize tickets
+     * after the (out time, id) position, copied and deleted in one short transaction. The position is
+     * advanced to the last ticket moved, so the next call continues from there without rescanning.
+     * @return the number of tickets moved, 0 when none are left, or -1 on error
+     */
+    public int archiveClosedTickets(long cutoffMillis, long[] position, int chunkSize){
+        long start = archiveTimer.start();
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            Timestamp cutoff = new Timestamp(cutoffMillis);
+            Timestamp after = new Timestamp(position[0]);
+            int afterId = (int) position[1];
+            PreparedStatement ps = StatementRegistry.GET_ARCHIVE_CHUNK.prepare(con);
+            ps.setTimestamp(1, cutoff);
+            ps.setTimestamp(2, after);
+            ps.setTimestamp(3, after);
+            ps.setInt(4, afterId);
+            ps.setInt(5, chunkSize);
+            ResultSet rs = ps.executeQuery();
+            int count = 0;
+            Timestamp last = null;
+            int lastId = 0;
+            while(rs.next()){
+                last = rs.getTimestamp(1);
+                lastId = rs.getInt(2);
+                count++;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            if(count == 0){
+                return 0;
+            }
+            con.setAutoCommit(false);
+            PreparedStatement insert = StatementRegistry.ARCHIVE_TICKETS.prepare(con);
+            setArchiveRange(insert, cutoff, after, afterId, last, lastId);
+            int archived = insert.executeUpdate();
+            dataBaseConfig.closePreparedStatement(insert);
+            PreparedStatement delete = StatementRegistry.DELETE_ARCHIVED_TICKETS.prepare(con);
+            setArchiveRange(delete, cutoff, after, afterId, last, lastId);
+            int deleted = delete.executeUpdate();
+            dataBaseConfig.closePreparedStatement(delete);
+            if(archived != deleted){
+                con.rollback();
+                logger.error("Archived " + archived + " tickets but deleted " + deleted + ", chunk rolled back");
+                return -1;
+            }
+            con.commit();
+            position[0] = last.getTime();
+            position[1] = lastId;
+            return deleted;
+        }catch (Exception ex){
+            errors.increment();
+            logger.error("Error archiving closed tickets",ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            archiveTimer.stop(start);
+        }
+    }
+
+    private static void setArchiveRange(PreparedStatement ps, Timestamp cutoff, Timestamp after, int afterId,
+                                        Timestamp last, int lastId) throws SQLException {
+        ps.setTimestamp(1, cutoff);
+        ps.setTimestamp(2, after);
+        ps.setTimestamp(3, after);
+        ps.setInt(4, afterId);
+        ps.setTimestamp(5, last);
+        ps.setTimestamp(6, last);
+        ps.setInt(7, lastId);
+    }
 }
@@ -0,0 +1,64 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Parking tickets, whatever they are stored in: TicketDAO for MySQL, InMemoryTicketStore and
+ * FileTicketStore for sites without a database server.
+ */
+public interface TicketStore {
+
+    boolean saveTicket(Ticket ticket);
+
+    Ticket getTicket(String vehicleRegNumber);
+
+    /**
+     * Closes the ticket with its price and out time.
+     * @return false if the ticket was already closed or could not be written
+     */
+    boolean updateTicket(Ticket ticket);
+
+    interface ClosedTicketHandler {
+        void accept(int id, String vehicleRegNumber, int visitNumber, long inTimeMillis, long outTimeMillis,
+                    int parkingTypeOrdinal, double price);
+    }
+
+    /**
+     * Reads every closed ticket, in id order, with its visit number: how many tickets of its vehicle,
+     * archived ones included, entered no later than it did.
+     * @return the number of tickets read, or -1 on error
+     */
+    long forEachClosedTicket(int fetchSize, ClosedTicketHandler handler);
+
+    interface TicketRowHandler {
+        void accept(int id, int parkingNumber, String vehicleRegNumber, double price, long inTimeMillis,
+                    long outTimeMillis, int parkingTypeOrdinal) throws Exception;
+    }
+
+    /**
+     * Reads the tickets closed after the (out time, id) watermark and before closedBeforeMillis, in that order.
+     * @return the number of tickets read, or -1 on error
+     */
+    long forEachClosedTicketAfter(long outTimeMillis, int id, long closedBeforeMillis, int fetchSize,
+                                  TicketRowHandler handler);
+
+    boolean updateTicketPrices(int[] ids, double[] prices, int count);
+
+    /**
+     * Looks up the vehicle in memory, without a query.
+     * @return the number of tickets of the vehicle, archived ones included, 0 for a vehicle never seen
+     */
+    int getVisitCount(String vehicleRegNumber);
+
+    /**
+     * Moves up to chunkSize tickets closed before the cutoff and after the (out time, id) position out of
+     * the tickets looked up by the gates, and advances the position to the last ticket moved.
+     * @return the number of tickets moved, 0 when none are left, or -1 on error
+     */
+    int archiveClosedTickets(long cutoffMillis, long[] position, int chunkSize);
+
+    /**
+     * Flushes pending writes and releases the files or threads held by the store.
+     */
+    void shutdown();
+}
@@ -0,0 +1,629 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind pipeline for ticket inserts and updates. Writes are appended to a local journal and on
+ * disk before save and update return, gates writing at the same time sharing one fsync, then a background
+ * writer flushes them to the database in JDBC batches when the batch is full or the flush interval has
+ * elapsed. Writes still in the journal when the process stops are replayed on the next start.
+ *
+ * A batch failing on its data (a constraint violated, a value out of range, an update finding no ticket)
+ * is retried MAX_BATCH_ATTEMPTS times, then written one write at a time: the writes failing alone are
+ * moved to the dead letter file, [journal].dead, so they no longer hold up the others. Any other failure,
+ * such as the database being down, is retried until it succeeds.
+ *
+ * A checkpoint record marks the writes up to its seq as flushed and carries the ids the database gave to
+ * the tickets they inserted, so an update journaled before its ticket had an id still finds it on replay.
+ */
+public class TicketWriteBehind {
+
+    private static final Logger logger = LogManager.getLogger("TicketWriteBehind");
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    private static final long ENQUEUE_WARN_MILLIS = 1000;
+    private static final long RETRY_BACKOFF_MILLIS = 1000;
+    public static final int MAX_BATCH_ATTEMPTS = 3;
+
+    private static final int WRITTEN = 0;
+    //the data of one of the writes was refused
+    private static final int REFUSED = 1;
+    private static final int FAILED = 2;
+    private static final String NO_ROW_STATE = "02000";
+
+    private static final byte SAVE = 'S';
+    private static final byte UPDATE = 'U';
+    private static final byte CHECKPOINT = 'C';
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ArrayBlockingQueue<PendingWrite> queue;
+    private final ArrayDeque<PendingWrite> backlog = new ArrayDeque<>();
+    private final FileChannel journal;
+    private final Path deadLetterPath;
+    private final Map<Ticket, Long> pendingSaveSeqs = new IdentityHashMap<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final Object enqueueLock = new Object();
+    private long lastSeq;
+    private int uncommitted;
+    private volatile long appendedSeq;
+    private final Object forceLock = new Object();
+    private long durableSeq;
+    private boolean forcing;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder blockedEnqueues = new LongAdder();
+    private final LongAdder deadLetters = new LongAdder();
+
+    public TicketWriteBehind(DataBaseConfig dataBaseConfig, Path journalPath) throws IOException {
+        this(dataBaseConfig, journalPath, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public TicketWriteBehind(DataBaseConfig dataBaseConfig, Path journalPath, int queueCapacity, int batchSize,
+                             long flushIntervalMillis) throws IOException {
+        this.dataBaseConfig = dataBaseConfig;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.deadLetterPath = Paths.get(journalPath + ".dead");
+        replay(journalPath);
+        this.journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.writer = new Thread(this::runWriter, "ticket-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void save(Ticket ticket) {
+        enqueue(new PendingWrite(SAVE, ticket, ticket.getId(), ticket.getPrice(), ticket.getOutTime()));
+    }
+
+    public void update(Ticket ticket) {
+        enqueue(new PendingWrite(UPDATE, ticket, ticket.getId(), ticket.getPrice(), ticket.getOutTime()));
+    }
+
+    /**
+     * Queues the price and out time of closedTicket for savedTicket, the ticket given to save, which the
+     * update of a ticket saved but not yet flushed is matched with.
+     */
+    public void update(Ticket savedTicket, Ticket closedTicket) {
+        enqueue(new PendingWrite(UPDATE, savedTicket, savedTicket.getId(), closedTicket.getPrice(), closedTicket.getOutTime()));
+    }
+
+    private void enqueue(PendingWrite write) {
+        if (!running) {
+            throw new IllegalStateException("Ticket write-behind has been shut down");
+        }
+        queue(write);
+        awaitDurable(write.seq);
+    }
+
+    private void queue(PendingWrite write) {
+        synchronized (enqueueLock) {
+            write.seq = ++lastSeq;
+            synchronized (this) {
+                if (write.type == SAVE) {
+                    pendingSaveSeqs.put(write.ticket, write.seq);
+                } else if (write.ticketId == 0) {
+                    //the id is assigned by the writer once the insert is flushed
+                    write.ticketId = write.ticket.getId();
+                    Long saveSeq = pendingSaveSeqs.get(write.ticket);
+                    write.saveSeq = saveSeq == null ? -1 : saveSeq;
+                }
+                appendToJournal(write);
+                appendedSeq = write.seq;
+                uncommitted++;
+            }
+            try {
+                if (!queue.offer(write, ENQUEUE_WARN_MILLIS, TimeUnit.MILLISECONDS)) {
+                    blockedEnqueues.increment();
+                    logger.warn("Ticket write queue is full, waiting for the database to catch up");
+                    queue.put(write);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while queuing ticket write, it stays in the journal", e);
+            }
+        }
+    }
+
+    private void appendToJournal(PendingWrite write) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(write.type);
+            out.writeLong(write.seq);
+            out.writeInt(write.ticketId);
+            out.writeDouble(write.price);
+            out.writeLong(write.outTime == null ? -1 : write.outTime.getTime());
+            if (write.type == SAVE) {
+                out.writeInt(write.ticket.getParkingSpot().getId());
+                out.writeUTF(write.ticket.getParkingSpot().getParkingType().name());
+                out.writeUTF(write.ticket.getVehicleRegNumber());
+                out.writeLong(write.ticket.getInTime().getTime());
+            } else {
+                out.writeLong(write.saveSeq);
+            }
+            writeJournal(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to journal ticket write", e);
+        }
+    }
+
+    private void writeJournal(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+    }
+
+    /**
+     * Returns once the journal is on disk up to seq. One waiting thread forces the journal at a time,
+     * outside the enqueue lock, and every write appended before its force is made durable by it.
+     */
+    private void awaitDurable(long seq) {
+        while (true) {
+            long target;
+            synchronized (forceLock) {
+                while (durableSeq < seq && forcing) {
+                    try {
+                        forceLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        logger.error("Interrupted while forcing the ticket journal, write may not be on disk", e);
+                        return;
+                    }
+                }
+                if (durableSeq >= seq) {
+                    return;
+                }
+                forcing = true;
+                target = appendedSeq;
+            }
+            boolean forced = false;
+            try {
+                journal.force(false);
+                forced = true;
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to journal ticket write", e);
+            } finally {
+                synchronized (forceLock) {
+                    forcing = false;
+                    if (forced) {
+                        durableSeq = Math.max(durableSeq, target);
+                    }
+                    forceLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private synchronized void checkpoint(List<PendingWrite> batch) {
+        List<PendingWrite> saves = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            if (write.type == SAVE) {
+                pendingSaveSeqs.remove(write.ticket);
+                if (write.ticket.getId() != 0) {
+                    saves.add(write);
+                }
+            }
+        }
+        uncommitted -= batch.size();
+        try {
+            if (uncommitted == 0) {
+                journal.truncate(0);
+            } else {
+                //seq of the last write flushed, then the (save seq, ticket id) of each insert
+                ByteBuffer record = ByteBuffer.allocate(13 + saves.size() * 12);
+                record.put(CHECKPOINT).putLong(batch.get(batch.size() - 1).seq).putInt(saves.size());
+                for (PendingWrite save : saves) {
+                    record.putLong(save.seq).putInt(save.ticket.getId());
+                }
+                record.flip();
+                writeJournal(record.array());
+                journal.force(false);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to checkpoint ticket journal", e);
+        }
+    }
+
+    private void replay(Path journalPath) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        List<PendingWrite> writes = new ArrayList<>();
+        Map<Long, Ticket> savedTickets = new HashMap<>();
+        long committedSeq = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(journalPath)))) {
+            while (true) {
+                byte type = in.readByte();
+                long seq = in.readLong();
+                if (type == CHECKPOINT) {
+                    Map<Long, Integer> ticketIds = new HashMap<>();
+                    for (int saves = in.readInt(); saves > 0; saves--) {
+                        ticketIds.put(in.readLong(), in.readInt());
+                    }
+                    committedSeq = seq;
+                    for (Map.Entry<Long, Integer> ticketId : ticketIds.entrySet()) {
+                        Ticket saved = savedTickets.get(ticketId.getKey());
+                        if (saved != null) {
+                            //pending updates of this ticket share the instance
+                            saved.setId(ticketId.getValue());
+                        }
+                    }
+                    continue;
+                }
+                int ticketId = in.readInt();
+                double price = in.readDouble();
+                long outTime = in.readLong();
+                Ticket ticket;
+                long saveSeq = -1;
+                if (type == SAVE) {
+                    ticket = new Ticket();
+                    ticket.setId(ticketId);
+                    ticket.setParkingSpot(new ParkingSpot(in.readInt(), ParkingType.valueOf(in.readUTF()), false));
+                    ticket.setVehicleRegNumber(in.readUTF());
+                    ticket.setInTime(new Date(in.readLong()));
+                    ticket.setPrice(price);
+                    ticket.setOutTime(outTime < 0 ? null : new Date(outTime));
+                    savedTickets.put(seq, ticket);
+                } else {
+                    saveSeq = in.readLong();
+                    ticket = savedTickets.get(saveSeq);
+                }
+                PendingWrite write = new PendingWrite(type, ticket, ticketId, price, outTime < 0 ? null : new Date(outTime));
+                write.seq = seq;
+                write.saveSeq = saveSeq;
+                writes.add(write);
+                lastSeq = Math.max(lastSeq, seq);
+            }
+        } catch (EOFException e) {
+            //end of journal, a torn last record is ignored as it was never acknowledged
+        }
+        for (PendingWrite write : writes) {
+            if (write.seq > committedSeq) {
+                if (write.type == UPDATE && write.ticketId == 0 && write.ticket == null) {
+                    logger.error("Dropping journaled update " + write.seq + " whose ticket is unknown");
+                    continue;
+                }
+                backlog.add(write);
+                if (write.type == SAVE) {
+                    pendingSaveSeqs.put(write.ticket, write.seq);
+                }
+            }
+        }
+        uncommitted = backlog.size();
+        if (uncommitted > 0) {
+            logger.warn("Replaying " + uncommitted + " ticket writes from journal " + journalPath);
+        } else {
+            Files.delete(journalPath);
+        }
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        int refusals = 0;
+        while (running || !batch.isEmpty() || !queue.isEmpty() || !backlog.isEmpty()) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            int result = writeBatch(batch);
+            if (result == WRITTEN) {
+                checkpoint(batch);
+                batch.clear();
+            } else if (result == REFUSED && ++refusals >= MAX_BATCH_ATTEMPTS) {
+                result = writeOneByOne(batch);
+            }
+            if (result == WRITTEN) {
+                refusals = 0;
+            } else if (!running) {
+                logger.error("Leaving " + uncommitted + " ticket writes in the journal for the next start");
+                return;
+            } else {
+                sleepQuietly(RETRY_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Writes the batch one write at a time, in order, moving the writes refused alone to the dead letter
+     * file, and removes them from the batch. Stops at the first write that fails for another reason.
+     * @return WRITTEN once the batch is empty, otherwise the result of the failed write
+     */
+    private int writeOneByOne(List<PendingWrite> batch) {
+        int done = 0;
+        int result = WRITTEN;
+        for (PendingWrite write : batch) {
+            List<PendingWrite> single = Collections.singletonList(write);
+            result = writeBatch(single);
+            if (result == REFUSED) {
+                deadLetter(write);
+                result = WRITTEN;
+            }
+            if (result != WRITTEN) {
+                break;
+            }
+            checkpoint(single);
+            done++;
+        }
+        batch.subList(0, done).clear();
+        return result;
+    }
+
+    private void deadLetter(PendingWrite write) {
+        deadLetters.increment();
+        String line = (char) write.type + " seq=" + write.seq + " id=" + (write.ticketId != 0 ? write.ticketId
+                : write.ticket == null ? 0 : write.ticket.getId())
+                + (write.ticket == null ? "" : " reg=" + write.ticket.getVehicleRegNumber()
+                + " spot=" + write.ticket.getParkingSpot().getId() + " in=" + write.ticket.getInTime().getTime())
+                + " price=" + write.price + " out=" + (write.outTime == null ? -1 : write.outTime.getTime())
+                + System.lineSeparator();
+        logger.error("Ticket write refused by the database, moved to " + deadLetterPath + ": " + line.trim());
+        try {
+            Files.write(deadLetterPath, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Unable to write dead letter file " + deadLetterPath, e);
+        }
+    }
+
+    private void fillBatch(List<PendingWrite> batch) throws InterruptedException {
+        while (batch.size() < batchSize && !backlog.isEmpty()) {
+            batch.add(backlog.poll());
+        }
+        if (batch.size() >= batchSize) {
+            return;
+        }
+        if (batch.isEmpty()) {
+            PendingWrite first = running ? queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS) : queue.poll();
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+        }
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.currentTimeMillis();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            PendingWrite next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private int writeBatch(List<PendingWrite> batch) {
+        Connection con = null;
+        PreparedStatement saves = null;
+        PreparedStatement updates = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            List<Ticket> savedTickets = new ArrayList<>();
+            for (PendingWrite write : batch) {
+                if (write.type == SAVE) {
+                    if (saves == null) {
+                        saves = StatementRegistry.SAVE_TICKET.prepare(con);
+                    }
+                    saves.setInt(1, write.ticket.getParkingSpot().getId());
+                    saves.setString(2, write.ticket.getVehicleRegNumber());
+                    saves.setDouble(3, write.price);
+                    saves.setTimestamp(4, new Timestamp(write.ticket.getInTime().getTime()));
+                    saves.setTimestamp(5, (write.outTime == null) ? null : new Timestamp(write.outTime.getTime()));
+                    saves.addBatch();
+                    savedTickets.add(write.ticket);
+                }
+            }
+            if (saves != null) {
+                checkUpdateCounts(saves.executeBatch(), "Ticket insert");
+                ResultSet keys = saves.getGeneratedKeys();
+                for (int i = 0; i < savedTickets.size() && keys.next(); i++) {
+                    savedTickets.get(i).setId(keys.getInt(1));
+                }
+                dataBaseConfig.closeResultSet(keys);
+            }
+            for (PendingWrite write : batch) {
+                if (write.type == UPDATE) {
+                    if (updates == null) {
+                        updates = StatementRegistry.UPDATE_TICKET.prepare(con);
+                    }
+                    updates.setDouble(1, write.price);
+                    updates.setTimestamp(2, new Timestamp(write.outTime.getTime()));
+                    updates.setInt(3, write.ticketId != 0 ? write.ticketId : write.ticket.getId());
+                    updates.addBatch();
+                }
+            }
+            if (updates != null) {
+                checkUpdateCounts(updates.executeBatch(), "Ticket update");
+            }
+            con.commit();
+            written.add(batch.size());
+            batches.increment();
+            return WRITTEN;
+        } catch (Exception ex) {
+            failedBatches.increment();
+            logger.error("Error writing batch of " + batch.size() + " tickets", ex);
+            rollbackQuietly(con);
+            for (PendingWrite write : batch) {
+                if (write.type == SAVE) {
+                    //the ids of the rolled back inserts are assigned again by the next attempt
+                    write.ticket.setId(write.ticketId);
+                }
+            }
+            return ex instanceof SQLException && isRefused((SQLException) ex) ? REFUSED : FAILED;
+        } finally {
+            dataBaseConfig.closePreparedStatement(saves);
+            dataBaseConfig.closePreparedStatement(updates);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * An update of a ticket whose insert was never written finds no row: it fails the batch rather than
+     * being lost.
+     */
+    private static void checkUpdateCounts(int[] counts, String statement) throws SQLException {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED) {
+                throw new SQLException(statement + " " + i + " of the batch changed no row", NO_ROW_STATE);
+            }
+        }
+    }
+
+    /**
+     * @return true for errors on the data written (no row, data exception, constraint violation), which
+     * retrying does not fix
+     */
+    private static boolean isRefused(SQLException ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            String state = cause instanceof SQLException ? ((SQLException) cause).getSQLState() : null;
+            if (state != null && (state.startsWith("02") || state.startsWith("22") || state.startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rollbackQuietly(Connection con) {
+        if (con != null) {
+            try {
+                con.rollback();
+            } catch (SQLException e) {
+                logger.error("Error rolling back ticket batch", e);
+            }
+        }
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting writes, flushes everything queued and closes the journal. Writes that cannot be
+     * flushed stay in the journal and are replayed on the next start.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        synchronized (enqueueLock) {
+            running = false;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Error closing ticket journal", e);
+        }
+        logger.info("Ticket write-behind stopped: " + getWrittenCount() + " writes in " + getBatchCount() + " batches");
+    }
+
+    public int getPendingCount() {
+        return queue.size() + backlog.size();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    public long getBlockedEnqueueCount() {
+        return blockedEnqueues.sum();
+    }
+
+    public long getDeadLetterCount() {
+        return deadLetters.sum();
+    }
+
+    public Path getDeadLetterPath() {
+        return deadLetterPath;
+    }
+
+    private static class PendingWrite {
+        private final byte type;
+        private final Ticket ticket;
+        private int ticketId;
+        private final double price;
+        private final Date outTime;
+        private long seq;
+        private long saveSeq = -1;
+
+        PendingWrite(byte type, Ticket ticket, int ticketId, double price, Date outTime) {
+            this.type = type;
+            this.ticket = ticket;
+            this.ticketId = ticketId;
+            this.price = price;
+            this.outTime = outTime;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+public class EntryResult {
+    private final boolean success;
+    private final String vehicleRegNumber;
+    private final ParkingSpot parkingSpot;
+    private final Date inTime;
+    private final String message;
+
+    public EntryResult(boolean success, String vehicleRegNumber, ParkingSpot parkingSpot, Date inTime, String message) {
+        this.success = success;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingSpot = parkingSpot;
+        this.inTime = inTime;
+        this.message = message;
+    }
+
+    public static EntryResult failure(String vehicleRegNumber, String message) {
+        return new EntryResult(false, vehicleRegNumber, null, null, message);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingSpot getParkingSpot() {
+        return parkingSpot;
+    }
+
+    public Date getInTime() {
+        return inTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+public class ExitResult {
+    private final boolean success;
+    private final String vehicleRegNumber;
+    private final ParkingSpot parkingSpot;
+    private final double price;
+    private final Date inTime;
+    private final Date outTime;
+    private final String message;
+
+    public ExitResult(boolean success, Ticket ticket, String message) {
+        this.success = success;
+        this.vehicleRegNumber = ticket.getVehicleRegNumber();
+        this.parkingSpot = ticket.getParkingSpot();
+        this.price = ticket.getPrice();
+        this.inTime = ticket.getInTime();
+        this.outTime = ticket.getOutTime();
+        this.message = message;
+    }
+
+    private ExitResult(String vehicleRegNumber, String message) {
+        this.success = false;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingSpot = null;
+        this.price = 0;
+        this.inTime = null;
+        this.outTime = null;
+        this.message = message;
+    }
+
+    public static ExitResult failure(String vehicleRegNumber, String message) {
+        return new ExitResult(vehicleRegNumber, message);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public ParkingSpot getParkingSpot() {
+        return parkingSpot;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public Date getInTime() {
+        return inTime;
+    }
+
+    public Date getOutTime() {
+        return outTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
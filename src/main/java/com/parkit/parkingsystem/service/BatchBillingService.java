@@ -0,0 +1,198 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.dao.TicketStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Reprices every closed ticket with the current fare engine. Tickets are streamed from the database in
+ * fixed size chunks, each chunk is priced in parallel on a ForkJoinPool and the changed prices are written
+ * back in one JDBC batch. At most a few chunks are in flight at once, so memory stays bounded whatever the
+ * size of the ticket table. A ticket keeps the recurring user discount it got at the exit gate: it is
+ * discounted when its vehicle had entered at least RECURRING_USER_MIN_VISITS times by its own entry, not
+ * by the vehicle's later visits.
+ */
+public class BatchBillingService {
+
+    private static final Logger logger = LogManager.getLogger("BatchBillingService");
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final int DEFAULT_CHUNKS_IN_FLIGHT = 4;
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+    private final TicketStore ticketDAO;
+    private final FareEngine fareEngine = new FareEngine();
+    private final int chunkSize;
+    private final int chunksInFlight;
+
+    public BatchBillingService(TicketStore ticketDAO) {
+        this(ticketDAO, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_IN_FLIGHT);
+    }
+
+    public BatchBillingService(TicketStore ticketDAO, int chunkSize, int chunksInFlight) {
+        this.ticketDAO = ticketDAO;
+        this.chunkSize = chunkSize;
+        this.chunksInFlight = chunksInFlight;
+    }
+
+    public BillingReport repriceClosedTickets() {
+        ForkJoinPool pool = new ForkJoinPool();
+        Semaphore inFlight = new Semaphore(chunksInFlight);
+        LongAdder repriced = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long start = System.currentTimeMillis();
+        long[] lastProgress = {start};
+        Chunk[] current = {new Chunk(chunkSize)};
+
+        long read = ticketDAO.forEachClosedTicket(chunkSize, (id, vehicleRegNumber, visitNumber, inTimeMillis, outTimeMillis, parkingTypeOrdinal, price) -> {
+            Chunk chunk = current[0];
+            boolean recurringUser = visitNumber >= Fare.RECURRING_USER_MIN_VISITS;
+            chunk.add(id, recurringUser, inTimeMillis, outTimeMillis, parkingTypeOrdinal, price);
+            if (chunk.count == chunkSize) {
+                submit(pool, inFlight, chunk, repriced, failed);
+                current[0] = new Chunk(chunkSize);
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastProgress[0] >= PROGRESS_INTERVAL_MILLIS) {
+                lastProgress[0] = now;
+                logger.info(String.format("Repricing in progress: %d tickets repriced, %.0f tickets/s",
+                        repriced.sum(), repriced.sum() * 1000.0 / Math.max(1, now - start)));
+            }
+        });
+        if (current[0].count > 0) {
+            submit(pool, inFlight, current[0], repriced, failed);
+        }
+        inFlight.acquireUninterruptibly(chunksInFlight);
+        pool.shutdown();
+
+        BillingReport report = new BillingReport(Math.max(read, 0), repriced.sum(), failed.sum(),
+                System.currentTimeMillis() - start, read >= 0);
+        logger.info(report);
+        return report;
+    }
+
+    private void submit(ForkJoinPool pool, Semaphore inFlight, Chunk chunk, LongAdder repriced, LongAdder failed) {
+        inFlight.acquireUninterruptibly();
+        pool.execute(() -> {
+            try {
+                IntStream.range(0, chunk.count).parallel().forEach(i -> chunk.price(i, fareEngine));
+                int changed = chunk.keepChanged();
+                if (changed == 0 || ticketDAO.updateTicketPrices(chunk.ids, chunk.newPrices, changed)) {
+                    repriced.add(changed);
+                } else {
+                    failed.add(changed);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error repricing chunk of tickets", e);
+                failed.add(chunk.count);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static class Chunk {
+        private final int[] ids;
+        private final boolean[] recurringUsers;
+        private final long[] inTimes;
+        private final long[] outTimes;
+        private final int[] parkingTypes;
+        private final double[] prices;
+        private final double[] newPrices;
+        private int count;
+
+        Chunk(int size) {
+            ids = new int[size];
+            recurringUsers = new boolean[size];
+            inTimes = new long[size];
+            outTimes = new long[size];
+            parkingTypes = new int[size];
+            prices = new double[size];
+            newPrices = new double[size];
+        }
+
+        void add(int id, boolean recurringUser, long inTime, long outTime, int parkingType, double price) {
+            ids[count] = id;
+            recurringUsers[count] = recurringUser;
+            inTimes[count] = inTime;
+            outTimes[count] = outTime;
+            parkingTypes[count] = parkingType;
+            prices[count] = price;
+            count++;
+        }
+
+        void price(int i, FareEngine fareEngine) {
+            long fare = fareEngine.calculateFareMillicents(inTimes[i], outTimes[i], parkingTypes[i], recurringUsers[i]);
+            newPrices[i] = fare / (double) FareEngine.MILLICENTS_PER_UNIT;
+        }
+
+        /**
+         * Compacts the ids and new prices of the tickets whose price changed to the front of the arrays.
+         */
+        int keepChanged() {
+            int changed = 0;
+            for (int i = 0; i < count; i++) {
+                if (Double.compare(prices[i], newPrices[i]) != 0) {
+                    ids[changed] = ids[i];
+                    newPrices[changed] = newPrices[i];
+                    changed++;
+                }
+            }
+            return changed;
+        }
+    }
+
+    public static class BillingReport {
+        private final long ticketsRead;
+        private final long ticketsRepriced;
+        private final long ticketsFailed;
+        private final long elapsedMillis;
+        private final boolean complete;
+
+        BillingReport(long ticketsRead, long ticketsRepriced, long ticketsFailed, long elapsedMillis, boolean complete) {
+            this.ticketsRead = ticketsRead;
+            this.ticketsRepriced = ticketsRepriced;
+            this.ticketsFailed = ticketsFailed;
+            this.elapsedMillis = elapsedMillis;
+            this.complete = complete;
+        }
+
+        public long getTicketsRead() {
+            return ticketsRead;
+        }
+
+        public long getTicketsRepriced() {
+            return ticketsRepriced;
+        }
+
+        public long getTicketsFailed() {
+            return ticketsFailed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isComplete() {
+            return complete && ticketsFailed == 0;
+        }
+
+        public double getThroughput() {
+            return ticketsRead * 1000.0 / Math.max(1, elapsedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Repricing %s: %d tickets read, %d repriced, %d failed in %d ms (%.0f tickets/s)",
+                    isComplete() ? "complete" : "incomplete", ticketsRead, ticketsRepriced, ticketsFailed,
+                    elapsedMillis, getThroughput());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A gate driven from the console: reads the vehicle from the keyboard, calls ParkingService.enter or exit
+ * and prints what they return. The parking spot is chosen by enter, never here.
+ */
+public class ConsoleGate {
+
+    private static final Logger logger = LogManager.getLogger("ConsoleGate");
+
+    private final InputReaderUtil inputReaderUtil;
+    private final ParkingService parkingService;
+
+    public ConsoleGate(InputReaderUtil inputReaderUtil, ParkingService parkingService) {
+        this.inputReaderUtil = inputReaderUtil;
+        this.parkingService = parkingService;
+    }
+
+    public void processIncomingVehicle() {
+        try{
+            ParkingType parkingType = getVehichleType();
+            String vehicleRegNumber = getVehichleRegNumber();
+            EntryResult result = parkingService.enter(vehicleRegNumber, parkingType);
+            System.out.println(result.getMessage());
+            if(result.isSuccess()){
+                System.out.println("Please park your vehicle in spot number:"+result.getParkingSpot().getId());
+                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+result.getInTime());
+            }
+        }catch(IllegalArgumentException ie){
+            logger.error("Error parsing user input for type of vehicle", ie);
+        }catch(Exception e){
+            logger.error("Unable to process incoming vehicle",e);
+        }
+    }
+
+    private String getVehichleRegNumber() throws Exception {
+        System.out.println("Please type the vehicle registration number and press enter key");
+        return inputReaderUtil.readVehicleRegistrationNumber();
+    }
+
+    private ParkingType getVehichleType(){
+        System.out.println("Please select vehicle type from menu");
+        System.out.println("1 CAR");
+        System.out.println("2 BIKE");
+        int input = inputReaderUtil.readSelection();
+        switch(input){
+            case 1: {
+                return ParkingType.CAR;
+            }
+            case 2: {
+                return ParkingType.BIKE;
+            }
+            default: {
+                System.out.println("Incorrect input provided");
+                throw new IllegalArgumentException("Entered input is invalid");
+            }
+        }
+    }
+
+    public void processExitingVehicle() {
+        try{
+            String vehicleRegNumber = getVehichleRegNumber();
+            ExitResult result = parkingService.exit(vehicleRegNumber);
+            System.out.println(result.getMessage());
+            if(result.isSuccess()){
+                System.out.println("Recorded out-time for vehicle number:" + result.getVehicleRegNumber() + " is:" + result.getOutTime());
+            }
+        }catch(Exception e){
+            logger.error("Unable to process exiting vehicle",e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Prices a stay from primitive epoch millis and a ParkingType ordinal, without Date objects or boxing.
+ * The RatePlan is compiled once per type, with and without the recurring user discount, into a week long
+ * table of rate boundaries with the cost accumulated up to each one, and the capped cost of each day of the
+ * week, so any stay, however long, is priced with two binary searches per partial day instead of a walk
+ * over its minutes. Amounts are in millicents (1/1000 cent), rounded down once for the whole stay.
+ */
+public class FareEngine {
+
+    public static final long MILLICENTS_PER_CENT = 1000;
+    public static final long MILLICENTS_PER_UNIT = 100 * MILLICENTS_PER_CENT;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    private static final long MILLIS_PER_WEEK = 7 * MILLIS_PER_DAY;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    //1970-01-01, day 0 of the epoch, was a Thursday, 3 days after the start of the week
+    private static final int EPOCH_DAY_OF_WEEK = 3;
+
+    private final ZoneRules zoneRules;
+    private final long fixedOffsetMillis;
+    private final long gracePeriodMillis;
+    private final long billingUnitMillis;
+    private final Schedule[] schedules;
+    private final Schedule[] discountedSchedules;
+
+    public FareEngine() {
+        this(RatePlan.configured());
+    }
+
+    public FareEngine(RatePlan plan) {
+        zoneRules = plan.getZone().getRules();
+        fixedOffsetMillis = zoneRules.isFixedOffset() ? zoneRules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L : 0;
+        gracePeriodMillis = plan.getGracePeriodMillis();
+        billingUnitMillis = plan.getBillingUnitMillis();
+        RatePlan discountedPlan = plan.discounted(Fare.RECURRING_USER_DISCOUNT);
+        ParkingType[] parkingTypes = ParkingType.values();
+        schedules = new Schedule[parkingTypes.length];
+        discountedSchedules = new Schedule[parkingTypes.length];
+        for (ParkingType parkingType : parkingTypes) {
+            schedules[parkingType.ordinal()] = new Schedule(plan, parkingType);
+            discountedSchedules[parkingType.ordinal()] = new Schedule(discountedPlan, parkingType);
+        }
+    }
+
+    public long calculateFareMillicents(long inTimeMillis, long outTimeMillis, int parkingTypeOrdinal) {
+        return calculateFareMillicents(inTimeMillis, outTimeMillis, parkingTypeOrdinal, false);
+    }
+
+    public long calculateFareMillicents(long inTimeMillis, long outTimeMillis, int parkingTypeOrdinal, boolean discount) {
+        if (outTimeMillis < inTimeMillis) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTimeMillis);
+        }
+        if (parkingTypeOrdinal < 0 || parkingTypeOrdinal >= schedules.length) {
+            throw new IllegalArgumentException("Unkown Parking Type");
+        }
+        long duration = outTimeMillis - inTimeMillis;
+        if (duration <= gracePeriodMillis) {
+            return 0;
+        }
+        if (billingUnitMillis > 0) {
+            duration = (duration + billingUnitMillis - 1) / billingUnitMillis * billingUnitMillis;
+        }
+        long from = inTimeMillis + (zoneRules.isFixedOffset() ? fixedOffsetMillis
+                : zoneRules.getOffset(Instant.ofEpochMilli(inTimeMillis)).getTotalSeconds() * 1000L);
+        return (discount ? discountedSchedules : schedules)[parkingTypeOrdinal].price(from, from + duration);
+    }
+
+    /**
+     * @return the fare in cents, rounded half up
+     */
+    public long calculateFareCents(long inTimeMillis, long outTimeMillis, int parkingTypeOrdinal) {
+        return (calculateFareMillicents(inTimeMillis, outTimeMillis, parkingTypeOrdinal) + MILLICENTS_PER_CENT / 2)
+                / MILLICENTS_PER_CENT;
+    }
+
+    /**
+     * Compiled tariff of one parking type. Costs are accumulated in millis times millicents per hour, so
+     * they are exact integers, and divided by the millis of an hour only at the end.
+     */
+    private static final class Schedule {
+
+        //week offsets, from Monday 00:00 in wall clock time, where the rate changes, the first one 0
+        private final long[] boundaries;
+        private final long[] rates;
+        //cost from the start of the week to each boundary
+        private final long[] costs;
+        private final long weekCost;
+        private final long dailyCap;
+        //capped cost of the days of the week before each day, over two weeks so any 7 days are a difference
+        private final long[] cappedDayCosts = new long[2 * 7 + 1];
+
+        Schedule(RatePlan plan, ParkingType parkingType) {
+            long[] minuteRates = new long[MINUTES_PER_WEEK];
+            Arrays.fill(minuteRates, plan.getMillicentsPerHour(parkingType));
+            for (RatePlan.Window window : plan.getWindows(parkingType)) {
+                for (DayOfWeek day : window.getDays()) {
+                    int start = (day.getValue() - 1) * MINUTES_PER_DAY;
+                    for (int minute = window.getFromMinute(); minute < window.getToMinute(); minute++) {
+                        minuteRates[(start + minute) % MINUTES_PER_WEEK] = window.getMillicentsPerHour();
+                    }
+                }
+            }
+            int count = 1;
+            for (int minute = 1; minute < MINUTES_PER_WEEK; minute++) {
+                if (minuteRates[minute] != minuteRates[minute - 1]) {
+                    count++;
+                }
+            }
+            boundaries = new long[count];
+            rates = new long[count];
+            costs = new long[count];
+            rates[0] = minuteRates[0];
+            for (int minute = 1, i = 0; minute < MINUTES_PER_WEEK; minute++) {
+                if (minuteRates[minute] != rates[i]) {
+                    i++;
+                    boundaries[i] = minute * MILLIS_PER_MINUTE;
+                    rates[i] = minuteRates[minute];
+                    costs[i] = costs[i - 1] + (boundaries[i] - boundaries[i - 1]) * rates[i - 1];
+                }
+            }
+            weekCost = costAt(MILLIS_PER_WEEK);
+            long cap = plan.getDailyCapMillicents(parkingType);
+            dailyCap = cap == RatePlan.NO_CAP ? RatePlan.NO_CAP : cap * MILLIS_PER_HOUR;
+            for (int day = 0; day < 2 * 7; day++) {
+                long dayStart = (day % 7) * MILLIS_PER_DAY;
+                cappedDayCosts[day + 1] = cappedDayCosts[day]
+                        + Math.min(costAt(dayStart + MILLIS_PER_DAY) - costAt(dayStart), dailyCap);
+            }
+        }
+
+        /**
+         * @param weekOffset millis since the start of the week, up to the end of the week included
+         */
+        private long costAt(long weekOffset) {
+            int i = Arrays.binarySearch(boundaries, weekOffset);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            return costs[i] + (weekOffset - boundaries[i]) * rates[i];
+        }
+
+        /**
+         * @return the uncapped cost between the two wall clock times, at most a week apart
+         */
+        private long cost(long from, long to) {
+            long weekFrom = Math.floorDiv(from + EPOCH_DAY_OF_WEEK * MILLIS_PER_DAY, MILLIS_PER_WEEK);
+            long weekTo = Math.floorDiv(to + EPOCH_DAY_OF_WEEK * MILLIS_PER_DAY, MILLIS_PER_WEEK);
+            return (weekTo - weekFrom) * weekCost
+                    + costAt(to + EPOCH_DAY_OF_WEEK * MILLIS_PER_DAY - weekTo * MILLIS_PER_WEEK)
+                    - costAt(from + EPOCH_DAY_OF_WEEK * MILLIS_PER_DAY - weekFrom * MILLIS_PER_WEEK);
+        }
+
+        /**
+         * @return the fare in millicents between the two wall clock times
+         */
+        long price(long from, long to) {
+            long fullWeeks;
+            long rest;
+            if (dailyCap == RatePlan.NO_CAP) {
+                fullWeeks = (to - from) / MILLIS_PER_WEEK;
+                rest = cost(from + fullWeeks * MILLIS_PER_WEEK, to);
+                return millicents(fullWeeks, weekCost, rest);
+            }
+            long dayFrom = Math.floorDiv(from, MILLIS_PER_DAY);
+            long dayTo = Math.floorDiv(to, MILLIS_PER_DAY);
+            if (dayFrom == dayTo) {
+                return millicents(0, 0, Math.min(cost(from, to), dailyCap));
+            }
+            long fullDays = dayTo - dayFrom - 1;
+            int firstFullDay = (int) Math.floorMod(dayFrom + 1 + EPOCH_DAY_OF_WEEK, 7L);
+            fullWeeks = fullDays / 7;
+            rest = Math.min(cost(from, (dayFrom + 1) * MILLIS_PER_DAY), dailyCap)
+                    + cappedDayCosts[firstFullDay + (int) (fullDays % 7)] - cappedDayCosts[firstFullDay]
+                    + Math.min(cost(dayTo * MILLIS_PER_DAY, to), dailyCap);
+            return millicents(fullWeeks, cappedDayCosts[7], rest);
+        }
+
+        /**
+         * @return (weeks * weekCost + rest) / MILLIS_PER_HOUR rounded down, without overflow for long stays
+         */
+        private static long millicents(long weeks, long weekCost, long rest) {
+            return weeks * (weekCost / MILLIS_PER_HOUR) + (weeks * (weekCost % MILLIS_PER_HOUR) + rest) / MILLIS_PER_HOUR;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingOccupancy;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.util.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP/JSON front end for the barrier terminals, so one process can serve every gate.
+ *
+ * POST /entry?reg=ABC123&type=CAR, POST /exit?reg=ABC123, GET /quote?reg=ABC123 and GET /availability.
+ * Requests are served by a bounded worker pool; when the pool and its queue are full the request is
+ * answered with 503 by the accepting thread, without calling the lot, so the gate can retry it and the
+ * accepting thread is never held up by a slow lot.
+ *
+ * When several parking lots are served every request names its lot with lot=north, and is answered with
+ * 503 when that lot cannot take it within LOT_TIMEOUT_SECONDS, so a slow lot does not hold up the others.
+ * The request is then withdrawn from the lot queue; one the lot already started is waited for instead, so
+ * the gate is never told an entry or exit failed when it was made.
+ */
+public class GateServer {
+
+    private static final Logger logger = LogManager.getLogger("GateServer");
+
+    public static final String PORT_PROPERTY = "parkit.server.port";
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_WORKERS = 64;
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int BACKLOG = 1024;
+    private static final int DRAIN_SECONDS = 10;
+    private static final int LOT_TIMEOUT_SECONDS = 5;
+
+    //set on the accepting thread while it answers a request the worker pool refused
+    private static final ThreadLocal<Boolean> refusing = ThreadLocal.withInitial(() -> false);
+
+    private final ParkingLots lots;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final LongAdder rejectedCounter = Metrics.counter("gate.http.rejected");
+
+    public GateServer(ParkingService parkingService, OccupancyService occupancyService, int port) throws IOException {
+        this(parkingService, occupancyService, port, DEFAULT_WORKERS);
+    }
+
+    public GateServer(ParkingService parkingService, OccupancyService occupancyService, int port, int workerCount) throws IOException {
+        this(new ParkingLots(Collections.singletonList(
+                new ParkingLot(ParkingLots.DEFAULT_LOT, parkingService, occupancyService, workerCount, QUEUE_CAPACITY))), port, workerCount);
+    }
+
+    /**
+     * Serves the lots, which are stopped with the server.
+     */
+    public GateServer(ParkingLots lots, int port, int workerCount) throws IOException {
+        this(lots, port, workerCount, QUEUE_CAPACITY);
+    }
+
+    public GateServer(ParkingLots lots, int port, int workerCount, int queueCapacity) throws IOException {
+        this.lots = lots;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "gate-http-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.setExecutor(this::execute);
+        server.createContext("/entry", handler("POST", this::entry));
+        server.createContext("/exit", handler("POST", this::exit));
+        server.createContext("/quote", handler("GET", this::quote));
+        server.createContext("/availability", handler("GET", this::availability));
+    }
+
+    /**
+     * Starts a server for the parking lots and storage backends chosen by the system properties, drained
+     * and closed by a shutdown hook.
+     */
+    public static GateServer startServer(int port) throws IOException {
+        ParkingLots lots = ParkingLots.open();
+        Metrics.startReporting();
+        GateServer gateServer;
+        try {
+            gateServer = new GateServer(lots, port, DEFAULT_WORKERS);
+        } catch (IOException e) {
+            lots.stop(0);
+            throw e;
+        }
+        gateServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            gateServer.stop(DRAIN_SECONDS);
+            Metrics.stopReporting();
+        }, "gate-server-shutdown"));
+        return gateServer;
+    }
+
+    private void execute(Runnable exchange) {
+        try {
+            workers.execute(exchange);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            refusing.set(true);
+            try {
+                exchange.run();
+            } finally {
+                refusing.set(false);
+            }
+        }
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Gate server listening on port " + getPort() + " for parking lots " + lots.getLotIds());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections, then waits up to drainSeconds for the requests in progress to complete.
+     */
+    public void stop(int drainSeconds) {
+        logger.info("Stopping gate server, draining requests for up to " + drainSeconds + " s");
+        server.stop(drainSeconds);
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(drainSeconds, TimeUnit.SECONDS)) {
+                logger.warn(workers.getActiveCount() + " gate requests still running after drain");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lots.stop(drainSeconds);
+    }
+
+    private Response entry(ParkingLot lot, Map<String, String> params) throws Exception {
+        String vehicleRegNumber = params.get("reg");
+        ParkingType parkingType;
+        try {
+            parkingType = ParkingType.valueOf(String.valueOf(params.get("type")).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return new Response(400, error("Invalid vehicle type"));
+        }
+        EntryResult result = await(lot.enter(vehicleRegNumber, parkingType));
+        StringBuilder json = new StringBuilder();
+        json.append("{\"success\":").append(result.isSuccess())
+                .append(",\"message\":").append(quote(result.getMessage()))
+                .append(",\"vehicleRegNumber\":").append(quote(result.getVehicleRegNumber()));
+        if (result.isSuccess()) {
+            json.append(",\"parkingNumber\":").append(result.getParkingSpot().getId())
+                    .append(",\"parkingType\":").append(quote(result.getParkingSpot().getParkingType().name()))
+                    .append(",\"inTime\":").append(result.getInTime().getTime());
+        }
+        return new Response(result.isSuccess() ? 200 : 409, json.append('}').toString());
+    }
+
+    private Response exit(ParkingLot lot, Map<String, String> params) throws Exception {
+        return toResponse(await(lot.exit(params.get("reg"))));
+    }
+
+    private Response quote(ParkingLot lot, Map<String, String> params) throws Exception {
+        return toResponse(await(lot.quote(params.get("reg"))));
+    }
+
+    private static <T> T await(CompletableFuture<T> result) throws Exception {
+        try {
+            try {
+                return result.get(LOT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                if (result.cancel(false)) {
+                    throw e;
+                }
+                return result.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private Response toResponse(ExitResult result) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"success\":").append(result.isSuccess())
+                .append(",\"message\":").append(quote(result.getMessage()))
+                .append(",\"vehicleRegNumber\":").append(quote(result.getVehicleRegNumber()));
+        if (result.isSuccess()) {
+            json.append(",\"parkingNumber\":").append(result.getParkingSpot().getId())
+                    .append(",\"price\":").append(result.getPrice())
+                    .append(",\"inTime\":").append(millis(result.getInTime()))
+                    .append(",\"outTime\":").append(millis(result.getOutTime()));
+        }
+        return new Response(result.isSuccess() ? 200 : 404, json.append('}').toString());
+    }
+
+    private Response availability(ParkingLot lot, Map<String, String> params) {
+        ParkingOccupancy.Snapshot snapshot = lot.getOccupancyService().snapshot();
+        StringBuilder json = new StringBuilder("{");
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(quote(parkingType.name()))
+                    .append(":{\"free\":").append(snapshot.getFree(parkingType))
+                    .append(",\"occupied\":").append(snapshot.getOccupied(parkingType))
+                    .append(",\"total\":").append(snapshot.getTotal(parkingType)).append('}');
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    private HttpHandler handler(String method, Endpoint endpoint) {
+        return exchange -> {
+            Response response;
+            try {
+                if (refusing.get()) {
+                    logger.warn("Gate server busy, refused " + exchange.getRequestURI());
+                    response = new Response(503, error("Gate server busy"));
+                } else if (!method.equals(exchange.getRequestMethod())) {
+                    response = new Response(405, error("Method not allowed"));
+                } else {
+                    Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                    ParkingLot lot = lots.get(params.get("lot"));
+                    if (lot == null) {
+                        response = new Response(404, error("Unknown parking lot"));
+                    } else {
+                        response = endpoint.handle(lot, params);
+                    }
+                }
+            } catch (RejectedExecutionException | TimeoutException e) {
+                logger.warn("Parking lot busy, refused " + exchange.getRequestURI());
+                response = new Response(503, error("Parking lot busy"));
+            } catch (Exception e) {
+                logger.error("Error handling " + exchange.getRequestURI(), e);
+                response = new Response(500, error("Internal error"));
+            }
+            send(exchange, response);
+        };
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static long millis(Date date) {
+        return date == null ? 0 : date.getTime();
+    }
+
+    private static String error(String message) {
+        return "{\"success\":false,\"message\":" + quote(message) + "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private interface Endpoint {
+        Response handle(ParkingLot lot, Map<String, String> params) throws Exception;
+    }
+
+    private static class Response {
+        private final int status;
+        private final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.Storage;
 import com.parkit.parkingsystem.util.InputReaderUtil;
+import com.parkit.parkingsystem.util.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
@@ -16,25 +18,33 @@ public class InteractiveShell {
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
-        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
-        TicketDAO ticketDAO = new TicketDAO();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        Storage storage;
+        try {
+            storage = Storage.open();
+        } catch (IOException e) {
+            logger.error("Unable to open the parking storage", e);
+            return;
+        }
+        Metrics.startReporting();
+        ConsoleGate consoleGate = new ConsoleGate(inputReaderUtil, new ParkingService(storage.getParkingSpotStore(),
+                storage.getTicketStore(), storage.getUnitOfWork()));
 
         while(continueApp){
             loadMenu();
             int option = inputReaderUtil.readSelection();
             switch(option){
                 case 1: {
-                    parkingService.processIncomingVehicle();
+                    consoleGate.processIncomingVehicle();
                     break;
                 }
                 case 2: {
-                    parkingService.processExitingVehicle();
+                    consoleGate.processExitingVehicle();
                     break;
                 }
                 case 3: {
                     System.out.println("Exiting from the system!");
                     continueApp = false;
+                    storage.close();
                     break;
                 }
                 default: System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingOccupancy;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Occupancy figures for signage and the operator dashboard, served from the in-memory counters of the
+ * parking spot store. The counters are reconciled with the stored spots on a fixed period to pick up spots
+ * changed by other processes or by hand.
+ */
+public class OccupancyService {
+
+    private static final Logger logger = LogManager.getLogger("OccupancyService");
+
+    public static final long DEFAULT_RECONCILE_PERIOD_MILLIS = 60 * 1000;
+
+    private final ParkingSpotStore parkingSpotDAO;
+    private final long reconcilePeriodMillis;
+    private ScheduledExecutorService scheduler;
+
+    public OccupancyService(ParkingSpotStore parkingSpotDAO) {
+        this(parkingSpotDAO, DEFAULT_RECONCILE_PERIOD_MILLIS);
+    }
+
+    public OccupancyService(ParkingSpotStore parkingSpotDAO, long reconcilePeriodMillis) {
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.reconcilePeriodMillis = reconcilePeriodMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        parkingSpotDAO.getOccupancy();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "occupancy-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcile, reconcilePeriodMillis, reconcilePeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public int reconcile() {
+        int drift = parkingSpotDAO.reconcileOccupancy();
+        if (drift > 0) {
+            logger.warn("Occupancy counters were off by " + drift + " spots, corrected from the parking table");
+        }
+        return drift;
+    }
+
+    public ParkingOccupancy.Snapshot snapshot() {
+        return parkingSpotDAO.getOccupancy().snapshot();
+    }
+
+    public int getFree(ParkingType parkingType) {
+        return parkingSpotDAO.getOccupancy().getFree(parkingType);
+    }
+
+    public int getOccupied(ParkingType parkingType) {
+        return parkingSpotDAO.getOccupancy().getOccupied(parkingType);
+    }
+
+    public int getTotal(ParkingType parkingType) {
+        return parkingSpotDAO.getOccupancy().getTotal(parkingType);
+    }
+}
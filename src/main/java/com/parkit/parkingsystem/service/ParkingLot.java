@@ -0,0 +1,162 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.util.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * One parking lot served by the process, a shard with its own storage, ParkingService and occupancy.
+ * Its operations run on a bounded worker pool of its own: when its database is slow the lot fills up its
+ * own queue and refuses work with a RejectedExecutionException, instead of holding up the other lots.
+ * An operation still queued can be cancelled and is then never run; once started it runs to completion.
+ */
+public class ParkingLot {
+
+    private static final Logger logger = LogManager.getLogger("ParkingLot");
+
+    public static final int DEFAULT_WORKERS = 8;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final String id;
+    private final ParkingService parkingService;
+    private final OccupancyService occupancyService;
+    private final ThreadPoolExecutor workers;
+    private final LongAdder rejectedCounter;
+    private Storage storage;
+    private TicketArchivalService archivalService;
+
+    public ParkingLot(String id, ParkingService parkingService, OccupancyService occupancyService) {
+        this(id, parkingService, occupancyService, DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ParkingLot(String id, ParkingService parkingService, OccupancyService occupancyService, int workerCount, int queueCapacity) {
+        this.id = id;
+        this.parkingService = parkingService;
+        this.occupancyService = occupancyService;
+        this.rejectedCounter = Metrics.counter("lot." + id + ".rejected");
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "lot-" + id + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Serves the lot from the storage, which is closed when the lot is stopped, and starts its occupancy
+     * reconciliation and ticket archival.
+     */
+    public static ParkingLot open(String id, Storage storage) {
+        OccupancyService occupancyService = new OccupancyService(storage.getParkingSpotStore());
+        ParkingLot lot = new ParkingLot(id, new ParkingService(storage.getParkingSpotStore(),
+                storage.getTicketStore(), storage.getUnitOfWork()), occupancyService);
+        lot.storage = storage;
+        lot.archivalService = new TicketArchivalService(storage.getTicketStore());
+        occupancyService.start();
+        lot.archivalService.start();
+        return lot;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ParkingService getParkingService() {
+        return parkingService;
+    }
+
+    public OccupancyService getOccupancyService() {
+        return occupancyService;
+    }
+
+    public CompletableFuture<EntryResult> enter(String vehicleRegNumber, ParkingType parkingType) {
+        return submit(() -> parkingService.enter(vehicleRegNumber, parkingType));
+    }
+
+    public CompletableFuture<ExitResult> exit(String vehicleRegNumber) {
+        return submit(() -> parkingService.exit(vehicleRegNumber));
+    }
+
+    public CompletableFuture<ExitResult> quote(String vehicleRegNumber) {
+        return submit(() -> parkingService.quote(vehicleRegNumber));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        try {
+            Operation<T> queued = new Operation<>(operation);
+            workers.execute(queued);
+            return queued;
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Stops taking operations, waits up to drainSeconds for those in progress, then stops the services and
+     * closes the storage the lot was opened with.
+     */
+    public void stop(int drainSeconds) {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(drainSeconds, TimeUnit.SECONDS)) {
+                logger.warn(workers.getActiveCount() + " operations of parking lot " + id + " still running after drain");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (storage != null) {
+            occupancyService.stop();
+            archivalService.stop();
+            storage.close();
+        }
+    }
+
+    /**
+     * Result of an operation queued on the workers. cancel only succeeds before the operation starts, so a
+     * caller giving up on it knows whether the entry or exit was made.
+     */
+    private static final class Operation<T> extends CompletableFuture<T> implements Runnable {
+
+        private final Supplier<T> operation;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        Operation(Supplier<T> operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                complete(operation.get());
+            } catch (Throwable e) {
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return started.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The parking lots served by the process, by id, with ParkingService operations dispatched to the lot
+ * they are for. The lots are listed by -Dparkit.lots=north,south and each one opens its own storage (see
+ * Storage); without the property the process serves a single lot, DEFAULT_LOT, on the single site storage.
+ */
+public class ParkingLots {
+
+    public static final String LOTS_PROPERTY = "parkit.lots";
+    public static final String DEFAULT_LOT = "default";
+
+    private final Map<String, ParkingLot> lots = new LinkedHashMap<>();
+
+    public ParkingLots(Collection<ParkingLot> lots) {
+        for (ParkingLot lot : lots) {
+            if (this.lots.put(lot.getId(), lot) != null) {
+                throw new IllegalArgumentException("Duplicate parking lot " + lot.getId());
+            }
+        }
+    }
+
+    public static ParkingLots open() throws IOException {
+        String lotIds = System.getProperty(LOTS_PROPERTY);
+        if (lotIds == null || lotIds.trim().isEmpty()) {
+            return new ParkingLots(Collections.singletonList(ParkingLot.open(DEFAULT_LOT, Storage.open())));
+        }
+        List<ParkingLot> opened = new ArrayList<>();
+        try {
+            for (String lotId : lotIds.split(",")) {
+                opened.add(ParkingLot.open(lotId.trim(), Storage.open(lotId.trim())));
+            }
+            return new ParkingLots(opened);
+        } catch (IOException | RuntimeException e) {
+            for (ParkingLot lot : opened) {
+                lot.stop(0);
+            }
+            throw e;
+        }
+    }
+
+    public Set<String> getLotIds() {
+        return Collections.unmodifiableSet(lots.keySet());
+    }
+
+    /**
+     * @param lotId the id of the lot, or null for the only lot when there is just one
+     * @return the lot, or null if there is no such lot
+     */
+    public ParkingLot get(String lotId) {
+        if (lotId == null) {
+            return lots.size() == 1 ? lots.values().iterator().next() : null;
+        }
+        return lots.get(lotId);
+    }
+
+    private ParkingLot lot(String lotId) {
+        ParkingLot lot = get(lotId);
+        if (lot == null) {
+            throw new IllegalArgumentException("Unknown parking lot " + lotId);
+        }
+        return lot;
+    }
+
+    public CompletableFuture<EntryResult> enter(String lotId, String vehicleRegNumber, ParkingType parkingType) {
+        return lot(lotId).enter(vehicleRegNumber, parkingType);
+    }
+
+    public CompletableFuture<ExitResult> exit(String lotId, String vehicleRegNumber) {
+        return lot(lotId).exit(vehicleRegNumber);
+    }
+
+    public CompletableFuture<ExitResult> quote(String lotId, String vehicleRegNumber) {
+        return lot(lotId).quote(vehicleRegNumber);
+    }
+
+    /**
+     * Stops every lot, each one draining its operations for up to drainSeconds.
+     */
+    public void stop(int drainSeconds) {
+        for (ParkingLot lot : lots.values()) {
+            lot.stop(drainSeconds);
+        }
+    }
+}
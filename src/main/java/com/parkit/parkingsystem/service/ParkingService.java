@@ -1,120 +1,172 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.ParkingUnitOfWork;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
-import com.parkit.parkingsystem.util.InputReaderUtil;
+import com.parkit.parkingsystem.util.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Entry and exit of vehicles. enter and exit are safe to call concurrently from many gates; ConsoleGate
+ * and GateServer drive them from the console and over HTTP.
+ * With a ParkingUnitOfWork, each entry and exit is one transaction of it rather than separate store calls.
+ */
 public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
     private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
-    private InputReaderUtil inputReaderUtil;
-    private ParkingSpotDAO parkingSpotDAO;
-    private  TicketDAO ticketDAO;
+    private static final Metrics.Timer enterTimer = Metrics.timer("parking.enter");
+    private static final Metrics.Timer exitTimer = Metrics.timer("parking.exit");
+    private static final Metrics.Timer fareTimer = Metrics.timer("parking.fare");
+    private static final LongAdder enterFailures = Metrics.counter("parking.enter.failures");
+    private static final LongAdder exitFailures = Metrics.counter("parking.exit.failures");
 
-    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
-        this.inputReaderUtil = inputReaderUtil;
+    private ParkingSpotStore parkingSpotDAO;
+    private  TicketStore ticketDAO;
+    private ParkingUnitOfWork unitOfWork;
+
+    public ParkingService(ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO){
+        this(parkingSpotDAO, ticketDAO, null);
+    }
+
+    /**
+     * @param unitOfWork the transactions over both stores, or null to call the stores one by one
+     */
+    public ParkingService(ParkingSpotStore parkingSpotDAO, TicketStore ticketDAO, ParkingUnitOfWork unitOfWork){
         this.parkingSpotDAO = parkingSpotDAO;
         this.ticketDAO = ticketDAO;
+        this.unitOfWork = unitOfWork;
     }
 
-    public void processIncomingVehicle() {
-        try{
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if(parkingSpot !=null && parkingSpot.getId() > 0){
-                String vehicleRegNumber = getVehichleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:"+parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+inTime);
-            }
-        }catch(Exception e){
-            logger.error("Unable to process incoming vehicle",e);
+    public EntryResult enter(String vehicleRegNumber, ParkingType parkingType) {
+        long start = enterTimer.start();
+        EntryResult result = doEnter(vehicleRegNumber, parkingType);
+        enterTimer.stop(start);
+        if(!result.isSuccess()){
+            enterFailures.increment();
         }
+        return result;
     }
 
-    private String getVehichleRegNumber() throws Exception {
-        System.out.println("Please type the vehicle registration number and press enter key");
-        return inputReaderUtil.readVehicleRegistrationNumber();
-    }
-
-    public ParkingSpot getNextParkingNumberIfAvailable(){
-        int parkingNumber=0;
-        ParkingSpot parkingSpot = null;
+    private EntryResult doEnter(String vehicleRegNumber, ParkingType parkingType) {
+        if(vehicleRegNumber == null || vehicleRegNumber.trim().length() == 0){
+            return EntryResult.failure(vehicleRegNumber, "Invalid vehicle registration number");
+        }
+        if(parkingType == null){
+            return EntryResult.failure(vehicleRegNumber, "Invalid vehicle type");
+        }
         try{
-            ParkingType parkingType = getVehichleType();
-            parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
-            if(parkingNumber > 0){
-                parkingSpot = new ParkingSpot(parkingNumber,parkingType, true);
-            }else{
-                throw new Exception("Error fetching parking number from DB. Parking slots might be full");
+            Date inTime = new Date();
+            Ticket ticket = new Ticket();
+            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+            if(unitOfWork != null){
+                if(!unitOfWork.enter(ticket, parkingType)){
+                    return EntryResult.failure(vehicleRegNumber, "Unable to reserve a parking spot. Parking slots might be full");
+                }
+                return new EntryResult(true, vehicleRegNumber, ticket.getParkingSpot(), inTime, "Generated Ticket and saved in DB");
+            }
+            ParkingSpot parkingSpot = parkingSpotDAO.reserveParkingSpot(parkingType);//allot a parking space atomically and mark it's availability as false
+            if(parkingSpot == null){
+                return EntryResult.failure(vehicleRegNumber, "Unable to reserve a parking spot. Parking slots might be full");
             }
-        }catch(IllegalArgumentException ie){
-            logger.error("Error parsing user input for type of vehicle", ie);
+            ticket.setParkingSpot(parkingSpot);
+            if(!ticketDAO.saveTicket(ticket)){
+                parkingSpot.setAvailable(true);
+                parkingSpotDAO.updateParking(parkingSpot);
+                return EntryResult.failure(vehicleRegNumber, "Unable to save the ticket, the parking spot was released");
+            }
+            return new EntryResult(true, vehicleRegNumber, parkingSpot, inTime, "Generated Ticket and saved in DB");
         }catch(Exception e){
-            logger.error("Error fetching next available parking slot", e);
+            logger.error("Unable to process incoming vehicle",e);
+            return EntryResult.failure(vehicleRegNumber, "Unable to process incoming vehicle");
         }
-        return parkingSpot;
     }
 
-    private ParkingType getVehichleType(){
-        System.out.println("Please select vehicle type from menu");
-        System.out.println("1 CAR");
-        System.out.println("2 BIKE");
-        int input = inputReaderUtil.readSelection();
-        switch(input){
-            case 1: {
-                return ParkingType.CAR;
-            }
-            case 2: {
-                return ParkingType.BIKE;
-            }
-            default: {
-                System.out.println("Incorrect input provided");
-                throw new IllegalArgumentException("Entered input is invalid");
-            }
+    public ExitResult exit(String vehicleRegNumber) {
+        long start = exitTimer.start();
+        ExitResult result = doExit(vehicleRegNumber);
+        exitTimer.stop(start);
+        if(!result.isSuccess()){
+            exitFailures.increment();
         }
+        return result;
     }
 
-    public void processExitingVehicle() {
+    private ExitResult doExit(String vehicleRegNumber) {
         try{
-            String vehicleRegNumber = getVehichleRegNumber();
+            if(unitOfWork != null){
+                Ticket ticket = unitOfWork.exit(vehicleRegNumber, System.currentTimeMillis(), this::price);
+                if(ticket == null){
+                    return ExitResult.failure(vehicleRegNumber, "No parking ticket found for vehicle number:" + vehicleRegNumber);
+                }
+                return new ExitResult(true, ticket, "Please pay the parking fare:" + ticket.getPrice());
+            }
             Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
+            if(ticket == null || ticket.getOutTime() != null){
+                return ExitResult.failure(vehicleRegNumber, "No parking ticket found for vehicle number:" + vehicleRegNumber);
+            }
             Date outTime = new Date();
             ticket.setOutTime(outTime);
-            fareCalculatorService.calculateFare(ticket);
+            price(ticket);
             if(ticketDAO.updateTicket(ticket)) {
                 ParkingSpot parkingSpot = ticket.getParkingSpot();
                 parkingSpot.setAvailable(true);
                 parkingSpotDAO.updateParking(parkingSpot);
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            }else{
-                System.out.println("Unable to update ticket information. Error occurred");
+                return new ExitResult(true, ticket, "Please pay the parking fare:" + ticket.getPrice());
             }
+            return new ExitResult(false, ticket, "Unable to update ticket information. Error occurred");
         }catch(Exception e){
             logger.error("Unable to process exiting vehicle",e);
+            return ExitResult.failure(vehicleRegNumber, "Unable to process exiting vehicle");
+        }
+    }
+
+    /**
+     * Prices the stay of a parked vehicle as if it left now, without closing its ticket.
+     */
+    public ExitResult quote(String vehicleRegNumber) {
+        try{
+            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
+            if(ticket == null || ticket.getOutTime() != null){
+                return ExitResult.failure(vehicleRegNumber, "No parking ticket found for vehicle number:" + vehicleRegNumber);
+            }
+            Ticket quote = new Ticket();
+            quote.setId(ticket.getId());
+            quote.setParkingSpot(ticket.getParkingSpot());
+            quote.setVehicleRegNumber(ticket.getVehicleRegNumber());
+            quote.setInTime(ticket.getInTime());
+            quote.setOutTime(new Date());
+            fareCalculatorService.calculateFare(quote, isRecurringUser(vehicleRegNumber));
+            return new ExitResult(true, quote, "Current parking fare:" + quote.getPrice());
+        }catch(Exception e){
+            logger.error("Unable to quote parking fare",e);
+            return ExitResult.failure(vehicleRegNumber, "Unable to quote parking fare");
         }
     }
+
+    private void price(Ticket ticket) {
+        long fareStart = fareTimer.start();
+        fareCalculatorService.calculateFare(ticket, isRecurringUser(ticket.getVehicleRegNumber()));
+        fareTimer.stop(fareStart);
+    }
+
+    private boolean isRecurringUser(String vehicleRegNumber) {
+        return ticketDAO.getVisitCount(vehicleRegNumber) >= Fare.RECURRING_USER_MIN_VISITS;
+    }
 }
@@ -0,0 +1,302 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Declarative tariff, compiled by FareEngine into a lookup table. Every parking type has an hourly rate for
+ * the whole week, overridden by time windows on given days of the week, later windows over earlier ones,
+ * and an optional cap per calendar day. Windows are on whole minutes, in the wall clock of the plan zone at
+ * the entry time, UTC unless the plan sets one, whether it is built or loaded. Stays up to the grace period are free and the others are billed by started billing unit,
+ * or pro rata to the millisecond without one.
+ * The default plan is the flat Fare rates, without grace period, billing unit or cap.
+ *
+ * A plan is loaded from a properties file given by -Dparkit.tariff, for example:
+ * <pre>
+ * zone=Europe/Paris
+ * gracePeriodMinutes=30
+ * billingUnitMinutes=1
+ * CAR.ratePerHour=1.5
+ * CAR.dailyCap=20
+ * CAR.window.1=SAT-SUN 00:00-00:00 1.0
+ * CAR.window.2=MON-FRI 19:00-07:00 0.5
+ * </pre>
+ * A window ending at or before its start ends the next day, so 00:00-00:00 is the whole day.
+ */
+public class RatePlan {
+
+    private static final Logger logger = LogManager.getLogger("RatePlan");
+
+    public static final String TARIFF_PROPERTY = "parkit.tariff";
+    public static final long NO_CAP = Long.MAX_VALUE;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    private ZoneId zone = ZoneOffset.UTC;
+    private long gracePeriodMillis;
+    private long billingUnitMillis;
+    private final long[] millicentsPerHour = new long[ParkingType.values().length];
+    private final long[] dailyCapMillicents = new long[ParkingType.values().length];
+    private final List<List<Window>> windows = new ArrayList<>();
+
+    public RatePlan() {
+        for (ParkingType parkingType : ParkingType.values()) {
+            dailyCapMillicents[parkingType.ordinal()] = NO_CAP;
+            windows.add(new ArrayList<>());
+        }
+        setRatePerHour(ParkingType.CAR, Fare.CAR_RATE_PER_HOUR);
+        setRatePerHour(ParkingType.BIKE, Fare.BIKE_RATE_PER_HOUR);
+    }
+
+    /**
+     * @return the plan of the file given by -Dparkit.tariff, or the default plan without one or if the file
+     * cannot be read
+     */
+    public static RatePlan configured() {
+        String file = System.getProperty(TARIFF_PROPERTY);
+        if (file == null) {
+            return new RatePlan();
+        }
+        try {
+            return load(Paths.get(file));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to load the tariff " + file + ", using the flat rates", e);
+            return new RatePlan();
+        }
+    }
+
+    public static RatePlan load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return parse(properties);
+    }
+
+    public static RatePlan parse(Properties properties) {
+        RatePlan plan = new RatePlan();
+        String zone = properties.getProperty("zone");
+        if (zone != null) {
+            plan.setZone(ZoneId.of(zone.trim()));
+        }
+        plan.setGracePeriodMinutes(Integer.parseInt(properties.getProperty("gracePeriodMinutes", "0").trim()));
+        plan.setBillingUnitMinutes(Integer.parseInt(properties.getProperty("billingUnitMinutes", "0").trim()));
+        for (ParkingType parkingType : ParkingType.values()) {
+            String prefix = parkingType.name() + ".";
+            String rate = properties.getProperty(prefix + "ratePerHour");
+            if (rate != null) {
+                plan.setRatePerHour(parkingType, Double.parseDouble(rate.trim()));
+            }
+            String cap = properties.getProperty(prefix + "dailyCap");
+            if (cap != null) {
+                plan.setDailyCap(parkingType, Double.parseDouble(cap.trim()));
+            }
+            TreeMap<Integer, String> windowsByRank = new TreeMap<>();
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(prefix + "window.")) {
+                    windowsByRank.put(Integer.parseInt(name.substring(prefix.length() + "window.".length())),
+                            properties.getProperty(name));
+                }
+            }
+            for (String window : windowsByRank.values()) {
+                plan.addWindow(parkingType, window);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @param window days, times and hourly rate, as in "MON-FRI,SUN 19:00-07:00 0.5"
+     */
+    private void addWindow(ParkingType parkingType, String window) {
+        String[] fields = window.trim().split("\\s+");
+        String[] times = fields.length == 3 ? fields[1].split("-") : new String[0];
+        if (times.length != 2) {
+            throw new IllegalArgumentException("Window must be days, from-to times and a rate: " + window);
+        }
+        addWindow(parkingType, parseDays(fields[0]), LocalTime.parse(times[0]), LocalTime.parse(times[1]),
+                Double.parseDouble(fields[2]));
+    }
+
+    private static Set<DayOfWeek> parseDays(String days) {
+        Set<DayOfWeek> parsed = EnumSet.noneOf(DayOfWeek.class);
+        for (String range : days.split(",")) {
+            String[] bounds = range.split("-");
+            DayOfWeek first = parseDay(bounds[0]);
+            DayOfWeek last = parseDay(bounds[bounds.length - 1]);
+            for (DayOfWeek day = first; ; day = day.plus(1)) {
+                parsed.add(day);
+                if (day == last) {
+                    break;
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static DayOfWeek parseDay(String day) {
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            if (dayOfWeek.name().startsWith(day.trim().toUpperCase()) && day.trim().length() >= 3) {
+                return dayOfWeek;
+            }
+        }
+        throw new IllegalArgumentException("Unknown day " + day);
+    }
+
+    public RatePlan setZone(ZoneId zone) {
+        this.zone = zone;
+        return this;
+    }
+
+    public RatePlan setGracePeriodMinutes(int minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException("Grace period must not be negative: " + minutes);
+        }
+        gracePeriodMillis = minutes * MILLIS_PER_MINUTE;
+        return this;
+    }
+
+    /**
+     * @param minutes the length of the billing unit, 0 to bill pro rata to the millisecond
+     */
+    public RatePlan setBillingUnitMinutes(int minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException("Billing unit must not be negative: " + minutes);
+        }
+        billingUnitMillis = minutes * MILLIS_PER_MINUTE;
+        return this;
+    }
+
+    public RatePlan setRatePerHour(ParkingType parkingType, double ratePerHour) {
+        millicentsPerHour[parkingType.ordinal()] = toMillicents(ratePerHour);
+        return this;
+    }
+
+    public RatePlan setDailyCap(ParkingType parkingType, double cap) {
+        dailyCapMillicents[parkingType.ordinal()] = toMillicents(cap);
+        return this;
+    }
+
+    public RatePlan addWindow(ParkingType parkingType, Set<DayOfWeek> days, LocalTime from, LocalTime to,
+                              double ratePerHour) {
+        if (days.isEmpty() || from.getSecond() != 0 || from.getNano() != 0 || to.getSecond() != 0 || to.getNano() != 0) {
+            throw new IllegalArgumentException("Windows must have days and start and end on whole minutes");
+        }
+        windows.get(parkingType.ordinal()).add(new Window(EnumSet.copyOf(days), from.getHour() * 60 + from.getMinute(),
+                to.getHour() * 60 + to.getMinute(), toMillicents(ratePerHour)));
+        return this;
+    }
+
+    private static long toMillicents(double amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amounts must not be negative: " + amount);
+        }
+        return Math.round(amount * FareEngine.MILLICENTS_PER_UNIT);
+    }
+
+    /**
+     * @return a copy of this plan with every rate and cap reduced by the discount
+     */
+    public RatePlan discounted(double discount) {
+        RatePlan discounted = new RatePlan();
+        discounted.zone = zone;
+        discounted.gracePeriodMillis = gracePeriodMillis;
+        discounted.billingUnitMillis = billingUnitMillis;
+        for (int type = 0; type < millicentsPerHour.length; type++) {
+            discounted.millicentsPerHour[type] = Math.round(millicentsPerHour[type] * (1 - discount));
+            discounted.dailyCapMillicents[type] = dailyCapMillicents[type] == NO_CAP ? NO_CAP
+                    : Math.round(dailyCapMillicents[type] * (1 - discount));
+            for (Window window : windows.get(type)) {
+                discounted.windows.get(type).add(new Window(window.days, window.fromMinute, window.toMinute,
+                        Math.round(window.millicentsPerHour * (1 - discount))));
+            }
+        }
+        return discounted;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    public long getGracePeriodMillis() {
+        return gracePeriodMillis;
+    }
+
+    public long getBillingUnitMillis() {
+        return billingUnitMillis;
+    }
+
+    public long getMillicentsPerHour(ParkingType parkingType) {
+        return millicentsPerHour[parkingType.ordinal()];
+    }
+
+    /**
+     * @return the cap per calendar day, NO_CAP without one
+     */
+    public long getDailyCapMillicents(ParkingType parkingType) {
+        return dailyCapMillicents[parkingType.ordinal()];
+    }
+
+    public List<Window> getWindows(ParkingType parkingType) {
+        return Collections.unmodifiableList(windows.get(parkingType.ordinal()));
+    }
+
+    /**
+     * Hourly rate from fromMinute of each of the days, minutes since midnight, to toMinute of the same day,
+     * or of the next day if toMinute is not after fromMinute.
+     */
+    public static final class Window {
+
+        private final Set<DayOfWeek> days;
+        private final int fromMinute;
+        private final int toMinute;
+        private final long millicentsPerHour;
+
+        private Window(Set<DayOfWeek> days, int fromMinute, int toMinute, long millicentsPerHour) {
+            this.days = days;
+            this.fromMinute = fromMinute;
+            this.toMinute = toMinute;
+            this.millicentsPerHour = millicentsPerHour;
+        }
+
+        public Set<DayOfWeek> getDays() {
+            return Collections.unmodifiableSet(days);
+        }
+
+        public int getFromMinute() {
+            return fromMinute;
+        }
+
+        /**
+         * @return the end of the window in minutes since midnight of its start day, after fromMinute
+         */
+        public int getToMinute() {
+            return toMinute > fromMinute ? toMinute : toMinute + MINUTES_PER_DAY;
+        }
+
+        public long getMillicentsPerHour() {
+            return millicentsPerHour;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the ticket table down to open and recently closed tickets, which is all the gates look up, by
+ * moving older closed tickets to ticket_archive. Tickets are moved in small keyset chunks, each in its own
+ * transaction, so the job never holds locks on the ticket table for long.
+ */
+public class TicketArchivalService {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchivalService");
+
+    public static final String ARCHIVE_AFTER_DAYS_PROPERTY = "parkit.archive.afterDays";
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final long DEFAULT_PERIOD_MILLIS = 60 * 60 * 1000;
+
+    private final TicketStore ticketDAO;
+    private final long maxAgeMillis;
+    private final int chunkSize;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Archives tickets closed more than parkit.archive.afterDays days ago; archival is disabled when the
+     * property is not set.
+     */
+    public TicketArchivalService(TicketStore ticketDAO) {
+        this(ticketDAO, TimeUnit.DAYS.toMillis(Integer.getInteger(ARCHIVE_AFTER_DAYS_PROPERTY, 0)), DEFAULT_CHUNK_SIZE);
+    }
+
+    public TicketArchivalService(TicketStore ticketDAO, long maxAgeMillis, int chunkSize) {
+        this.ticketDAO = ticketDAO;
+        this.maxAgeMillis = maxAgeMillis;
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean isEnabled() {
+        return maxAgeMillis > 0;
+    }
+
+    /**
+     * @return the number of tickets moved to the archive, or -1 if a chunk failed; the chunks moved before
+     * it stay archived
+     */
+    public long archiveClosedTickets() {
+        long cutoffMillis = System.currentTimeMillis() - maxAgeMillis;
+        long[] position = {0, 0};
+        long total = 0;
+        int moved;
+        do {
+            moved = ticketDAO.archiveClosedTickets(cutoffMillis, position, chunkSize);
+            if (moved < 0) {
+                logger.error("Ticket archival stopped after " + total + " tickets");
+                return -1;
+            }
+            total += moved;
+        } while (moved == chunkSize);
+        if (total > 0) {
+            logger.info("Archived " + total + " tickets closed before " + new Date(cutoffMillis));
+        }
+        return total;
+    }
+
+    public synchronized void start() {
+        start(DEFAULT_PERIOD_MILLIS);
+    }
+
+    public synchronized void start(long periodMillis) {
+        if (!isEnabled() || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::archiveClosedTickets, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
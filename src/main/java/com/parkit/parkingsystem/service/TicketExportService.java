@@ -0,0 +1,174 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Exports closed tickets to a compact binary file. Rows are streamed from the database and encoded into a
+ * direct buffer that is written to the file channel whenever it fills up. Each run only appends the
+ * tickets closed since the previous run, tracked by an (out time, id) watermark kept next to the file.
+ *
+ * A run only exports the tickets closed more than a safety lag ago and moves the watermark up to that
+ * bound, so a ticket whose close commits after a later one, such as a write-behind close still being
+ * flushed, is exported by a later run rather than skipped. The lag must be longer than the write-behind
+ * flush interval and than any gate transaction. A ticket is exported once, with the price it had then:
+ * prices changed later by BatchBillingService are not exported again.
+ *
+ * File layout: a header (magic, version) followed by one record per ticket: int id, int parking number,
+ * byte parking type ordinal, long in time millis, long out time millis, double price, then the
+ * registration number as an unsigned byte length and its UTF-8 bytes.
+ */
+public class TicketExportService {
+
+    private static final Logger logger = LogManager.getLogger("TicketExportService");
+
+    public static final int MAGIC = 0x504b5458;
+    public static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 6;
+    private static final int MAX_RECORD_SIZE = 4 + 4 + 1 + 8 + 8 + 8 + 1 + 255;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FETCH_SIZE = 1000;
+
+    public static final long DEFAULT_SAFETY_LAG_MILLIS = 60 * 1000;
+
+    private final TicketStore ticketDAO;
+    private final long safetyLagMillis;
+
+    public TicketExportService(TicketStore ticketDAO) {
+        this(ticketDAO, DEFAULT_SAFETY_LAG_MILLIS);
+    }
+
+    public TicketExportService(TicketStore ticketDAO, long safetyLagMillis) {
+        this.ticketDAO = ticketDAO;
+        this.safetyLagMillis = safetyLagMillis;
+    }
+
+    /**
+     * @return the number of tickets exported by this run, or -1 if the export failed and was rolled back
+     */
+    public long exportClosedTickets(Path file) throws IOException {
+        Path watermarkFile = getWatermarkFile(file);
+        long[] watermark = readWatermark(watermarkFile);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long startSize = channel.size();
+            channel.position(startSize);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            if (startSize == 0) {
+                buffer.putInt(MAGIC).putShort(VERSION);
+            }
+            long start = System.currentTimeMillis();
+            long closedBefore = start - safetyLagMillis;
+            long exported = ticketDAO.forEachClosedTicketAfter(watermark[0], (int) watermark[1], closedBefore, FETCH_SIZE,
+                    (id, parkingNumber, vehicleRegNumber, price, inTimeMillis, outTimeMillis, parkingTypeOrdinal) -> {
+                        if (buffer.remaining() < MAX_RECORD_SIZE) {
+                            drain(buffer, channel);
+                        }
+                        byte[] regNumber = vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+                        buffer.putInt(id).putInt(parkingNumber).put((byte) parkingTypeOrdinal)
+                                .putLong(inTimeMillis).putLong(outTimeMillis).putDouble(price)
+                                .put((byte) Math.min(regNumber.length, 255)).put(regNumber, 0, Math.min(regNumber.length, 255));
+                    });
+            if (exported < 0) {
+                channel.truncate(startSize);
+                logger.error("Ticket export to " + file + " failed, file restored to its previous state");
+                return -1;
+            }
+            drain(buffer, channel);
+            channel.force(true);
+            if (closedBefore > watermark[0]) {
+                //every ticket closed before the bound is exported, the next run starts at the bound
+                writeWatermark(watermarkFile, new long[]{closedBefore, 0});
+            }
+            logger.info("Exported " + exported + " tickets to " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+            return exported;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static Path getWatermarkFile(Path file) {
+        return Paths.get(file.toString() + ".watermark");
+    }
+
+    private static long[] readWatermark(Path watermarkFile) throws IOException {
+        if (!Files.exists(watermarkFile)) {
+            return new long[]{0, 0};
+        }
+        List<String> lines = Files.readAllLines(watermarkFile, StandardCharsets.UTF_8);
+        String[] values = lines.get(0).trim().split(" ");
+        return new long[]{Long.parseLong(values[0]), Long.parseLong(values[1])};
+    }
+
+    private static void writeWatermark(Path watermarkFile, long[] watermark) throws IOException {
+        Path tmp = Paths.get(watermarkFile.toString() + ".tmp");
+        Files.write(tmp, (watermark[0] + " " + watermark[1] + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, watermarkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads back a file written by exportClosedTickets.
+     * @return the number of tickets read
+     */
+    public static long readExport(Path file, TicketStore.TicketRowHandler handler) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            long count = 0;
+            boolean header = true;
+            while (true) {
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (header) {
+                    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                        throw new IOException("Not a ticket export file: " + file);
+                    }
+                    header = false;
+                }
+                while (hasRecord(buffer)) {
+                    int id = buffer.getInt();
+                    int parkingNumber = buffer.getInt();
+                    int parkingType = buffer.get();
+                    long inTime = buffer.getLong();
+                    long outTime = buffer.getLong();
+                    double price = buffer.getDouble();
+                    byte[] regNumber = new byte[buffer.get() & 0xff];
+                    buffer.get(regNumber);
+                    handler.accept(id, parkingNumber, new String(regNumber, StandardCharsets.UTF_8), price, inTime,
+                            outTime, parkingType);
+                    count++;
+                }
+                if (read < 0) {
+                    if (buffer.hasRemaining()) {
+                        throw new IOException("Truncated ticket export file: " + file);
+                    }
+                    break;
+                }
+                buffer.compact();
+            }
+            return count;
+        }
+    }
+
+    private static boolean hasRecord(ByteBuffer buffer) {
+        int fixed = 4 + 4 + 1 + 8 + 8 + 8 + 1;
+        return buffer.remaining() >= fixed && buffer.remaining() >= fixed + (buffer.get(buffer.position() + fixed - 1) & 0xff);
+    }
+}
@@ -0,0 +1,226 @@
+package com.parkit.parkingsystem.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timers and counters for the gate hot path. Classes look their metrics up once into static
+ * fields; timing a call then costs two System.nanoTime() reads and a histogram record. Everything is
+ * published as the JMX bean com.parkit.parkingsystem:type=Metrics and can be dumped to the log periodically.
+ */
+public final class Metrics {
+
+    private static final Logger logger = LogManager.getLogger("Metrics");
+
+    public static final String REPORT_PERIOD_PROPERTY = "parkit.metrics.period";
+    public static final String OBJECT_NAME = "com.parkit.parkingsystem:type=Metrics";
+
+    private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService reporter;
+
+    private Metrics() {
+    }
+
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public static void reset() {
+        timers.values().forEach(timer -> timer.histogram.reset());
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * One line per timer (count, mean, p50, p99, p99.9 and max in microseconds) and per counter.
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Timer timer : timers.values()) {
+            LatencyHistogram h = timer.histogram;
+            if (h.getCount() > 0) {
+                sb.append(String.format("%s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n",
+                        timer.name, h.getCount(), h.getMean() / 1000, micros(h.getValueAtPercentile(50)),
+                        micros(h.getValueAtPercentile(99)), micros(h.getValueAtPercentile(99.9)), micros(h.getMax())));
+            }
+        }
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            if (counter.getValue().sum() > 0) {
+                sb.append(counter.getKey()).append(" count=").append(counter.getValue().sum()).append(System.lineSeparator());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Registers the JMX bean and, when the parkit.metrics.period property (milliseconds) is set, logs the
+     * report on that period.
+     */
+    public static synchronized void startReporting() {
+        registerMBean();
+        long periodMillis = Long.getLong(REPORT_PERIOD_PROPERTY, 0);
+        if (periodMillis > 0 && reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> logger.info("Metrics" + System.lineSeparator() + report()),
+                    periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (Exception e) {
+            logger.error("Unable to register metrics MBean", e);
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    public static final class Timer {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public long start() {
+            return System.nanoTime();
+        }
+
+        public void stop(long start) {
+            histogram.record(System.nanoTime() - start);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+
+    /**
+     * Exposes &lt;timer&gt;.count, .meanMicros, .p50Micros, .p99Micros, .p999Micros and .maxMicros for every
+     * timer and the value of every counter, as they are registered.
+     */
+    private static class MetricsMBean implements DynamicMBean {
+
+        private static final String[] STATS = {"count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongAdder counter = counters.get(attribute);
+            if (counter != null) {
+                return counter.sum();
+            }
+            int dot = attribute.lastIndexOf('.');
+            Timer timer = dot > 0 ? timers.get(attribute.substring(0, dot)) : null;
+            if (timer == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            LatencyHistogram h = timer.histogram;
+            switch (attribute.substring(dot + 1)) {
+                case "count": return (double) h.getCount();
+                case "meanMicros": return h.getMean() / 1000;
+                case "p50Micros": return micros(h.getValueAtPercentile(50));
+                case "p99Micros": return micros(h.getValueAtPercentile(99));
+                case "p999Micros": return micros(h.getValueAtPercentile(99.9));
+                case "maxMicros": return micros(h.getMax());
+                default: throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    //skipped, as the JMX contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            switch (actionName) {
+                case "report": return report();
+                case "reset": reset(); return null;
+                default: throw new UnsupportedOperationException(actionName);
+            }
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String timer : timers.keySet()) {
+                for (String stat : STATS) {
+                    attributes.add(new MBeanAttributeInfo(timer + "." + stat, "double", stat + " of " + timer, true, false, false));
+                }
+            }
+            for (String counter : counters.keySet()) {
+                attributes.add(new MBeanAttributeInfo(counter, "long", counter, true, false, false));
+            }
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("report", "Text dump of all metrics", null, "java.lang.String", MBeanOperationInfo.INFO),
+                    new MBeanOperationInfo("reset", "Clears all metrics", null, "void", MBeanOperationInfo.ACTION)
+            };
+            return new MBeanInfo(Metrics.class.getName(), "Parking system hot path metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+    }
+}
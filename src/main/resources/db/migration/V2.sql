@@ -0,0 +1,3 @@
+-- covering indexes for GET_TICKET and GET_NEXT_PARKING_SPOT
+create index IDX_TICKET_VEHICLE on ticket(VEHICLE_REG_NUMBER, OUT_TIME, IN_TIME);
+create index IDX_PARKING_AVAILABILITY on parking(TYPE, AVAILABLE, PARKING_NUMBER);
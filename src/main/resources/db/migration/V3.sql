@@ -0,0 +1,12 @@
+-- archive table for closed tickets, filled by TicketArchivalService
+create table if not exists ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL
+);
+
+create index IDX_TICKET_ARCHIVE_VEHICLE on ticket_archive(VEHICLE_REG_NUMBER, OUT_TIME);
+create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME, ID);
@@ -0,0 +1,119 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.BatchBillingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchBillingServiceTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("batchBilling");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    private void saveClosedTicket(ParkingSpot parkingSpot, int hours, double price) {
+        saveClosedTicket(parkingSpot, "ABC" + hours, hours, price);
+    }
+
+    private void saveClosedTicket(ParkingSpot parkingSpot, String vehicleRegNumber, int hours, double price) {
+        saveClosedTicket(ticketDAO, parkingSpot, vehicleRegNumber, System.currentTimeMillis(), hours, price);
+    }
+
+    private void saveClosedTicket(TicketStore ticketStore, ParkingSpot parkingSpot, String vehicleRegNumber,
+                                  long outTime, int hours, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(outTime - (hours * 60 * 60 * 1000L)));
+        ticket.setOutTime(new Date(outTime));
+        ticket.setPrice(price);
+        ticketStore.saveTicket(ticket);
+    }
+
+    @Test
+    public void repriceClosedTicketsInChunks() {
+        ParkingSpot car = new ParkingSpot(1, ParkingType.CAR, false);
+        ParkingSpot bike = new ParkingSpot(4, ParkingType.BIKE, false);
+        for (int hours = 1; hours <= 250; hours++) {
+            //even tickets already have the right price and must not be rewritten
+            double rightPrice = hours * Fare.CAR_RATE_PER_HOUR;
+            saveClosedTicket(car, hours, hours % 2 == 0 ? rightPrice : 0);
+        }
+        saveClosedTicket(bike, "BIKE3", 3, 0);
+        Ticket open = new Ticket();
+        open.setParkingSpot(car);
+        open.setVehicleRegNumber("OPEN");
+        open.setInTime(new Date());
+        ticketDAO.saveTicket(open);
+
+        BatchBillingService.BillingReport report = new BatchBillingService(ticketDAO, 16, 2).repriceClosedTickets();
+
+        assertTrue(report.isComplete());
+        assertEquals(251, report.getTicketsRead());
+        assertEquals(126, report.getTicketsRepriced());
+        ticketDAO.forEachClosedTicket(100, (id, vehicleRegNumber, visitNumber, inTimeMillis, outTimeMillis, parkingTypeOrdinal, price) -> {
+            double rate = parkingTypeOrdinal == ParkingType.CAR.ordinal() ? Fare.CAR_RATE_PER_HOUR : Fare.BIKE_RATE_PER_HOUR;
+            assertEquals((outTimeMillis - inTimeMillis) / (60 * 60 * 1000.0) * rate, price, 0.001);
+        });
+    }
+
+    @Test
+    public void repriceKeepsTheRecurringUserDiscount() {
+        assertOnlyTheSecondVisitIsDiscounted(ticketDAO);
+    }
+
+    @Test
+    public void repriceKeepsTheRecurringUserDiscountInMemory() {
+        assertOnlyTheSecondVisitIsDiscounted(new InMemoryTicketStore());
+    }
+
+    private void assertOnlyTheSecondVisitIsDiscounted(TicketStore ticketStore) {
+        ParkingSpot car = new ParkingSpot(1, ParkingType.CAR, false);
+        long now = System.currentTimeMillis();
+        saveClosedTicket(ticketStore, car, "REGULAR", now - 2 * 24 * 60 * 60 * 1000L, 3, 0);
+        saveClosedTicket(ticketStore, car, "REGULAR", now, 2, 0);
+        saveClosedTicket(ticketStore, car, "ONCE", now, 3, 0);
+
+        BatchBillingService.BillingReport report = new BatchBillingService(ticketStore, 2, 1).repriceClosedTickets();
+
+        assertTrue(report.isComplete());
+        assertEquals(3, report.getTicketsRepriced());
+        List<Integer> discountedVisits = new ArrayList<>();
+        ticketStore.forEachClosedTicket(100, (id, vehicleRegNumber, visitNumber, inTimeMillis, outTimeMillis, parkingTypeOrdinal, price) -> {
+            double hours = (outTimeMillis - inTimeMillis) / (60 * 60 * 1000.0);
+            boolean discounted = Math.abs(price - hours * Fare.CAR_RATE_PER_HOUR) > 0.001;
+            if (discounted) {
+                assertEquals(hours * Fare.CAR_RATE_PER_HOUR * (1 - Fare.RECURRING_USER_DISCOUNT), price, 0.001);
+                discountedVisits.add(visitNumber);
+            }
+            assertEquals(discounted, vehicleRegNumber.equals("REGULAR") && hours == 2);
+        });
+        assertEquals(Collections.singletonList(2), discountedVisits);
+    }
+}
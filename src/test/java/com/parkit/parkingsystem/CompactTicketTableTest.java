@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.CompactTicketTable;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactTicketTableTest {
+
+    private static Ticket ticket(int id, int parkingNumber, String vehicleRegNumber, long inTime, Long outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.BIKE, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(outTime == null ? null : new Date(outTime));
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    @Test
+    public void registrationNumbersRoundTrip() {
+        CompactTicketTable table = new CompactTicketTable();
+        for (String vehicleRegNumber : new String[] {"", "0", "ABCDEF", "AB-123-CD", "ZZZZZZZZZZZZ", "ab-123-cd", "TOO-LONG-TO-ENCODE", "ÉTÉ 42"}) {
+            long code = table.encodePlate(vehicleRegNumber, true);
+            assertEquals(vehicleRegNumber, table.decodePlate(code));
+            assertEquals(code, table.encodePlate(vehicleRegNumber, false));
+        }
+        assertTrue(table.encodePlate("AB-123-CD", false) >= 0);
+        assertEquals(CompactTicketTable.NO_PLATE, table.encodePlate("never seen", false));
+    }
+
+    @Test
+    public void rowsReadAndUpdateTickets() {
+        CompactTicketTable table = new CompactTicketTable();
+        table.put(ticket(7, 65535, "ab-123", 1000, null, 0));
+        Ticket stored = table.get(7);
+        assertEquals(7, stored.getId());
+        assertEquals(65535, stored.getParkingSpot().getId());
+        assertEquals(ParkingType.BIKE, stored.getParkingSpot().getParkingType());
+        assertEquals("ab-123", stored.getVehicleRegNumber());
+        assertEquals(1000, stored.getInTime().getTime());
+        assertNull(stored.getOutTime());
+
+        CompactTicketTable.Row row = table.row();
+        assertTrue(row.moveTo(7));
+        assertFalse(row.isClosed());
+        table.setOutTime(7, new Date(5000));
+        table.setPrice(7, 1.23457);
+        assertTrue(row.isClosed());
+        assertEquals(5000, row.getOutTimeMillis());
+        assertEquals(123457, row.getPriceMillicents());
+        assertEquals(1.23457, row.getPrice());
+        assertFalse(row.moveTo(8));
+        assertEquals(7, row.getId());
+        assertThrows(IllegalArgumentException.class, () -> table.put(ticket(8, 65536, "A", 0, null, 0)));
+    }
+
+    @Test
+    public void removingTheLastTicketOfAChunkReleasesIt() {
+        CompactTicketTable table = new CompactTicketTable();
+        int count = 3 * CompactTicketTable.CHUNK_SIZE;
+        for (int id = 1; id <= count; id++) {
+            table.put(ticket(id, id % 100, "CAR" + id, id, (long) id + 1, 0));
+        }
+        int[] visited = {0};
+        table.forEach(row -> visited[0]++);
+        assertEquals(count, visited[0]);
+        for (int id = 1; id <= CompactTicketTable.CHUNK_SIZE; id++) {
+            assertTrue(table.remove(id));
+        }
+        assertFalse(table.contains(1));
+        assertFalse(table.remove(1));
+        assertEquals(2 * CompactTicketTable.CHUNK_SIZE, table.size());
+        table.forEachInChunk(0, row -> fail("chunk 0 should be empty"));
+        assertEquals(count, table.getLastId());
+    }
+
+    @Test
+    public void storeReturnsTheLatestTicketOfEachVehicle() {
+        InMemoryTicketStore store = new InMemoryTicketStore();
+        for (int i = 0; i < 5000; i++) {
+            Ticket ticket = ticket(0, 1, "CAR" + (i % 700), i, (long) i + 10, 0);
+            assertTrue(store.saveTicket(ticket));
+        }
+        assertEquals(123 + 6 * 700 + 1, store.getTicket("CAR123").getId());
+        assertTrue(store.saveTicket(ticket(0, 1, "single", 0, 1L, 0)));
+        assertEquals(11, store.archiveClosedTickets(20, new long[] {0, 0}, 100));
+        assertNull(store.getTicket("single"));
+        assertEquals(5 + 7 * 700 + 1, store.getTicket("CAR5").getId());
+        assertEquals(5000 - 10, store.getTicketCount());
+        assertEquals(11, store.getArchivedTicketCount());
+        assertNull(store.getTicket("unknown"));
+    }
+}
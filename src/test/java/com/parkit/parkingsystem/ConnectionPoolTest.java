@@ -0,0 +1,125 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+    private ConnectionPool connectionPool;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        connectionPool = new ConnectionPool("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1", "sa", "",
+                0, 2, 200, 60000, 60000, 60000);
+    }
+
+    @AfterEach
+    private void tearDownPerTest() {
+        connectionPool.close();
+    }
+
+    @Test
+    public void closedConnectionIsReused() throws Exception {
+        Connection first = connectionPool.getConnection();
+        assertEquals(1, connectionPool.getActiveConnections());
+        first.close();
+        assertTrue(first.isClosed());
+        assertEquals(0, connectionPool.getActiveConnections());
+        assertEquals(1, connectionPool.getIdleConnections());
+
+        Connection second = connectionPool.getConnection();
+        assertEquals(1, connectionPool.getTotalConnections());
+        assertEquals(2, connectionPool.getAcquireCount());
+        second.close();
+    }
+
+    @Test
+    public void acquireTimesOutWhenPoolIsExhausted() throws Exception {
+        Connection first = connectionPool.getConnection();
+        Connection second = connectionPool.getConnection();
+        assertThrows(SQLException.class, () -> connectionPool.getConnection());
+        assertEquals(1, connectionPool.getAcquireTimeouts());
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void returnedConnectionCannotBeUsed() throws Exception {
+        Connection con = connectionPool.getConnection();
+        con.close();
+        con.close();
+        assertThrows(SQLException.class, () -> con.prepareStatement("select 1"));
+        assertEquals(1, connectionPool.getIdleConnections());
+    }
+
+    @Test
+    public void uncommittedWorkIsRolledBackOnReturn() throws Exception {
+        Connection con = connectionPool.getConnection();
+        con.createStatement().execute("create table if not exists pool_test(ID int)");
+        con.setAutoCommit(false);
+        con.createStatement().execute("insert into pool_test values(1)");
+        con.close();
+
+        Connection next = connectionPool.getConnection();
+        assertTrue(next.getAutoCommit());
+        java.sql.ResultSet rs = next.createStatement().executeQuery("select count(*) from pool_test");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        next.close();
+    }
+
+    @Test
+    public void preparedStatementIsReusedAcrossBorrows() throws Exception {
+        Connection con = connectionPool.getConnection();
+        PreparedStatement first = con.prepareStatement("select ? + 1");
+        first.setInt(1, 1);
+        ResultSet rs = first.executeQuery();
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        rs.close();
+        first.close();
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::executeQuery);
+        con.close();
+
+        Connection next = connectionPool.getConnection();
+        PreparedStatement second = next.prepareStatement("select ? + 1");
+        assertSame(first, second);
+        //parameters of the previous use were cleared
+        assertThrows(SQLException.class, second::executeQuery);
+        second.setInt(1, 41);
+        rs = second.executeQuery();
+        rs.next();
+        assertEquals(42, rs.getInt(1));
+        //left open on purpose, returning the connection makes it reusable
+        next.close();
+
+        Connection last = connectionPool.getConnection();
+        assertSame(first, last.prepareStatement("select ? + 1"));
+        last.close();
+        assertEquals(1, connectionPool.getStatementCacheMisses());
+        assertEquals(2, connectionPool.getStatementCacheHits());
+    }
+
+    @Test
+    public void statementPreparedTwiceInOneBorrowIsNotShared() throws Exception {
+        Connection con = connectionPool.getConnection();
+        PreparedStatement first = con.prepareStatement("select 1");
+        PreparedStatement second = con.prepareStatement("select 1");
+        assertNotSame(first, second);
+        assertTrue(second.executeQuery().next());
+        second.close();
+        assertTrue(first.executeQuery().next());
+        first.close();
+        con.close();
+    }
+}
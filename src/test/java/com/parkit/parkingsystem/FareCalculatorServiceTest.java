@@ -5,6 +5,7 @@ import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.FareEngine;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -124,4 +125,34 @@ public class FareCalculatorServiceTest {
         assertEquals( (24 * Fare.CAR_RATE_PER_HOUR) , ticket.getPrice());
     }
 
+    @Test
+    public void calculateFareCarForRecurringUser(){
+        Date inTime = new Date();
+        inTime.setTime( System.currentTimeMillis() - (  60 * 60 * 1000) );
+        Date outTime = new Date(inTime.getTime() + (  60 * 60 * 1000) );
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR,false);
+
+        ticket.setInTime(inTime);
+        ticket.setOutTime(outTime);
+        ticket.setParkingSpot(parkingSpot);
+        fareCalculatorService.calculateFare(ticket, true);
+        assertEquals( (1 - Fare.RECURRING_USER_DISCOUNT) * Fare.CAR_RATE_PER_HOUR, ticket.getPrice(), 1e-9);
+    }
+
+    @Test
+    public void calculateFareCentsFromEpochMillis(){
+        FareEngine fareEngine = fareCalculatorService.getFareEngine();
+        long inTime = 1_000_000_000_000L;
+        assertEquals(150, fareEngine.calculateFareCents(inTime, inTime + (60 * 60 * 1000), ParkingType.CAR.ordinal()));
+        assertEquals(75, fareEngine.calculateFareCents(inTime, inTime + (45 * 60 * 1000), ParkingType.BIKE.ordinal()));
+        //112.5 cents is rounded half up
+        assertEquals(113, fareEngine.calculateFareCents(inTime, inTime + (45 * 60 * 1000), ParkingType.CAR.ordinal()));
+    }
+
+    @Test
+    public void calculateFareCentsWithUnknownTypeOrdinal(){
+        FareEngine fareEngine = fareCalculatorService.getFareEngine();
+        assertThrows(IllegalArgumentException.class, () -> fareEngine.calculateFareCents(0, 1000, ParkingType.values().length));
+    }
+
 }
@@ -0,0 +1,139 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareEngine;
+import com.parkit.parkingsystem.service.RatePlan;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FareEngineTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static RatePlan windowedPlan() {
+        return new RatePlan()
+                .setZone(ZoneId.of("Europe/Paris"))
+                .setGracePeriodMinutes(30)
+                .setBillingUnitMinutes(1)
+                .setDailyCap(ParkingType.CAR, 12)
+                .addWindow(ParkingType.CAR, EnumSet.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY),
+                        LocalTime.MIDNIGHT, LocalTime.MIDNIGHT, 1.0)
+                .addWindow(ParkingType.CAR, EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+                        LocalTime.of(19, 0), LocalTime.of(7, 30), 0.5)
+                .addWindow(ParkingType.BIKE, EnumSet.of(DayOfWeek.SUNDAY), LocalTime.of(22, 15), LocalTime.of(1, 0), 0);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.of("Europe/Paris")).toInstant().toEpochMilli();
+    }
+
+    @Test
+    public void defaultPlanBillsTheFlatRatesProRata() {
+        FareEngine fareEngine = new FareEngine(new RatePlan());
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long inTime = 1_500_000_000_000L + (long) (random.nextDouble() * 400 * DAY);
+            long duration = (long) (random.nextDouble() * (i % 2 == 0 ? DAY : 60 * DAY));
+            assertEquals(duration * Math.round(Fare.CAR_RATE_PER_HOUR * FareEngine.MILLICENTS_PER_UNIT) / HOUR,
+                    fareEngine.calculateFareMillicents(inTime, inTime + duration, ParkingType.CAR.ordinal()));
+            assertEquals(duration * Math.round(Fare.BIKE_RATE_PER_HOUR * (1 - Fare.RECURRING_USER_DISCOUNT)
+                            * FareEngine.MILLICENTS_PER_UNIT) / HOUR,
+                    fareEngine.calculateFareMillicents(inTime, inTime + duration, ParkingType.BIKE.ordinal(), true));
+        }
+    }
+
+    @Test
+    public void windowsGraceAndCapsAreApplied() {
+        FareEngine fareEngine = new FareEngine(windowedPlan());
+        int car = ParkingType.CAR.ordinal();
+        LocalDateTime mondayNoon = LocalDateTime.of(2024, 3, 4, 12, 0);
+
+        assertEquals(0, fareEngine.calculateFareMillicents(millis(mondayNoon), millis(mondayNoon.plusMinutes(30)), car));
+        //31 minutes and a second, billed as 32 started minutes
+        assertEquals(32 * 150000 / 60, fareEngine.calculateFareMillicents(millis(mondayNoon),
+                millis(mondayNoon.plusMinutes(31).plusSeconds(1)), car));
+        //18:00 to 20:00, one hour at the day rate and one at the evening rate
+        assertEquals(150000 + 50000, fareEngine.calculateFareMillicents(millis(mondayNoon.plusHours(6)),
+                millis(mondayNoon.plusHours(8)), car));
+        //Saturday 10:00 to 14:00 at the weekend rate
+        assertEquals(4 * 100000, fareEngine.calculateFareMillicents(millis(mondayNoon.plusDays(5).minusHours(2)),
+                millis(mondayNoon.plusDays(5).plusHours(2)), car));
+        //Tuesday 00:00 to Wednesday 00:00: 7.5h + 11.5h at 1.5, 5h at 0.5, capped at 12
+        assertEquals(1200000, fareEngine.calculateFareMillicents(millis(mondayNoon.plusHours(12)),
+                millis(mondayNoon.plusHours(36)), car));
+        //two full weeks: every weekday capped at 12, every weekend day 24h at 1.0, also capped
+        assertEquals(2 * 7 * 1200000, fareEngine.calculateFareMillicents(millis(mondayNoon.minusHours(12)),
+                millis(mondayNoon.minusHours(12).plusWeeks(2)), car));
+    }
+
+    @Test
+    public void compiledPlanPricesLikeTheMinuteByMinuteWalk() {
+        RatePlan plan = windowedPlan();
+        RatePlan proRataPlan = windowedPlan().setBillingUnitMinutes(0).setGracePeriodMinutes(0)
+                .setZone(ZoneOffset.ofHours(-5));
+        FareEngine fareEngine = new FareEngine(plan);
+        FareEngine proRataFareEngine = new FareEngine(proRataPlan);
+        NaiveTariff naiveTariff = new NaiveTariff(plan);
+        NaiveTariff proRataNaiveTariff = new NaiveTariff(proRataPlan);
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            long inTime = millis(LocalDateTime.of(2024, 1, 1, 0, 0)) + (long) (random.nextDouble() * 365 * DAY);
+            long outTime = inTime + (long) (random.nextDouble() * (i % 3 == 0 ? 10 * DAY : 6 * HOUR));
+            ParkingType parkingType = ParkingType.values()[i % 2];
+            boolean discount = i % 5 == 0;
+            assertEquals(naiveTariff.calculateFareMillicents(inTime, outTime, parkingType, discount),
+                    fareEngine.calculateFareMillicents(inTime, outTime, parkingType.ordinal(), discount));
+            assertEquals(proRataNaiveTariff.calculateFareMillicents(inTime, outTime, parkingType, discount),
+                    proRataFareEngine.calculateFareMillicents(inTime, outTime, parkingType.ordinal(), discount));
+        }
+    }
+
+    @Test
+    public void planIsReadFromProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("zone", "Europe/Paris");
+        properties.setProperty("gracePeriodMinutes", "30");
+        properties.setProperty("billingUnitMinutes", "1");
+        properties.setProperty("CAR.dailyCap", "12");
+        properties.setProperty("CAR.window.2", "MON-FRI 19:00-07:30 0.5");
+        properties.setProperty("CAR.window.1", "SAT,SUN 00:00-00:00 1.0");
+        properties.setProperty("BIKE.window.1", "SUN 22:15-01:00 0");
+        FareEngine parsed = new FareEngine(RatePlan.parse(properties));
+        FareEngine built = new FareEngine(windowedPlan());
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            long inTime = millis(LocalDateTime.of(2024, 1, 1, 0, 0)) + (long) (random.nextDouble() * 365 * DAY);
+            long outTime = inTime + (long) (random.nextDouble() * 3 * DAY);
+            assertEquals(built.calculateFareMillicents(inTime, outTime, i % 2),
+                    parsed.calculateFareMillicents(inTime, outTime, i % 2));
+        }
+        properties.setProperty("CAR.window.3", "MON 19:00 0.5");
+        assertThrows(IllegalArgumentException.class, () -> RatePlan.parse(properties));
+    }
+
+    @Test
+    public void planWithoutZoneIsInUtcWhetherBuiltOrLoaded() {
+        TimeZone systemZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Paris"));
+        try {
+            assertEquals(ZoneOffset.UTC, new RatePlan().getZone());
+            assertEquals(ZoneOffset.UTC, RatePlan.parse(new Properties()).getZone());
+        } finally {
+            TimeZone.setDefault(systemZone);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.OccupancyService;
+import com.parkit.parkingsystem.service.ParkingLot;
+import com.parkit.parkingsystem.service.ParkingLots;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GateServerTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private GateServer gateServer;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("gateServer");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(2, 1);
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailabilityIndex();
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        gateServer = new GateServer(new ParkingService(parkingSpotDAO, ticketDAO), new OccupancyService(parkingSpotDAO), 0, 4);
+        gateServer.start();
+    }
+
+    @AfterEach
+    private void tearDown() {
+        gateServer.stop(1);
+    }
+
+    private String call(String method, String path, int expectedStatus) throws Exception {
+        return call(gateServer, method, path, expectedStatus);
+    }
+
+    private static String call(GateServer gateServer, String method, String path, int expectedStatus) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + gateServer.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void entryQuoteExitOverHttp() throws Exception {
+        assertEquals("{\"CAR\":{\"free\":2,\"occupied\":0,\"total\":2},\"BIKE\":{\"free\":1,\"occupied\":0,\"total\":1}}", call("GET", "/availability", 200));
+
+        String entry = call("POST", "/entry?reg=AB-123&type=bike", 200);
+        assertTrue(entry.contains("\"parkingNumber\":3"));
+        assertEquals("{\"CAR\":{\"free\":2,\"occupied\":0,\"total\":2},\"BIKE\":{\"free\":0,\"occupied\":1,\"total\":1}}", call("GET", "/availability", 200));
+        call("POST", "/entry?reg=CD-456&type=BIKE", 409);
+
+        assertTrue(call("GET", "/quote?reg=AB-123", 200).contains("\"success\":true"));
+        assertTrue(call("POST", "/exit?reg=AB-123", 200).contains("\"price\":"));
+        assertEquals("{\"CAR\":{\"free\":2,\"occupied\":0,\"total\":2},\"BIKE\":{\"free\":1,\"occupied\":0,\"total\":1}}", call("GET", "/availability", 200));
+        call("POST", "/exit?reg=AB-123", 404);
+    }
+
+    @Test
+    public void rejectBadRequests() throws Exception {
+        call("POST", "/entry?reg=AB-123&type=TRUCK", 400);
+        call("GET", "/entry?reg=AB-123&type=CAR", 405);
+    }
+
+    @Test
+    public void refuseRequestsWhenTheWorkersAreSaturated() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ParkingService slowParkingService = mock(ParkingService.class);
+        when(slowParkingService.enter(anyString(), any())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await();
+            return EntryResult.failure(invocation.getArgument(0), "Parking slots might be full");
+        });
+        GateServer saturated = new GateServer(new ParkingLots(Collections.singletonList(
+                new ParkingLot(ParkingLots.DEFAULT_LOT, slowParkingService, null, 4, 4))), 0, 1, 1);
+        saturated.start();
+        try {
+            //one request on the only worker, one in the queue
+            CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> callQuietly(saturated, "AB-123"));
+            assertTrue(entered.await(1, TimeUnit.SECONDS));
+            CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> callQuietly(saturated, "CD-456"));
+            Thread.sleep(100);
+
+            assertTrue(call(saturated, "POST", "/entry?reg=EF-789&type=CAR", 503).contains("busy"));
+
+            release.countDown();
+            assertTrue(running.get(5, TimeUnit.SECONDS).contains("AB-123"));
+            assertTrue(queued.get(5, TimeUnit.SECONDS).contains("CD-456"));
+        } finally {
+            release.countDown();
+            saturated.stop(1);
+        }
+    }
+
+    private static String callQuietly(GateServer gateServer, String vehicleRegNumber) {
+        try {
+            return call(gateServer, "POST", "/entry?reg=" + vehicleRegNumber + "&type=CAR", 409);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingOccupancy;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.integration.load.LoadGenerator;
+import com.parkit.parkingsystem.integration.load.LoadReport;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTest {
+
+    private static LoadGenerator shortRun() {
+        //two simulated hours of the morning peak in about a second
+        return new LoadGenerator()
+                .setGates(4)
+                .setStartHour(7)
+                .setSimulatedHours(2)
+                .setSpeedup(7200)
+                .setPeakArrivalsPerHour(600)
+                .setStay(20, 0.8)
+                .setVehicles(500);
+    }
+
+    @Test
+    public void embeddedDataBaseHoldsUnderLoad() throws Exception {
+        EmbeddedDataBaseTestConfig dataBaseConfig = new EmbeddedDataBaseTestConfig("loadGeneratorTest");
+        dataBaseConfig.createDataBase(50, 20);
+        Storage storage = Storage.jdbc(dataBaseConfig);
+        try {
+            LoadReport report = shortRun().run(
+                    new ParkingService(storage.getParkingSpotStore(), storage.getTicketStore(),
+                            storage.getUnitOfWork()),
+                    storage.getParkingSpotStore(), storage.getTicketStore());
+
+            assertEquals(0, report.getViolationCount(), report.toString());
+            assertTrue(report.getEntries() > 0);
+            assertTrue(report.getExits() > 0);
+            assertEquals(report.getEntries() + report.getRejectedEntries(), report.getEntryLatency().getCount());
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void doubleAllocationIsReported() throws Exception {
+        Storage storage = Storage.memory("CAR:50,BIKE:20");
+        ParkingSpotStore parkingSpotStore = storage.getParkingSpotStore();
+        //reserves a free spot but hands out the first one of the type to every vehicle
+        ParkingSpotStore faulty = new ParkingSpotStore() {
+            public int getNextAvailableSlot(ParkingType parkingType) {
+                return parkingSpotStore.getNextAvailableSlot(parkingType);
+            }
+
+            public ParkingSpot reserveParkingSpot(ParkingType parkingType) {
+                ParkingSpot parkingSpot = parkingSpotStore.reserveParkingSpot(parkingType);
+                return parkingSpot == null ? null : new ParkingSpot(parkingType == ParkingType.CAR ? 1 : 51, parkingType, false);
+            }
+
+            public boolean updateParking(ParkingSpot parkingSpot) {
+                return parkingSpotStore.updateParking(parkingSpot);
+            }
+
+            public ParkingOccupancy getOccupancy() {
+                return parkingSpotStore.getOccupancy();
+            }
+
+            public int reconcileOccupancy() {
+                return parkingSpotStore.reconcileOccupancy();
+            }
+        };
+        try {
+            LoadReport report = shortRun().run(new ParkingService(faulty, storage.getTicketStore()),
+                    parkingSpotStore, storage.getTicketStore());
+
+            assertTrue(report.getViolationCount() > 0);
+            assertTrue(report.getViolations().stream().anyMatch(violation -> violation.contains("while held by")));
+        } finally {
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+import com.parkit.parkingsystem.util.Metrics;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 * 0.04);
+        assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 * 0.04);
+        assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(50_000_500, histogram.getMean(), 1);
+
+        histogram.reset();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void metricsArePublishedOverJmx() throws Exception {
+        Metrics.Timer timer = Metrics.timer("test.timer");
+        timer.getHistogram().record(2_000_000);
+        Metrics.counter("test.counter").add(3);
+        Metrics.registerMBean();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(3L, server.getAttribute(name, "test.counter"));
+        assertEquals(2000.0, (Double) server.getAttribute(name, "test.timer.maxMicros"), 0.001);
+        assertTrue(((String) server.invoke(name, "report", null, null)).contains("test.timer count=1"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.RatePlan;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Reference pricing of a RatePlan walking the stay minute by minute, checking every window at each
+ * minute, for comparison with the compiled FareEngine.
+ */
+public class NaiveTariff {
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final RatePlan plan;
+    private final RatePlan discountedPlan;
+
+    public NaiveTariff(RatePlan plan) {
+        this.plan = plan;
+        this.discountedPlan = plan.discounted(Fare.RECURRING_USER_DISCOUNT);
+    }
+
+    public long calculateFareMillicents(long inTimeMillis, long outTimeMillis, ParkingType parkingType, boolean discount) {
+        RatePlan plan = discount ? discountedPlan : this.plan;
+        long duration = outTimeMillis - inTimeMillis;
+        if (duration <= plan.getGracePeriodMillis()) {
+            return 0;
+        }
+        long unit = plan.getBillingUnitMillis();
+        if (unit > 0) {
+            duration = (duration + unit - 1) / unit * unit;
+        }
+        long offset = plan.getZone().getRules().getOffset(Instant.ofEpochMilli(inTimeMillis)).getTotalSeconds() * 1000L;
+        long cap = plan.getDailyCapMillicents(parkingType);
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(inTimeMillis + offset), ZoneOffset.UTC);
+        LocalDateTime end = time.plusNanos(duration * 1000000);
+        long total = 0;
+        long dayCost = 0;
+        while (time.isBefore(end)) {
+            LocalDateTime next = time.withSecond(0).withNano(0).plusMinutes(1);
+            if (next.isAfter(end)) {
+                next = end;
+            }
+            dayCost += Duration.between(time, next).toMillis() * rateAt(plan, parkingType, time);
+            if (next.toLocalDate().isAfter(time.toLocalDate()) || next.equals(end)) {
+                total += cap == RatePlan.NO_CAP ? dayCost : Math.min(dayCost, cap * MILLIS_PER_HOUR);
+                dayCost = 0;
+            }
+            time = next;
+        }
+        return total / MILLIS_PER_HOUR;
+    }
+
+    private static long rateAt(RatePlan plan, ParkingType parkingType, LocalDateTime time) {
+        int minute = time.getHour() * 60 + time.getMinute();
+        DayOfWeek day = time.getDayOfWeek();
+        long rate = plan.getMillicentsPerHour(parkingType);
+        for (RatePlan.Window window : plan.getWindows(parkingType)) {
+            if ((window.getDays().contains(day) && minute >= window.getFromMinute() && minute < window.getToMinute())
+                    || (window.getDays().contains(day.minus(1)) && minute + MINUTES_PER_DAY < window.getToMinute())) {
+                rate = window.getMillicentsPerHour();
+            }
+        }
+        return rate;
+    }
+}
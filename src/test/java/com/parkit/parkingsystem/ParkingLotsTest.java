@@ -0,0 +1,123 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.service.ParkingLot;
+import com.parkit.parkingsystem.service.ParkingLots;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ParkingLotsTest {
+
+    @Mock
+    private ParkingService slowParkingService;
+
+    private ParkingLots lots;
+
+    @AfterEach
+    private void tearDown() {
+        if (lots != null) {
+            lots.stop(1);
+        }
+    }
+
+    private static Storage embeddedStorage(String name, int carSpots, int bikeSpots) throws Exception {
+        EmbeddedDataBaseTestConfig dataBaseConfig = new EmbeddedDataBaseTestConfig(name);
+        dataBaseConfig.createDataBase(carSpots, bikeSpots);
+        return Storage.jdbc(dataBaseConfig);
+    }
+
+    @Test
+    public void eachLotHasItsOwnSpotsAndTickets() throws Exception {
+        lots = new ParkingLots(Arrays.asList(
+                ParkingLot.open("north", embeddedStorage("lotNorth", 2, 1)),
+                ParkingLot.open("south", embeddedStorage("lotSouth", 1, 1))));
+
+        EntryResult north = lots.enter("north", "AB-123", ParkingType.CAR).get();
+        EntryResult south = lots.enter("south", "AB-123", ParkingType.CAR).get();
+        assertTrue(north.isSuccess());
+        assertTrue(south.isSuccess());
+        assertEquals(1, north.getParkingSpot().getId());
+        assertEquals(1, south.getParkingSpot().getId());
+        assertFalse(lots.enter("south", "CD-456", ParkingType.CAR).get().isSuccess());
+        assertEquals(2, lots.enter("north", "CD-456", ParkingType.CAR).get().getParkingSpot().getId());
+
+        assertTrue(lots.exit("south", "AB-123").get().isSuccess());
+        assertFalse(lots.exit("south", "CD-456").get().isSuccess());
+        assertEquals(1, lots.get("south").getOccupancyService().getFree(ParkingType.CAR));
+        assertEquals(0, lots.get("north").getOccupancyService().getFree(ParkingType.CAR));
+
+        assertNull(lots.get(null));
+        assertThrows(IllegalArgumentException.class, () -> lots.enter("west", "AB-123", ParkingType.CAR));
+    }
+
+    @Test
+    public void aSlowLotDoesNotHoldUpTheOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(slowParkingService.enter(anyString(), any())).thenAnswer(invocation -> {
+            release.await();
+            return null;
+        });
+        lots = new ParkingLots(Arrays.asList(
+                new ParkingLot("slow", slowParkingService, null, 1, 1),
+                ParkingLot.open("fast", Storage.memory("CAR:1"))));
+
+        CompletableFuture<EntryResult> running = lots.enter("slow", "AB-123", ParkingType.CAR);
+        CompletableFuture<EntryResult> queued = lots.enter("slow", "CD-456", ParkingType.CAR);
+        ExecutionException refused = assertThrows(ExecutionException.class,
+                () -> lots.enter("slow", "EF-789", ParkingType.CAR).get(1, TimeUnit.SECONDS));
+        assertTrue(refused.getCause() instanceof RejectedExecutionException);
+
+        assertTrue(lots.enter("fast", "AB-123", ParkingType.CAR).get(1, TimeUnit.SECONDS).isSuccess());
+        assertFalse(running.isDone());
+
+        release.countDown();
+        running.get(1, TimeUnit.SECONDS);
+        queued.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void aCancelledOperationIsNeverRun() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(slowParkingService.enter(anyString(), any())).thenAnswer(invocation -> {
+            release.await();
+            return null;
+        });
+        lots = new ParkingLots(Arrays.asList(new ParkingLot("slow", slowParkingService, null, 1, 1)));
+
+        CompletableFuture<EntryResult> running = lots.enter("slow", "AB-123", ParkingType.CAR);
+        CompletableFuture<EntryResult> queued = lots.enter("slow", "CD-456", ParkingType.CAR);
+        Thread.sleep(100);
+        assertFalse(running.cancel(false));
+        assertTrue(queued.cancel(false));
+
+        release.countDown();
+        running.get(1, TimeUnit.SECONDS);
+        lots.stop(1);
+        lots = null;
+        verify(slowParkingService).enter("AB-123", ParkingType.CAR);
+        verify(slowParkingService, never()).enter(eq("CD-456"), any());
+    }
+}
@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingServiceGateApiTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private ParkingService parkingService;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("gateApi");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(5, 2);
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailabilityIndex();
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        parkingService = new ParkingService(parkingSpotDAO, ticketDAO);
+    }
+
+    @Test
+    public void enterThenExit() {
+        EntryResult entry = parkingService.enter("ABCDEF", ParkingType.BIKE);
+        assertTrue(entry.isSuccess());
+        assertEquals(6, entry.getParkingSpot().getId());
+        assertFalse(parkingSpotDAO.getAvailabilityIndex().isAvailable(ParkingType.BIKE, 6));
+
+        ExitResult exit = parkingService.exit("ABCDEF");
+        assertTrue(exit.isSuccess());
+        assertEquals(6, exit.getParkingSpot().getId());
+        assertNotNull(exit.getOutTime());
+        assertTrue(parkingSpotDAO.getAvailabilityIndex().isAvailable(ParkingType.BIKE, 6));
+    }
+
+    @Test
+    public void rejectUnknownVehicleAndInvalidInput() {
+        assertFalse(parkingService.exit("UNKNOWN").isSuccess());
+        assertFalse(parkingService.enter("", ParkingType.CAR).isSuccess());
+        assertFalse(parkingService.enter("ABCDEF", null).isSuccess());
+    }
+
+    @Test
+    public void failedTicketSaveReleasesTheSpot() {
+        //VEHICLE_REG_NUMBER is varchar(10), the insert is refused
+        EntryResult entry = parkingService.enter("TOOLONGREGNUMBER", ParkingType.CAR);
+        assertFalse(entry.isSuccess());
+        assertTrue(parkingSpotDAO.getAvailabilityIndex().isAvailable(ParkingType.CAR, 1));
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        assertNull(ticketDAO.getTicket("TOOLONGREGNUMBER"));
+    }
+
+    @Test
+    public void concurrentEntriesNeverShareASpot() throws Exception {
+        ExecutorService gates = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<EntryResult>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String vehicleRegNumber = "CAR" + i;
+                results.add(gates.submit(() -> parkingService.enter(vehicleRegNumber, ParkingType.CAR)));
+            }
+            Set<Integer> spots = new HashSet<>();
+            int entered = 0;
+            for (Future<EntryResult> result : results) {
+                if (result.get().isSuccess()) {
+                    entered++;
+                    spots.add(result.get().getParkingSpot().getId());
+                }
+            }
+            assertEquals(5, entered);
+            assertEquals(5, spots.size());
+        } finally {
+            gates.shutdown();
+        }
+    }
+}
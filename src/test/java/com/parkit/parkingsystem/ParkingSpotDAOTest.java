@@ -0,0 +1,210 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingOccupancy;
+import com.parkit.parkingsystem.dao.ParkingSpotAvailabilityIndex;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingSpotDAOTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private ParkingSpotDAO parkingSpotDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("parkingSpotDAO");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(3, 2);
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    @Test
+    public void nextAvailableSlotIsLowestFreeNumberOfType() {
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(4, parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+        assertTrue(parkingSpotDAO.getAvailabilityIndex().isLoaded());
+    }
+
+    @Test
+    public void updateParkingWritesThroughToIndex() {
+        assertTrue(parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false)));
+        assertEquals(2, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+
+        assertTrue(parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, true)));
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void fullParkingReturnsZero() {
+        parkingSpotDAO.updateParking(new ParkingSpot(4, ParkingType.BIKE, false));
+        parkingSpotDAO.updateParking(new ParkingSpot(5, ParkingType.BIKE, false));
+        assertEquals(0, parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+    }
+
+    @Test
+    public void indexIsLoadedFromParkingTable() {
+        parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+        ParkingSpotDAO otherDAO = new ParkingSpotDAO();
+        otherDAO.dataBaseConfig = dataBaseConfig;
+        assertTrue(otherDAO.loadAvailabilityIndex());
+        assertEquals(2, otherDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void reserveParkingSpotMarksSpotUnavailable() {
+        ParkingSpot parkingSpot = parkingSpotDAO.reserveParkingSpot(ParkingType.CAR);
+        assertEquals(1, parkingSpot.getId());
+        assertFalse(parkingSpot.isAvailable());
+        assertEquals(2, parkingSpotDAO.reserveParkingSpot(ParkingType.CAR).getId());
+        assertEquals(3, parkingSpotDAO.reserveParkingSpot(ParkingType.CAR).getId());
+        assertNull(parkingSpotDAO.reserveParkingSpot(ParkingType.CAR));
+    }
+
+    @Test
+    public void reserveParkingSpotRetriesWhenSpotTakenByAnotherProcess() {
+        parkingSpotDAO.loadAvailabilityIndex();
+        ParkingSpotDAO otherProcessDAO = new ParkingSpotDAO();
+        otherProcessDAO.dataBaseConfig = dataBaseConfig;
+        assertEquals(1, otherProcessDAO.reserveParkingSpot(ParkingType.CAR).getId());
+
+        assertEquals(2, parkingSpotDAO.reserveParkingSpot(ParkingType.CAR).getId());
+    }
+
+    @Test
+    public void occupancyFollowsReservationsAndReleases() {
+        ParkingOccupancy occupancy = parkingSpotDAO.getOccupancy();
+        assertEquals(3, occupancy.getFree(ParkingType.CAR));
+        assertEquals(2, occupancy.getTotal(ParkingType.BIKE));
+
+        ParkingSpot parkingSpot = parkingSpotDAO.reserveParkingSpot(ParkingType.CAR);
+        parkingSpotDAO.reserveParkingSpot(ParkingType.BIKE);
+        //releasing twice must only count once
+        parkingSpot.setAvailable(true);
+        parkingSpotDAO.updateParking(parkingSpot);
+        parkingSpotDAO.updateParking(parkingSpot);
+
+        ParkingOccupancy.Snapshot snapshot = occupancy.snapshot();
+        assertEquals(0, snapshot.getOccupied(ParkingType.CAR));
+        assertEquals(1, snapshot.getOccupied(ParkingType.BIKE));
+        assertEquals(1, snapshot.getFree(ParkingType.BIKE));
+        assertEquals(0, parkingSpotDAO.reconcileOccupancy());
+    }
+
+    @Test
+    public void reconcileOccupancyCorrectsDrift() {
+        parkingSpotDAO.getOccupancy();
+        ParkingSpotDAO otherProcessDAO = new ParkingSpotDAO();
+        otherProcessDAO.dataBaseConfig = dataBaseConfig;
+        otherProcessDAO.reserveParkingSpot(ParkingType.CAR);
+        otherProcessDAO.reserveParkingSpot(ParkingType.CAR);
+        assertEquals(3, parkingSpotDAO.getOccupancy().getFree(ParkingType.CAR));
+
+        assertEquals(2, parkingSpotDAO.reconcileOccupancy());
+        assertEquals(1, parkingSpotDAO.getOccupancy().getFree(ParkingType.CAR));
+        assertEquals(2, parkingSpotDAO.getOccupancy().getOccupied(ParkingType.CAR));
+    }
+
+    @Test
+    public void concurrentGatesNeverShareASpot() throws Exception {
+        int spots = 200;
+        int gates = 8;
+        dataBaseConfig.createDataBase(spots, 0);
+        //two DAO instances stand for two processes sharing the parking table
+        ParkingSpotDAO otherProcessDAO = new ParkingSpotDAO();
+        otherProcessDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.loadAvailabilityIndex();
+        otherProcessDAO.loadAvailabilityIndex();
+
+        Set<Integer> allocated = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(gates);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int gate = 0; gate < gates; gate++) {
+            ParkingSpotDAO dao = gate % 2 == 0 ? parkingSpotDAO : otherProcessDAO;
+            results.add(executor.submit((Callable<Integer>) () -> {
+                start.await();
+                int reserved = 0;
+                ParkingSpot parkingSpot;
+                while ((parkingSpot = dao.reserveParkingSpot(ParkingType.CAR)) != null) {
+                    assertTrue(allocated.add(parkingSpot.getId()), "spot allocated twice: " + parkingSpot.getId());
+                    reserved++;
+                }
+                return reserved;
+            }));
+        }
+        start.countDown();
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(spots, total);
+        assertEquals(spots, allocated.size());
+        assertTrue(parkingSpotDAO.loadAvailabilityIndex());
+        assertEquals(0, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void claimsAreNotLostWhileTheIndexGrows() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            ParkingSpotAvailabilityIndex index = new ParkingSpotAvailabilityIndex();
+            int spots = 5000;
+            Set<Integer> claimed = ConcurrentHashMap.newKeySet();
+            ExecutorService gates = Executors.newFixedThreadPool(4);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> tasks = new ArrayList<>();
+                //one thread adds spots, growing the index, while the others claim them
+                tasks.add(gates.submit(() -> {
+                    start.await();
+                    for (int spot = 1; spot <= spots; spot++) {
+                        index.setAvailable(ParkingType.CAR, spot, true);
+                    }
+                    return null;
+                }));
+                for (int g = 0; g < 3; g++) {
+                    tasks.add(gates.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < spots; i++) {
+                            int spot = index.claimNextAvailableSlot(ParkingType.CAR);
+                            if (spot > 0) {
+                                assertTrue(claimed.add(spot), "spot " + spot + " claimed twice");
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> task : tasks) {
+                    task.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                gates.shutdown();
+            }
+            assertEquals(spots, claimed.size() + index.countAvailable(ParkingType.CAR));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingUnitOfWorkDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParkingUnitOfWorkDAOTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+    private ParkingService parkingService;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("parkingUnitOfWork");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(3, 2);
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        parkingService = new ParkingService(parkingSpotDAO, ticketDAO,
+                new ParkingUnitOfWorkDAO(parkingSpotDAO, ticketDAO));
+    }
+
+    private static int count(String sql) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @Test
+    public void entryAndExitAreCommitted() throws Exception {
+        EntryResult entry = parkingService.enter("ABCDEF", ParkingType.CAR);
+        assertTrue(entry.isSuccess());
+        assertEquals(1, entry.getParkingSpot().getId());
+        assertEquals(1, count("select count(*) from ticket where VEHICLE_REG_NUMBER = 'ABCDEF' and OUT_TIME is null"));
+        assertEquals(0, count("select count(*) from parking where PARKING_NUMBER = 1 and AVAILABLE = true"));
+        assertEquals(1, parkingSpotDAO.getOccupancy().getOccupied(ParkingType.CAR));
+
+        ExitResult exit = parkingService.exit("ABCDEF");
+        assertTrue(exit.isSuccess());
+        assertEquals(1, exit.getParkingSpot().getId());
+        assertEquals(1, count("select count(*) from ticket where VEHICLE_REG_NUMBER = 'ABCDEF' and OUT_TIME is not null"));
+        assertEquals(1, count("select count(*) from parking where PARKING_NUMBER = 1 and AVAILABLE = true"));
+        assertEquals(0, parkingSpotDAO.getOccupancy().getOccupied(ParkingType.CAR));
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(1, ticketDAO.getVisitCount("ABCDEF"));
+    }
+
+    @Test
+    public void failedTicketInsertReleasesTheSpot() throws Exception {
+        //longer than the VEHICLE_REG_NUMBER column
+        EntryResult entry = parkingService.enter("ABCDEFGHIJKLMNOP", ParkingType.CAR);
+
+        assertFalse(entry.isSuccess());
+        assertEquals(0, count("select count(*) from ticket"));
+        assertEquals(3, count("select count(*) from parking where TYPE = 'CAR' and AVAILABLE = true"));
+        assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(0, parkingSpotDAO.getOccupancy().getOccupied(ParkingType.CAR));
+        assertEquals(0, parkingSpotDAO.reconcileOccupancy());
+    }
+
+    @Test
+    public void ticketIsClosedOnce() throws Exception {
+        assertTrue(parkingService.enter("ABCDEF", ParkingType.BIKE).isSuccess());
+        Ticket cached = ticketDAO.getTicket("ABCDEF");
+        assertTrue(parkingService.exit("ABCDEF").isSuccess());
+
+        //a gate still holding the open ticket cannot close it again
+        cached.setOutTime(null);
+        ticketDAO.getOpenTicketCache().put(cached);
+        assertFalse(parkingService.exit("ABCDEF").isSuccess());
+        assertEquals(0, count("select count(*) from parking where TYPE = 'BIKE' and AVAILABLE = false"));
+        assertEquals(0, parkingSpotDAO.getOccupancy().getOccupied(ParkingType.BIKE));
+    }
+
+    @Test
+    public void repeatVisitorLeavesAfterTheCacheIsCleared() throws Exception {
+        ParkingService storeCalls = new ParkingService(parkingSpotDAO, ticketDAO);
+        for (ParkingService service : new ParkingService[] {parkingService, storeCalls}) {
+            assertTrue(service.enter("AB", ParkingType.CAR).isSuccess());
+            assertTrue(service.exit("AB").isSuccess());
+            Thread.sleep(2);
+            assertTrue(service.enter("AB", ParkingType.CAR).isSuccess());
+            //as after a restart, the open ticket is read back from the table
+            ticketDAO.getOpenTicketCache().clear();
+
+            assertTrue(service.exit("AB").isSuccess());
+            Thread.sleep(2);
+        }
+        assertEquals(0, count("select count(*) from ticket where OUT_TIME is null"));
+        assertEquals(3, count("select count(*) from parking where TYPE = 'CAR' and AVAILABLE = true"));
+    }
+}
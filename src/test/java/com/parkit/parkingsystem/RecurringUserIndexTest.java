@@ -0,0 +1,26 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.RecurringUserIndex;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecurringUserIndexTest {
+
+    @Test
+    public void countsVisitsOfEveryVehicle() {
+        RecurringUserIndex index = new RecurringUserIndex(1000);
+        for (int i = 0; i < 20_000; i++) {
+            index.addVisit("AB-" + (i % 5000));
+        }
+        index.addVisits("AB-0", 10);
+        assertEquals(5000, index.size());
+        assertEquals(14, index.getVisitCount("AB-0"));
+        for (int i = 1; i < 5000; i++) {
+            assertEquals(4, index.getVisitCount("AB-" + i));
+        }
+        for (int i = 5000; i < 10_000; i++) {
+            assertEquals(0, index.getVisitCount("AB-" + i));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchemaMigratorTest {
+
+    @Test
+    public void pendingScriptsAreAppliedOnce() throws Exception {
+        try (Connection con = DriverManager.getConnection("jdbc:h2:mem:schemaMigrator;MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "")) {
+            SchemaMigrator schemaMigrator = new SchemaMigrator();
+            assertTrue(schemaMigrator.migrate(con) >= 2);
+            int version = schemaMigrator.getCurrentVersion(con);
+            assertEquals(0, schemaMigrator.migrate(con));
+            assertEquals(version, schemaMigrator.getCurrentVersion(con));
+
+            try (Statement st = con.createStatement();
+                 ResultSet rs = st.executeQuery("select count(*) from information_schema.indexes where index_name in"
+                         + " ('idx_ticket_vehicle', 'idx_parking_availability')")) {
+                rs.next();
+                assertEquals(2, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void partlyAppliedScriptIsRunAgain() throws Exception {
+        try (Connection con = DriverManager.getConnection("jdbc:h2:mem:schemaMigratorPartly;MODE=MySQL;DATABASE_TO_LOWER=TRUE", "sa", "")) {
+            SchemaMigrator schemaMigrator = new SchemaMigrator();
+            schemaMigrator.migrate(con);
+            int version = schemaMigrator.getCurrentVersion(con);
+            try (Statement st = con.createStatement()) {
+                //V2 stopped after its first index, committed implicitly by MySQL
+                st.execute("drop index idx_parking_availability");
+                st.execute("delete from schema_version where VERSION >= 2");
+            }
+
+            assertEquals(version - 1, schemaMigrator.migrate(con));
+            assertEquals(version, schemaMigrator.getCurrentVersion(con));
+            try (Statement st = con.createStatement();
+                 ResultSet rs = st.executeQuery("select count(*) from information_schema.indexes where index_name in"
+                         + " ('idx_ticket_vehicle', 'idx_parking_availability')")) {
+                rs.next();
+                assertEquals(2, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void failedMigrationFailsTheConnection() throws Exception {
+        String url = "jdbc:h2:mem:schemaMigratorFailed;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        try (Connection con = DriverManager.getConnection(url, "sa", "");
+             Statement st = con.createStatement()) {
+            //a schema_version table the migrator can't read
+            st.execute("create table schema_version(ID int)");
+            DataBaseConfig dataBaseConfig = new DataBaseConfig(url, "sa", "") {
+                @Override
+                protected String getDriverClassName() {
+                    return "org.h2.Driver";
+                }
+            };
+
+            assertThrows(SQLException.class, dataBaseConfig::getConnection);
+            assertThrows(SQLException.class, dataBaseConfig::getConnection);
+        }
+    }
+}
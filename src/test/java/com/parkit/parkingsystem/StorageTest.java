@@ -0,0 +1,245 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.FileParkingSpotStore;
+import com.parkit.parkingsystem.dao.FileTicketStore;
+import com.parkit.parkingsystem.dao.InMemoryTicketStore;
+import com.parkit.parkingsystem.dao.ParkingJournal;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.TicketArchivalService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private Path directory;
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        directory = Files.createTempDirectory("storage");
+    }
+
+    private static ParkingService parkingService(Storage storage) {
+        return new ParkingService(storage.getParkingSpotStore(), storage.getTicketStore(), storage.getUnitOfWork());
+    }
+
+    @Test
+    public void fileBackendSurvivesRestart() throws Exception {
+        Storage storage = Storage.file(directory, "CAR:3,BIKE:2");
+        ParkingService parkingService = parkingService(storage);
+        assertTrue(parkingService.enter("AAA", ParkingType.CAR).isSuccess());
+        assertTrue(parkingService.enter("BBB", ParkingType.CAR).isSuccess());
+        assertTrue(parkingService.enter("CCC", ParkingType.BIKE).isSuccess());
+        ExitResult exit = parkingService.exit("AAA");
+        assertTrue(exit.isSuccess());
+        storage.close();
+
+        storage = Storage.file(directory, "CAR:10");
+        assertEquals(1, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(5, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.BIKE));
+        assertEquals(1, storage.getParkingSpotStore().getOccupancy().getOccupied(ParkingType.CAR));
+        assertEquals(3, storage.getParkingSpotStore().getOccupancy().getTotal(ParkingType.CAR));
+        assertEquals(1, storage.getTicketStore().getVisitCount("AAA"));
+        assertEquals(0, storage.getTicketStore().getVisitCount("DDD"));
+        Ticket closed = storage.getTicketStore().getTicket("AAA");
+        assertEquals(exit.getOutTime(), closed.getOutTime());
+        assertEquals(exit.getPrice(), closed.getPrice());
+        Ticket open = storage.getTicketStore().getTicket("BBB");
+        assertEquals(2, open.getParkingSpot().getId());
+        assertNull(open.getOutTime());
+        assertTrue(parkingService(storage).exit("BBB").isSuccess());
+        storage.close();
+    }
+
+    @Test
+    public void compactionKeepsTheLatestStateAndTicketIds() throws Exception {
+        FileParkingSpotStore parkingSpotStore = new FileParkingSpotStore(directory.resolve(Storage.PARKING_FILE));
+        parkingSpotStore.addParkingSpot(1, ParkingType.CAR, true);
+        for (int i = 0; i < 1000; i++) {
+            parkingSpotStore.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+            parkingSpotStore.updateParking(new ParkingSpot(1, ParkingType.CAR, true));
+        }
+        parkingSpotStore.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+        assertTrue(parkingSpotStore.compactIfNeeded());
+        parkingSpotStore.close();
+
+        FileTicketStore ticketStore = new FileTicketStore(directory);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("T" + i);
+            ticket.setInTime(new Date(now - 40 * DAY));
+            ticket.setOutTime(i == 2 ? null : new Date(now - 40 * DAY + 1000));
+            ticketStore.saveTicket(ticket);
+        }
+        assertEquals(2, new TicketArchivalService(ticketStore, 30 * DAY, 10).archiveClosedTickets());
+        ticketStore.compact();
+        ticketStore.shutdown();
+
+        parkingSpotStore = new FileParkingSpotStore(directory.resolve(Storage.PARKING_FILE));
+        assertFalse(parkingSpotStore.isAvailable(1));
+        parkingSpotStore.close();
+        ticketStore = new FileTicketStore(directory);
+        assertEquals(1, ticketStore.getTicketCount());
+        assertNull(ticketStore.getTicket("T0"));
+        assertNotNull(ticketStore.getTicket("T2"));
+        Ticket ticket = ticketStore.getTicket("T2");
+        ticket.setVehicleRegNumber("T3");
+        ticketStore.saveTicket(ticket);
+        assertEquals(4, ticket.getId());
+        ticketStore.shutdown();
+    }
+
+    @Test
+    public void fileBackendCountsAVisitOnceWhenItsArchivedMarkerIsLost() throws Exception {
+        FileTicketStore ticketStore = new FileTicketStore(directory);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("AAA");
+        ticket.setInTime(new Date(System.currentTimeMillis() - 40 * DAY));
+        ticket.setOutTime(new Date(System.currentTimeMillis() - 40 * DAY + 1000));
+        ticketStore.saveTicket(ticket);
+        ticketStore.shutdown();
+        Path log = directory.resolve(FileTicketStore.LOG_FILE);
+        Path logBeforeArchival = directory.resolve("before-archival.log");
+        Files.copy(log, logBeforeArchival);
+        ticketStore = new FileTicketStore(directory);
+        assertEquals(1, new TicketArchivalService(ticketStore, 30 * DAY, 10).archiveClosedTickets());
+        ticketStore.shutdown();
+        //a crash after the archive record, before the archived marker
+        Files.copy(logBeforeArchival, log, StandardCopyOption.REPLACE_EXISTING);
+
+        ticketStore = new FileTicketStore(directory);
+        assertNotNull(ticketStore.getTicket("AAA"));
+        assertEquals(1, ticketStore.getVisitCount("AAA"));
+        assertEquals(1, new TicketArchivalService(ticketStore, 30 * DAY, 10).archiveClosedTickets());
+        ticketStore.shutdown();
+
+        ticketStore = new FileTicketStore(directory);
+        assertNull(ticketStore.getTicket("AAA"));
+        assertEquals(1, ticketStore.getVisitCount("AAA"));
+        ticketStore.shutdown();
+    }
+
+    @Test
+    public void journalBackendRecoversFromSnapshotAndTail() throws Exception {
+        Storage storage = Storage.journal(directory, "CAR:3,BIKE:2", true);
+        ParkingService parkingService = parkingService(storage);
+        assertTrue(parkingService.enter("AAA", ParkingType.CAR).isSuccess());
+        assertTrue(parkingService.enter("BBB", ParkingType.CAR).isSuccess());
+        ExitResult exit = parkingService.exit("AAA");
+        assertTrue(exit.isSuccess());
+        storage.getJournal().snapshot();
+        long snapshot = storage.getJournal().getLastEventNumber();
+        assertTrue(parkingService.enter("AAA", ParkingType.CAR).isSuccess());
+        assertTrue(parkingService.enter("CCC", ParkingType.BIKE).isSuccess());
+        assertTrue(parkingService.exit("BBB").isSuccess());
+        //stopped without the snapshot of a clean shutdown
+        storage.getJournal().close();
+
+        storage = Storage.journal(directory, "CAR:10", true);
+        assertEquals(snapshot, storage.getJournal().getSnapshotEventNumber());
+        assertEquals(snapshot + 6, storage.getJournal().getLastEventNumber());
+        assertEquals(2, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
+        assertEquals(5, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.BIKE));
+        assertEquals(1, storage.getParkingSpotStore().getOccupancy().getOccupied(ParkingType.CAR));
+        assertEquals(3, storage.getParkingSpotStore().getOccupancy().getTotal(ParkingType.CAR));
+        assertEquals(2, storage.getTicketStore().getVisitCount("AAA"));
+        assertEquals(1, storage.getTicketStore().getVisitCount("BBB"));
+        assertEquals(4, ((InMemoryTicketStore) storage.getTicketStore()).getTicketCount());
+        assertNull(storage.getTicketStore().getTicket("AAA").getOutTime());
+        assertNotNull(storage.getTicketStore().getTicket("BBB").getOutTime());
+        assertTrue(parkingService(storage).exit("CCC").isSuccess());
+        assertTrue(parkingService(storage).enter("DDD", ParkingType.CAR).isSuccess());
+        assertEquals(5, storage.getTicketStore().getTicket("DDD").getId());
+        storage.close();
+
+        storage = Storage.journal(directory, "CAR:10", false);
+        assertEquals(storage.getJournal().getLastEventNumber(), storage.getJournal().getSnapshotEventNumber());
+        assertEquals(4, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.BIKE));
+        assertEquals(2, storage.getTicketStore().getVisitCount("AAA"));
+        storage.close();
+    }
+
+    @Test
+    public void journalReplaysTheEventsOfAPeriod() throws Exception {
+        Storage storage = Storage.journal(directory, "CAR:1", false);
+        ParkingService parkingService = parkingService(storage);
+        //the spots added when the journal was created are recorded before start, not in the same millisecond
+        long start = System.currentTimeMillis() + 1;
+        while (System.currentTimeMillis() < start) {
+            Thread.yield();
+        }
+        assertTrue(parkingService.enter("AAA", ParkingType.CAR).isSuccess());
+        storage.getJournal().snapshot();
+        assertTrue(parkingService.exit("AAA").isSuccess());
+        assertEquals(1, new TicketArchivalService(storage.getTicketStore(), -DAY, 10).archiveClosedTickets());
+
+        List<ParkingJournal.Kind> kinds = new ArrayList<>();
+        long read = storage.getJournal().replay(start, Long.MAX_VALUE, (number, event) -> kinds.add(event.getKind()));
+        assertEquals(5, read);
+        assertEquals(Arrays.asList(ParkingJournal.Kind.SPOT_CLAIMED, ParkingJournal.Kind.ENTRY,
+                ParkingJournal.Kind.EXIT, ParkingJournal.Kind.SPOT_FREED, ParkingJournal.Kind.ARCHIVED), kinds);
+        storage.close();
+
+        storage = Storage.journal(directory, "CAR:1", false);
+        assertNull(storage.getTicketStore().getTicket("AAA"));
+        assertEquals(1, storage.getTicketStore().getVisitCount("AAA"));
+        storage.close();
+    }
+
+    @Test
+    public void memoryBackendReservesEachSpotOnce() {
+        Storage storage = Storage.memory("CAR:2");
+        ParkingService parkingService = parkingService(storage);
+        assertEquals(1, parkingService.enter("AAA", ParkingType.CAR).getParkingSpot().getId());
+        assertEquals(2, parkingService.enter("BBB", ParkingType.CAR).getParkingSpot().getId());
+        assertFalse(parkingService.enter("CCC", ParkingType.CAR).isSuccess());
+        assertFalse(parkingService.enter("DDD", ParkingType.BIKE).isSuccess());
+        assertTrue(parkingService.exit("AAA").isSuccess());
+        assertFalse(parkingService.exit("AAA").isSuccess());
+        assertEquals(1, parkingService.enter("CCC", ParkingType.CAR).getParkingSpot().getId());
+        assertEquals(2, storage.getParkingSpotStore().getOccupancy().getOccupied(ParkingType.CAR));
+        assertEquals(3, ((InMemoryTicketStore) storage.getTicketStore()).getTicketCount());
+        storage.close();
+    }
+
+    @Test
+    public void memoryBackendClosesATicketOnce() {
+        Storage storage = Storage.memory("CAR:1");
+        ParkingService parkingService = parkingService(storage);
+        assertTrue(parkingService.enter("AAA", ParkingType.CAR).isSuccess());
+        //two gates read the open ticket before either closes it
+        Ticket first = storage.getTicketStore().getTicket("AAA");
+        Ticket second = storage.getTicketStore().getTicket("AAA");
+        first.setOutTime(new Date(first.getInTime().getTime() + 60 * 60 * 1000));
+        first.setPrice(1.5);
+        second.setOutTime(new Date(second.getInTime().getTime() + 2 * 60 * 60 * 1000));
+        second.setPrice(3);
+
+        assertTrue(storage.getTicketStore().updateTicket(first));
+        assertFalse(storage.getTicketStore().updateTicket(second));
+        Ticket closed = storage.getTicketStore().getTicket("AAA");
+        assertEquals(first.getOutTime(), closed.getOutTime());
+        assertEquals(1.5, closed.getPrice());
+        assertFalse(parkingService.exit("AAA").isSuccess());
+        storage.close();
+    }
+}
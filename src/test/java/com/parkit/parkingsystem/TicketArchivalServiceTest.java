@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.TicketArchivalService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketArchivalServiceTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("ticketArchival");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    private void saveTicket(String vehicleRegNumber, long inTime, long outTime) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(outTime == 0 ? null : new Date(outTime));
+        ticket.setPrice(1.5);
+        ticketDAO.saveTicket(ticket);
+    }
+
+    private int count(String table) throws Exception {
+        Connection con = dataBaseConfig.getConnection();
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("select count(*) from " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    @Test
+    public void archiveOnlyTicketsClosedBeforeTheCutoff() throws Exception {
+        long now = (System.currentTimeMillis() / 1000) * 1000;
+        for (int i = 0; i < 5; i++) {
+            saveTicket("OLD" + i, now - 40 * DAY, now - 40 * DAY + 1000);
+        }
+        saveTicket("RECENT", now - 2 * DAY, now - DAY);
+        saveTicket("OPEN", now - 40 * DAY, 0);
+
+        TicketArchivalService archivalService = new TicketArchivalService(ticketDAO, 30 * DAY, 2);
+
+        assertEquals(5, archivalService.archiveClosedTickets());
+        assertEquals(5, count("ticket_archive"));
+        assertEquals(2, count("ticket"));
+        assertEquals(0, archivalService.archiveClosedTickets());
+        assertNotNull(ticketDAO.getTicket("OPEN"));
+        assertNotNull(ticketDAO.getTicket("RECENT"));
+    }
+}
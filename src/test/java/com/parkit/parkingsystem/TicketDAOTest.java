@@ -0,0 +1,282 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.OpenTicketCache;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketDAOTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("ticketDAO");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    private Ticket newTicket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(System.currentTimeMillis() - (60 * 60 * 1000)));
+        return ticket;
+    }
+
+    @Test
+    public void savedTicketIsServedFromCache() {
+        Ticket ticket = newTicket("ABCDEF");
+        ticketDAO.saveTicket(ticket);
+        assertTrue(ticket.getId() > 0);
+
+        Ticket found = ticketDAO.getTicket("ABCDEF");
+        assertNotSame(ticket, found);
+        assertEquals(ticket.getId(), found.getId());
+        assertEquals(1, ticketDAO.getOpenTicketCache().getHits());
+        assertEquals(0, ticketDAO.getOpenTicketCache().getMisses());
+    }
+
+    @Test
+    public void updatedTicketIsEvictedAndReadFromDataBase() {
+        Ticket ticket = newTicket("ABCDEF");
+        ticketDAO.saveTicket(ticket);
+        ticket.setOutTime(new Date());
+        ticket.setPrice(1.5);
+        assertTrue(ticketDAO.updateTicket(ticket));
+        assertEquals(0, ticketDAO.getOpenTicketCache().size());
+
+        Ticket found = ticketDAO.getTicket("ABCDEF");
+        assertEquals(ticket.getId(), found.getId());
+        assertEquals(1.5, found.getPrice());
+        assertNotNull(found.getOutTime());
+        assertEquals(1, ticketDAO.getOpenTicketCache().getMisses());
+        assertEquals(0, ticketDAO.getOpenTicketCache().size());
+    }
+
+    private void closeTwice(Ticket first, Ticket second) {
+        first.setOutTime(new Date());
+        first.setPrice(1.5);
+        second.setOutTime(new Date());
+        second.setPrice(3);
+        assertTrue(ticketDAO.updateTicket(first));
+        assertFalse(ticketDAO.updateTicket(second));
+    }
+
+    @Test
+    public void twoGatesCloseATicketOnce() {
+        ticketDAO.saveTicket(newTicket("ABCDEF"));
+        //two gates read the open ticket before either closes it
+        closeTwice(ticketDAO.getTicket("ABCDEF"), ticketDAO.getTicket("ABCDEF"));
+
+        Ticket found = ticketDAO.getTicket("ABCDEF");
+        assertEquals(1.5, found.getPrice());
+    }
+
+    @Test
+    public void writeBehindClosesATicketOnce() throws Exception {
+        Path journal = Files.createTempFile("tickets", ".journal");
+        ticketDAO.enableWriteBehind(journal);
+        ticketDAO.saveTicket(newTicket("ABCDEF"));
+        closeTwice(ticketDAO.getTicket("ABCDEF"), ticketDAO.getTicket("ABCDEF"));
+        assertNotNull(ticketDAO.getTicket("ABCDEF").getOutTime());
+        ticketDAO.shutdown();
+
+        TicketDAO readerDAO = new TicketDAO();
+        readerDAO.dataBaseConfig = dataBaseConfig;
+        Ticket found = readerDAO.getTicket("ABCDEF");
+        assertEquals(1.5, found.getPrice());
+        //the save and a single update
+        assertEquals(2, ticketDAO.getWriteBehind().getWrittenCount());
+    }
+
+    @Test
+    public void openTicketMissIsReadThrough() {
+        ticketDAO.saveTicket(newTicket("ABCDEF"));
+        ticketDAO.getOpenTicketCache().clear();
+
+        assertNotNull(ticketDAO.getTicket("ABCDEF"));
+        assertNotNull(ticketDAO.getTicket("ABCDEF"));
+        assertEquals(1, ticketDAO.getOpenTicketCache().getMisses());
+        assertEquals(1, ticketDAO.getOpenTicketCache().getHits());
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsed() {
+        OpenTicketCache cache = new OpenTicketCache(2, 60000);
+        cache.put(newTicket("AAA"));
+        cache.put(newTicket("BBB"));
+        cache.get("AAA");
+        cache.put(newTicket("CCC"));
+
+        assertNotNull(cache.get("AAA"));
+        assertNull(cache.get("BBB"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void visitsAreCountedAtStartupAndOnSave() throws Exception {
+        ticketDAO.saveTicket(newTicket("ABCDEF"));
+        ticketDAO.saveTicket(newTicket("ABCDEF"));
+        ticketDAO.saveTicket(newTicket("GHIJKL"));
+        Connection con = dataBaseConfig.getConnection();
+        try (Statement st = con.createStatement()) {
+            st.execute("insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+                    + " values(1000, 1, 'ABCDEF', 1.5, current_timestamp, current_timestamp)");
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        assertEquals(2, ticketDAO.getVisitCount("ABCDEF"));
+
+        TicketDAO restartedDAO = new TicketDAO();
+        restartedDAO.dataBaseConfig = dataBaseConfig;
+        assertEquals(0, restartedDAO.getVisitCount("ABCDEF"));
+        assertEquals(3, restartedDAO.loadRecurringUsers(1));
+        assertEquals(3, restartedDAO.getVisitCount("ABCDEF"));
+        assertEquals(1, restartedDAO.getVisitCount("GHIJKL"));
+        restartedDAO.saveTicket(newTicket("GHIJKL"));
+        assertEquals(2, restartedDAO.getVisitCount("GHIJKL"));
+        assertEquals(0, restartedDAO.getVisitCount("MNOPQR"));
+    }
+
+    @Test
+    public void cacheExpiresEntries() {
+        OpenTicketCache cache = new OpenTicketCache(2, -1);
+        cache.put(newTicket("AAA"));
+        assertNull(cache.get("AAA"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void writeBehindFlushesSaveAndUpdateOnShutdown() throws Exception {
+        Path journal = Files.createTempFile("tickets", ".journal");
+        ticketDAO.enableWriteBehind(journal);
+        Ticket ticket = newTicket("ABCDEF");
+        assertTrue(ticketDAO.saveTicket(ticket));
+        ticket.setOutTime(new Date());
+        ticket.setPrice(1.5);
+        assertTrue(ticketDAO.updateTicket(ticket));
+        ticketDAO.shutdown();
+
+        TicketDAO readerDAO = new TicketDAO();
+        readerDAO.dataBaseConfig = dataBaseConfig;
+        Ticket found = readerDAO.getTicket("ABCDEF");
+        assertEquals(ticket.getId(), found.getId());
+        assertEquals(1.5, found.getPrice());
+        assertNotNull(found.getOutTime());
+        assertFalse(Files.exists(journal) && Files.size(journal) > 0);
+    }
+
+    @Test
+    public void writeBehindReplaysJournalAfterFailure() throws Exception {
+        Path journal = Files.createTempFile("tickets", ".journal");
+        //no tables in this database, so every batch fails and stays in the journal
+        TicketWriteBehind failing = new TicketWriteBehind(new EmbeddedDataBaseTestConfig("noTables"), journal);
+        Ticket ticket = newTicket("ABCDEF");
+        failing.save(ticket);
+        ticket.setOutTime(new Date());
+        ticket.setPrice(1.5);
+        failing.update(ticket);
+        failing.shutdown();
+        assertTrue(Files.size(journal) > 0);
+
+        TicketWriteBehind replaying = new TicketWriteBehind(dataBaseConfig, journal);
+        replaying.shutdown();
+        assertEquals(2, replaying.getWrittenCount());
+        Ticket found = ticketDAO.getTicket("ABCDEF");
+        assertEquals(1.5, found.getPrice());
+        assertNotNull(found.getOutTime());
+    }
+
+    @Test
+    public void writeBehindMovesRefusedWritesToTheDeadLetterFile() throws Exception {
+        Path journal = Files.createTempFile("tickets", ".journal");
+        TicketWriteBehind writeBehind = new TicketWriteBehind(dataBaseConfig, journal);
+        //longer than the VEHICLE_REG_NUMBER column, so its insert and then its update are refused
+        Ticket refused = newTicket("ABCDEFGHIJKLMNOP");
+        writeBehind.save(refused);
+        writeBehind.save(newTicket("ABCDEF"));
+        refused.setOutTime(new Date());
+        refused.setPrice(1.5);
+        writeBehind.update(refused);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (writeBehind.getDeadLetterCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        writeBehind.save(newTicket("GHIJKL"));
+        writeBehind.shutdown();
+
+        assertEquals(2, writeBehind.getDeadLetterCount());
+        assertEquals(2, Files.readAllLines(writeBehind.getDeadLetterPath()).size());
+        assertNotNull(ticketDAO.getTicket("ABCDEF"));
+        assertNotNull(ticketDAO.getTicket("GHIJKL"));
+        assertFalse(Files.exists(journal) && Files.size(journal) > 0);
+    }
+
+    @Test
+    public void writeBehindReplaysAnUpdateQueuedWhileItsInsertWasFlushed() throws Exception {
+        Path journal = Files.createTempFile("tickets", ".journal");
+        CountDownLatch updateQueued = new CountDownLatch(1);
+        AtomicInteger connections = new AtomicInteger();
+        //the insert waits for the update to be journaled, then the database goes down for good
+        EmbeddedDataBaseTestConfig crashing = new EmbeddedDataBaseTestConfig("ticketDAO") {
+            @Override
+            public Connection getConnection() throws ClassNotFoundException, SQLException {
+                if (connections.incrementAndGet() > 1) {
+                    throw new SQLException("Database down", "08001");
+                }
+                try {
+                    updateQueued.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getConnection();
+            }
+        };
+        TicketWriteBehind failing = new TicketWriteBehind(crashing, journal, 16, 1, 50);
+        Ticket ticket = newTicket("ABCDEF");
+        failing.save(ticket);
+        ticket.setOutTime(new Date());
+        ticket.setPrice(1.5);
+        failing.update(ticket);
+        updateQueued.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (failing.getWrittenCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        failing.shutdown();
+        assertEquals(1, failing.getWrittenCount());
+
+        TicketWriteBehind replaying = new TicketWriteBehind(dataBaseConfig, journal);
+        replaying.shutdown();
+        assertEquals(1, replaying.getWrittenCount());
+        assertEquals(0, replaying.getDeadLetterCount());
+        Ticket found = ticketDAO.getTicket("ABCDEF");
+        assertEquals(1.5, found.getPrice());
+        assertNotNull(found.getOutTime());
+    }
+}
@@ -0,0 +1,100 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.TicketExportService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketExportServiceTest {
+
+    private static EmbeddedDataBaseTestConfig dataBaseConfig;
+    private TicketDAO ticketDAO;
+    private TicketExportService ticketExportService;
+    private Path exportFile;
+
+    @BeforeAll
+    private static void setUp() {
+        dataBaseConfig = new EmbeddedDataBaseTestConfig("ticketExport");
+    }
+
+    @BeforeEach
+    private void setUpPerTest() throws Exception {
+        dataBaseConfig.createDataBase(3, 2);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketExportService = new TicketExportService(ticketDAO, 0);
+        exportFile = Files.createTempDirectory("export").resolve("tickets.bin");
+    }
+
+    private void saveTicket(String vehicleRegNumber, ParkingSpot parkingSpot, long outTime) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(outTime - (60 * 60 * 1000)));
+        ticket.setOutTime(outTime == 0 ? null : new Date(outTime));
+        ticket.setPrice(1.5);
+        ticketDAO.saveTicket(ticket);
+    }
+
+    private List<String> readExport() throws Exception {
+        List<String> rows = new ArrayList<>();
+        TicketExportService.readExport(exportFile, (id, parkingNumber, vehicleRegNumber, price, inTimeMillis, outTimeMillis, parkingTypeOrdinal) ->
+                rows.add(vehicleRegNumber + ":" + parkingNumber + ":" + ParkingType.values()[parkingTypeOrdinal] + ":" + price));
+        return rows;
+    }
+
+    @Test
+    public void exportClosedTicketsIncrementally() throws Exception {
+        long now = (System.currentTimeMillis() / 1000) * 1000;
+        saveTicket("AAA", new ParkingSpot(1, ParkingType.CAR, false), now - 2000);
+        saveTicket("BBB", new ParkingSpot(4, ParkingType.BIKE, false), now - 1000);
+        saveTicket("OPEN", new ParkingSpot(2, ParkingType.CAR, false), 0);
+
+        assertEquals(2, ticketExportService.exportClosedTickets(exportFile));
+        assertEquals(0, ticketExportService.exportClosedTickets(exportFile));
+
+        long closed = System.currentTimeMillis();
+        saveTicket("CCC", new ParkingSpot(2, ParkingType.CAR, false), closed);
+        while (System.currentTimeMillis() <= closed) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, ticketExportService.exportClosedTickets(exportFile));
+
+        List<String> rows = readExport();
+        assertEquals(3, rows.size());
+        assertEquals("AAA:1:CAR:1.5", rows.get(0));
+        assertEquals("BBB:4:BIKE:1.5", rows.get(1));
+        assertEquals("CCC:2:CAR:1.5", rows.get(2));
+    }
+
+    @Test
+    public void exportWaitsForTicketsClosedWithinTheSafetyLag() throws Exception {
+        long now = System.currentTimeMillis();
+        saveTicket("AAA", new ParkingSpot(1, ParkingType.CAR, false), now - 20000);
+        saveTicket("BBB", new ParkingSpot(4, ParkingType.BIKE, false), now - 1000);
+        assertEquals(1, new TicketExportService(ticketDAO, 10000).exportClosedTickets(exportFile));
+
+        //closed before BBB but committed after the first run, as a write-behind close can be
+        saveTicket("CCC", new ParkingSpot(2, ParkingType.CAR, false), now - 2000);
+        assertEquals(2, ticketExportService.exportClosedTickets(exportFile));
+
+        List<String> rows = readExport();
+        assertEquals(3, rows.size());
+        assertEquals("AAA:1:CAR:1.5", rows.get(0));
+        assertEquals("CCC:2:CAR:1.5", rows.get(1));
+        assertEquals("BBB:4:BIKE:1.5", rows.get(2));
+    }
+}
@@ -1,37 +1,39 @@
 package com.parkit.parkingsystem.integration;
 
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.Storage;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ConsoleGate;
 import com.parkit.parkingsystem.service.ParkingService;
 import com.parkit.parkingsystem.util.InputReaderUtil;
-import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class ParkingDataBaseIT {
 
     private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
-    private static ParkingSpotDAO parkingSpotDAO;
-    private static TicketDAO ticketDAO;
     private static DataBasePrepareService dataBasePrepareService;
+    private Storage storage;
 
     @Mock
     private static InputReaderUtil inputReaderUtil;
 
     @BeforeAll
     private static void setUp() throws Exception{
-        parkingSpotDAO = new ParkingSpotDAO();
-        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
-        ticketDAO = new TicketDAO();
-        ticketDAO.dataBaseConfig = dataBaseTestConfig;
         dataBasePrepareService = new DataBasePrepareService();
     }
 
@@ -39,27 +41,55 @@ public class ParkingDataBaseIT {
     private void setUpPerTest() throws Exception {
         when(inputReaderUtil.readSelection()).thenReturn(1);
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        dataBasePrepareService.clearDataBaseEntries();
     }
 
-    @AfterAll
-    private static void tearDown(){
+    @AfterEach
+    private void tearDownPerTest(){
+        if(storage != null){
+            storage.close();
+        }
+    }
 
+    private ConsoleGate openConsoleGate(Storage.Backend backend) throws Exception {
+        switch(backend){
+            case MEMORY: storage = Storage.memory(Storage.DEFAULT_SPOTS); break;
+            case FILE: storage = Storage.file(Files.createTempDirectory("parkit"), Storage.DEFAULT_SPOTS); break;
+            case JOURNAL: storage = Storage.journal(Files.createTempDirectory("parkit"), Storage.DEFAULT_SPOTS, true); break;
+            default: {
+                dataBasePrepareService.clearDataBaseEntries();
+                storage = Storage.jdbc(dataBaseTestConfig);
+            }
+        }
+        return new ConsoleGate(inputReaderUtil, new ParkingService(storage.getParkingSpotStore(), storage.getTicketStore(),
+                storage.getUnitOfWork()));
     }
 
-    @Test
-    public void testParkingACar(){
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-        parkingService.processIncomingVehicle();
-        //TODO: check that a ticket is actualy saved in DB and Parking table is updated with availability
+    @ParameterizedTest
+    @EnumSource(Storage.Backend.class)
+    public void testParkingACar(Storage.Backend backend) throws Exception {
+        ConsoleGate consoleGate = openConsoleGate(backend);
+        consoleGate.processIncomingVehicle();
+
+        Ticket ticket = storage.getTicketStore().getTicket("ABCDEF");
+        assertNotNull(ticket);
+        assertEquals(1, ticket.getParkingSpot().getId());
+        assertNull(ticket.getOutTime());
+        assertEquals(2, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
     }
 
-    @Test
-    public void testParkingLotExit(){
-        testParkingACar();
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
-        parkingService.processExitingVehicle();
-        //TODO: check that the fare generated and out time are populated correctly in the database
+    @ParameterizedTest
+    @EnumSource(Storage.Backend.class)
+    public void testParkingLotExit(Storage.Backend backend) throws Exception {
+        ConsoleGate consoleGate = openConsoleGate(backend);
+        consoleGate.processIncomingVehicle();
+        consoleGate.processExitingVehicle();
+
+        Ticket ticket = storage.getTicketStore().getTicket("ABCDEF");
+        assertNotNull(ticket);
+        assertNotNull(ticket.getOutTime());
+        assertFalse(ticket.getOutTime().before(ticket.getInTime()));
+        assertTrue(ticket.getPrice() >= 0);
+        assertEquals(1, storage.getParkingSpotStore().getNextAvailableSlot(ParkingType.CAR));
     }
 
 }
@@ -0,0 +1,59 @@
+package com.parkit.parkingsystem.integration.config;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * In-process H2 database with the schema of the db/migration scripts,
+ * for tests and benchmarks that cannot rely on a local MySQL server.
+ */
+public class EmbeddedDataBaseTestConfig extends DataBaseConfig {
+
+    private final String name;
+
+    public EmbeddedDataBaseTestConfig(String name) {
+        this.name = name;
+    }
+
+    @Override
+    protected String getDriverClassName() {
+        return "org.h2.Driver";
+    }
+
+    @Override
+    protected String getUrl() {
+        //no MODE=MySQL: in that mode (and MariaDB's) H2 moves the AUTO_INCREMENT sequence on every update of a
+        //ticket, which races with concurrent inserts and hands out duplicate ticket ids
+        return "jdbc:h2:mem:" + name + ";DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    @Override
+    protected String getUser() {
+        return "sa";
+    }
+
+    @Override
+    protected String getPassword() {
+        return "";
+    }
+
+    public void createDataBase(int carSpots, int bikeSpots) throws Exception {
+        Connection con = getConnection();
+        try (Statement st = con.createStatement()) {
+            st.execute("drop table if exists ticket_archive");
+            st.execute("drop table if exists ticket");
+            st.execute("drop table if exists parking");
+            st.execute("drop table if exists schema_version");
+            new SchemaMigrator().migrate(con);
+            for (int i = 1; i <= carSpots + bikeSpots; i++) {
+                st.execute("insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(" + i + ",true,'"
+                        + (i <= carSpots ? "CAR" : "BIKE") + "')");
+            }
+        } finally {
+            closeConnection(con);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.parkit.parkingsystem.integration.load;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotStore;
+import com.parkit.parkingsystem.dao.Storage;
+import com.parkit.parkingsystem.dao.TicketStore;
+import com.parkit.parkingsystem.integration.config.EmbeddedDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Open-loop traffic against a ParkingService, on a simulated clock running speedup times faster than the
+ * wall clock. Vehicles arrive as a Poisson process whose rate follows the hour of the day (HOURLY_PROFILE,
+ * peaking at peakArrivalsPerHour for the morning commute), stay for a lognormal time and are served by gates
+ * threads. Arrivals do not wait for the gates, so an overloaded system shows up as a growing response time.
+ *
+ * Every operation is checked against what the generator knows of the lot: a spot given to a vehicle while
+ * another holds it, an exit refused or freeing another spot for a parked vehicle, and at the end a parked
+ * vehicle without its open ticket or occupancy counters that do not match the vehicles parked, are reported
+ * as violations.
+ *
+ * Run with key=value arguments, for example
+ * java ... LoadGenerator storage=jdbc carSpots=500 bikeSpots=100 gates=16 hours=24 speedup=1440
+ * storage is jdbc (an in-process H2 database, the default), memory, file or journal.
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LogManager.getLogger("LoadGenerator");
+
+    //share of peakArrivalsPerHour arriving in each hour of the day
+    private static final double[] HOURLY_PROFILE = {
+            0.05, 0.03, 0.02, 0.02, 0.05, 0.15, 0.45, 0.85, 1.0, 0.7, 0.5, 0.55,
+            0.6, 0.55, 0.5, 0.55, 0.7, 0.9, 0.8, 0.5, 0.35, 0.25, 0.15, 0.08};
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long MAX_ENQUEUE_AHEAD_NANOS = 200_000_000L;
+    private static final int AWAY = 0;
+    private static final int IN_LOT = 1;
+
+    private int gates = 8;
+    private double simulatedHours = 24;
+    private int startHour = 0;
+    private double speedup = 1440;
+    private double peakArrivalsPerHour = 3000;
+    private double medianStayMinutes = 90;
+    private double staySigma = 0.9;
+    private double bikeShare = 0.2;
+    private int vehicles = 20000;
+    private long seed = 42;
+
+    public LoadGenerator setGates(int gates) {
+        this.gates = gates;
+        return this;
+    }
+
+    public LoadGenerator setSimulatedHours(double simulatedHours) {
+        this.simulatedHours = simulatedHours;
+        return this;
+    }
+
+    public LoadGenerator setStartHour(int startHour) {
+        this.startHour = startHour;
+        return this;
+    }
+
+    /**
+     * @param speedup simulated seconds per second of wall clock time
+     */
+    public LoadGenerator setSpeedup(double speedup) {
+        this.speedup = speedup;
+        return this;
+    }
+
+    public LoadGenerator setPeakArrivalsPerHour(double peakArrivalsPerHour) {
+        this.peakArrivalsPerHour = peakArrivalsPerHour;
+        return this;
+    }
+
+    /**
+     * @param medianStayMinutes median of the lognormal stay
+     * @param staySigma standard deviation of the log of the stay
+     */
+    public LoadGenerator setStay(double medianStayMinutes, double staySigma) {
+        this.medianStayMinutes = medianStayMinutes;
+        this.staySigma = staySigma;
+        return this;
+    }
+
+    public LoadGenerator setBikeShare(double bikeShare) {
+        this.bikeShare = bikeShare;
+        return this;
+    }
+
+    /**
+     * @param vehicles the number of distinct registration numbers, so vehicles come back
+     */
+    public LoadGenerator setVehicles(int vehicles) {
+        this.vehicles = vehicles;
+        return this;
+    }
+
+    public LoadGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * A vehicle reaching a gate, to enter or to leave, at dueNanos on the System.nanoTime() clock.
+     */
+    private static final class Visit implements Delayed {
+
+        final int vehicle;
+        final ParkingType parkingType;
+        final boolean arrival;
+        final long dueNanos;
+        final long stayNanos;
+
+        Visit(int vehicle, ParkingType parkingType, boolean arrival, long dueNanos, long stayNanos) {
+            this.vehicle = vehicle;
+            this.parkingType = parkingType;
+            this.arrival = arrival;
+            this.dueNanos = dueNanos;
+            this.stayNanos = stayNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Visit) other).dueNanos);
+        }
+    }
+
+    /**
+     * Runs the traffic, then checks the state left in the stores, which must be the ones of the service and
+     * start without parked vehicles.
+     */
+    public LoadReport run(ParkingService parkingService, ParkingSpotStore parkingSpotStore, TicketStore ticketStore)
+            throws InterruptedException {
+        LoadReport report = new LoadReport();
+        report.simulatedHours = simulatedHours;
+        DelayQueue<Visit> visits = new DelayQueue<>();
+        AtomicIntegerArray states = new AtomicIntegerArray(vehicles);
+        Map<Integer, String> occupants = new ConcurrentHashMap<>();
+        Map<String, Integer> parked = new ConcurrentHashMap<>();
+        int[] occupiedAtStart = occupied(parkingSpotStore);
+        long start = System.nanoTime();
+        boolean[] arrivalsDone = {false};
+
+        Thread arrivals = new Thread(() -> {
+            try {
+                generateArrivals(start, visits, states, report);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (arrivalsDone) {
+                    arrivalsDone[0] = true;
+                }
+            }
+        }, "load-arrivals");
+        arrivals.start();
+        Thread[] gateThreads = new Thread[gates];
+        long end = start + (long) (simulatedHours * 3600 / speedup * NANOS_PER_SECOND);
+        for (int i = 0; i < gates; i++) {
+            gateThreads[i] = new Thread(() -> {
+                try {
+                    while (true) {
+                        Visit visit = visits.poll(10, TimeUnit.MILLISECONDS);
+                        if (visit == null) {
+                            synchronized (arrivalsDone) {
+                                if (arrivalsDone[0] && System.nanoTime() >= end) {
+                                    return;
+                                }
+                            }
+                        } else if (visit.dueNanos <= end) {
+                            serve(visit, parkingService, visits, states, occupants, parked, report);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "load-gate-" + i);
+            gateThreads[i].start();
+        }
+        arrivals.join();
+        for (Thread gate : gateThreads) {
+            gate.join();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        audit(parkingSpotStore, ticketStore, parked, occupiedAtStart, report);
+        return report;
+    }
+
+    private void generateArrivals(long start, DelayQueue<Visit> visits, AtomicIntegerArray states, LoadReport report)
+            throws InterruptedException {
+        Random random = new Random(seed);
+        double peakRatePerSecond = peakArrivalsPerHour / 3600;
+        double simulatedSeconds = simulatedHours * 3600;
+        double time = 0;
+        while (true) {
+            //thinning: candidates at the peak rate, each kept in proportion to the rate of its hour
+            time += -Math.log(1 - random.nextDouble()) / peakRatePerSecond;
+            if (time >= simulatedSeconds) {
+                return;
+            }
+            int hour = (int) ((startHour + time / 3600) % 24);
+            if (random.nextDouble() >= HOURLY_PROFILE[hour]) {
+                continue;
+            }
+            ParkingType parkingType = random.nextDouble() < bikeShare ? ParkingType.BIKE : ParkingType.CAR;
+            double stayMinutes = medianStayMinutes * Math.exp(staySigma * random.nextGaussian());
+            long stayNanos = (long) (stayMinutes * 60 / speedup * NANOS_PER_SECOND);
+            long dueNanos = start + (long) (time / speedup * NANOS_PER_SECOND);
+            int vehicle = pickVehicleAway(random, states);
+            if (vehicle < 0) {
+                report.skippedArrivals.increment();
+                continue;
+            }
+            long ahead = dueNanos - System.nanoTime();
+            if (ahead > MAX_ENQUEUE_AHEAD_NANOS) {
+                TimeUnit.NANOSECONDS.sleep(ahead - MAX_ENQUEUE_AHEAD_NANOS);
+            }
+            visits.add(new Visit(vehicle, parkingType, true, dueNanos, stayNanos));
+        }
+    }
+
+    /**
+     * @return a vehicle not in the lot, now marked in it, or -1 if none was found in a few tries
+     */
+    private int pickVehicleAway(Random random, AtomicIntegerArray states) {
+        for (int i = 0; i < 10; i++) {
+            int vehicle = random.nextInt(vehicles);
+            if (states.compareAndSet(vehicle, AWAY, IN_LOT)) {
+                return vehicle;
+            }
+        }
+        return -1;
+    }
+
+    private static String vehicleRegNumber(int vehicle) {
+        return "LG-" + vehicle;
+    }
+
+    private void serve(Visit visit, ParkingService parkingService, DelayQueue<Visit> visits, AtomicIntegerArray states,
+                       Map<Integer, String> occupants, Map<String, Integer> parked, LoadReport report) {
+        String vehicleRegNumber = vehicleRegNumber(visit.vehicle);
+        if (visit.arrival) {
+            long serviceStart = System.nanoTime();
+            EntryResult result = parkingService.enter(vehicleRegNumber, visit.parkingType);
+            long serviceEnd = System.nanoTime();
+            report.entryLatency.record(serviceEnd - serviceStart);
+            report.responseTime.record(serviceEnd - visit.dueNanos);
+            if (!result.isSuccess()) {
+                if (result.getMessage().contains("full")) {
+                    report.rejectedEntries.increment();
+                } else {
+                    report.failedEntries.increment();
+                    report.violation("Entry of " + vehicleRegNumber + " failed: " + result.getMessage());
+                }
+                states.set(visit.vehicle, AWAY);
+                return;
+            }
+            report.entries.increment();
+            int parkingNumber = result.getParkingSpot().getId();
+            if (result.getParkingSpot().getParkingType() != visit.parkingType) {
+                report.violation(vehicleRegNumber + " was given " + result.getParkingSpot().getParkingType()
+                        + " spot " + parkingNumber + " for a " + visit.parkingType);
+            }
+            String holder = occupants.putIfAbsent(parkingNumber, vehicleRegNumber);
+            if (holder != null) {
+                report.violation("Spot " + parkingNumber + " given to " + vehicleRegNumber + " while held by " + holder);
+            }
+            parked.put(vehicleRegNumber, parkingNumber);
+            visits.add(new Visit(visit.vehicle, visit.parkingType, false, visit.dueNanos + visit.stayNanos, 0));
+        } else {
+            //released before the exit, as the spot may be given to another vehicle as soon as it is freed
+            Integer parkingNumber = parked.remove(vehicleRegNumber);
+            occupants.remove(parkingNumber, vehicleRegNumber);
+            long serviceStart = System.nanoTime();
+            ExitResult result = parkingService.exit(vehicleRegNumber);
+            long serviceEnd = System.nanoTime();
+            report.exitLatency.record(serviceEnd - serviceStart);
+            report.responseTime.record(serviceEnd - visit.dueNanos);
+            if (!result.isSuccess()) {
+                report.failedExits.increment();
+                report.violation("Lost ticket: exit of " + vehicleRegNumber + " from spot " + parkingNumber
+                        + " failed: " + result.getMessage());
+            } else {
+                report.exits.increment();
+                if (result.getParkingSpot().getId() != parkingNumber) {
+                    report.violation("Exit of " + vehicleRegNumber + " freed spot " + result.getParkingSpot().getId()
+                            + " instead of " + parkingNumber);
+                }
+                if (result.getPrice() < 0) {
+                    report.violation("Exit of " + vehicleRegNumber + " charged " + result.getPrice());
+                }
+            }
+            states.set(visit.vehicle, AWAY);
+        }
+    }
+
+    private static int[] occupied(ParkingSpotStore parkingSpotStore) {
+        parkingSpotStore.reconcileOccupancy();
+        int[] occupied = new int[ParkingType.values().length];
+        for (ParkingType parkingType : ParkingType.values()) {
+            occupied[parkingType.ordinal()] = parkingSpotStore.getOccupancy().getOccupied(parkingType);
+        }
+        return occupied;
+    }
+
+    /**
+     * Checks that every vehicle left in the lot has its open ticket on its spot, and that the spots taken
+     * are exactly those of these vehicles.
+     */
+    private static void audit(ParkingSpotStore parkingSpotStore, TicketStore ticketStore, Map<String, Integer> parked,
+                              int[] occupiedAtStart, LoadReport report) {
+        int[] expected = occupiedAtStart.clone();
+        for (Map.Entry<String, Integer> vehicle : parked.entrySet()) {
+            Ticket ticket = ticketStore.getTicket(vehicle.getKey());
+            if (ticket == null || ticket.getOutTime() != null) {
+                report.violation("Lost ticket: " + vehicle.getKey() + " parked in spot " + vehicle.getValue()
+                        + " has no open ticket");
+                continue;
+            }
+            if (ticket.getParkingSpot().getId() != vehicle.getValue()) {
+                report.violation("Ticket of " + vehicle.getKey() + " is for spot " + ticket.getParkingSpot().getId()
+                        + " but it parked in spot " + vehicle.getValue());
+            }
+            expected[ticket.getParkingSpot().getParkingType().ordinal()]++;
+        }
+        int drift = parkingSpotStore.reconcileOccupancy();
+        if (drift != 0) {
+            report.violation("Occupancy counters were off by " + drift + " from the stored spots");
+        }
+        int[] occupied = occupied(parkingSpotStore);
+        for (ParkingType parkingType : ParkingType.values()) {
+            if (occupied[parkingType.ordinal()] != expected[parkingType.ordinal()]) {
+                report.violation(occupied[parkingType.ordinal()] + " " + parkingType + " spots are taken for "
+                        + expected[parkingType.ordinal()] + " vehicles parked");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] keyAndValue = arg.split("=", 2);
+            options.put(keyAndValue[0], keyAndValue.length > 1 ? keyAndValue[1] : "");
+        }
+        int carSpots = Integer.parseInt(options.getOrDefault("carSpots", "500"));
+        int bikeSpots = Integer.parseInt(options.getOrDefault("bikeSpots", "100"));
+        String spots = "CAR:" + carSpots + ",BIKE:" + bikeSpots;
+        Storage storage;
+        switch (options.getOrDefault("storage", "jdbc")) {
+            case "memory": storage = Storage.memory(spots); break;
+            case "file": storage = Storage.file(Files.createTempDirectory("parkit-load"), spots); break;
+            case "journal": storage = Storage.journal(Files.createTempDirectory("parkit-load"), spots, true); break;
+            default: {
+                EmbeddedDataBaseTestConfig dataBaseConfig = new EmbeddedDataBaseTestConfig("load");
+                dataBaseConfig.createDataBase(carSpots, bikeSpots);
+                storage = Storage.jdbc(dataBaseConfig);
+            }
+        }
+        LoadGenerator loadGenerator = new LoadGenerator()
+                .setGates(Integer.parseInt(options.getOrDefault("gates", "8")))
+                .setSimulatedHours(Double.parseDouble(options.getOrDefault("hours", "24")))
+                .setSpeedup(Double.parseDouble(options.getOrDefault("speedup", "1440")))
+                .setPeakArrivalsPerHour(Double.parseDouble(options.getOrDefault("peakArrivalsPerHour", "3000")))
+                .setStay(Double.parseDouble(options.getOrDefault("medianStayMinutes", "90")),
+                        Double.parseDouble(options.getOrDefault("staySigma", "0.9")))
+                .setVehicles(Integer.parseInt(options.getOrDefault("vehicles", "20000")))
+                .setSeed(Long.parseLong(options.getOrDefault("seed", "42")));
+        LoadReport report;
+        try {
+            report = loadGenerator.run(new ParkingService(storage.getParkingSpotStore(), storage.getTicketStore(),
+                    storage.getUnitOfWork()),
+                    storage.getParkingSpotStore(), storage.getTicketStore());
+        } finally {
+            storage.close();
+        }
+        System.out.print(report);
+        if (report.getViolationCount() > 0) {
+            logger.error(report.getViolationCount() + " correctness violations");
+            System.exit(1);
+        }
+    }
+}
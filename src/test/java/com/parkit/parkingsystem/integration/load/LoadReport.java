@@ -0,0 +1,107 @@
+package com.parkit.parkingsystem.integration.load;
+
+import com.parkit.parkingsystem.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of a LoadGenerator run: operation counts, latencies in nanoseconds and the correctness
+ * violations found, the first MAX_VIOLATION_MESSAGES of them with a message.
+ */
+public class LoadReport {
+
+    private static final int MAX_VIOLATION_MESSAGES = 20;
+
+    final LongAdder entries = new LongAdder();
+    final LongAdder rejectedEntries = new LongAdder();
+    final LongAdder failedEntries = new LongAdder();
+    final LongAdder exits = new LongAdder();
+    final LongAdder failedExits = new LongAdder();
+    final LongAdder skippedArrivals = new LongAdder();
+    //time spent in ParkingService
+    final LatencyHistogram entryLatency = new LatencyHistogram();
+    final LatencyHistogram exitLatency = new LatencyHistogram();
+    //from the moment the vehicle reached the gate, so time queued behind busy gates is included
+    final LatencyHistogram responseTime = new LatencyHistogram();
+    private final LongAdder violationCount = new LongAdder();
+    private final List<String> violations = new ArrayList<>();
+    long elapsedNanos;
+    double simulatedHours;
+
+    void violation(String message) {
+        violationCount.increment();
+        synchronized (violations) {
+            if (violations.size() < MAX_VIOLATION_MESSAGES) {
+                violations.add(message);
+            }
+        }
+    }
+
+    public long getEntries() {
+        return entries.sum();
+    }
+
+    public long getRejectedEntries() {
+        return rejectedEntries.sum();
+    }
+
+    public long getExits() {
+        return exits.sum();
+    }
+
+    public long getViolationCount() {
+        return violationCount.sum();
+    }
+
+    public List<String> getViolations() {
+        synchronized (violations) {
+            return Collections.unmodifiableList(new ArrayList<>(violations));
+        }
+    }
+
+    /**
+     * @return entries and exits completed per second of wall clock time
+     */
+    public double getThroughput() {
+        return (entryLatency.getCount() + exitLatency.getCount()) / (elapsedNanos / 1e9);
+    }
+
+    public LatencyHistogram getEntryLatency() {
+        return entryLatency;
+    }
+
+    public LatencyHistogram getExitLatency() {
+        return exitLatency;
+    }
+
+    public LatencyHistogram getResponseTime() {
+        return responseTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%.1f simulated hours in %.1f s%n", simulatedHours, elapsedNanos / 1e9));
+        sb.append(String.format("entries=%d rejected (lot full)=%d failed=%d exits=%d failed=%d skipped arrivals=%d%n",
+                entries.sum(), rejectedEntries.sum(), failedEntries.sum(), exits.sum(), failedExits.sum(),
+                skippedArrivals.sum()));
+        sb.append(String.format("throughput=%.0f ops/s%n", getThroughput()));
+        append(sb, "entry", entryLatency);
+        append(sb, "exit", exitLatency);
+        append(sb, "response", responseTime);
+        sb.append("violations=").append(violationCount.sum()).append(System.lineSeparator());
+        for (String violation : getViolations()) {
+            sb.append("  ").append(violation).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(String.format("%-8s count=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus%n", name, h.getCount(),
+                h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(99) / 1e3,
+                h.getValueAtPercentile(99.9) / 1e3, h.getMax() / 1e3));
+    }
+}
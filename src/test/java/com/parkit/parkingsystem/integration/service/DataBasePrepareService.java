@@ -3,6 +3,7 @@ package com.parkit.parkingsystem.integration.service;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 
 public class DataBasePrepareService {
 
@@ -14,10 +15,18 @@ public class DataBasePrepareService {
             connection = dataBaseTestConfig.getConnection();
 
             //set parking entries to available
-            connection.prepareStatement("update parking set available = true").execute();
+            PreparedStatement ps = connection.prepareStatement("update parking set available = true");
+            ps.execute();
+            dataBaseTestConfig.closePreparedStatement(ps);
 
             //clear ticket entries;
-            connection.prepareStatement("truncate table ticket").execute();
+            ps = connection.prepareStatement("truncate table ticket");
+            ps.execute();
+            dataBaseTestConfig.closePreparedStatement(ps);
+
+            ps = connection.prepareStatement("truncate table ticket_archive");
+            ps.execute();
+            dataBaseTestConfig.closePreparedStatement(ps);
 
         }catch(Exception e){
             e.printStackTrace();